@@ -0,0 +1,207 @@
+/**
+ * Storage for the directed follow edges of a FollowGraph.
+ * Vertices are dense slot numbers; an edge from `from` to `to` means `from` follows `to`.
+ * Implementations let readers run alongside addEdge and removeEdge calls. Callers must serialize writers that touch the
+ * same vertex, and must give ensureCapacity, addEdges, clearVertex, compact and snapshot exclusive access.
+ */
+import java.io.Serializable;
+import java.util.function.IntConsumer;
+
+public interface Adjacency extends Serializable{
+
+    /**
+     * Gets the number of vertex slots in the store.
+     * @return The number of vertex slots.
+     */
+    int getVertexCount();
+
+    /**
+     * Gets the total number of edges in the store.
+     * @return The number of edges.
+     */
+    long getEdgeCount();
+
+    /**
+     * Makes sure the store has at least the given number of vertex slots. New slots start with no edges.
+     * @param n The number of vertex slots required.
+     * @custom.precondition `n` is non-negative.
+     * @custom.postcondition The store has at least `n` vertex slots. Existing edges are unchanged.
+     */
+    void ensureCapacity(int n);
+
+    /**
+     * Adds a directed edge between two vertices.
+     * @param from The vertex that follows.
+     * @param to The vertex being followed.
+     * @return True if the edge was added, false if it already existed.
+     * @custom.precondition `from` and `to` are valid vertex slots.
+     * @custom.postcondition The edge from `from` to `to` exists in the store.
+     */
+    boolean addEdge(int from, int to);
+
+    /**
+     * Adds a batch of directed edges. Stores that can merge a whole batch into their rows at once override this.
+     * @param from The following vertex of each edge.
+     * @param to The followed vertex of each edge.
+     * @param count The number of edges in the batch, taken from the front of both arrays.
+     * @return The number of edges that did not exist before.
+     * @custom.precondition Both arrays hold at least `count` valid vertex slots.
+     * @custom.postcondition Every edge of the batch exists in the store.
+     */
+    default long addEdges(int[] from, int[] to, int count){
+        long added = 0;
+        for (int i = 0; i < count; i++){
+            if (addEdge(from[i], to[i])){
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes a directed edge between two vertices.
+     * @param from The vertex that follows.
+     * @param to The vertex being followed.
+     * @return True if the edge was removed, false if it did not exist.
+     * @custom.precondition `from` and `to` are valid vertex slots.
+     * @custom.postcondition The edge from `from` to `to` no longer exists in the store.
+     */
+    boolean removeEdge(int from, int to);
+
+    /**
+     * Checks whether a directed edge exists.
+     * @param from The vertex that follows.
+     * @param to The vertex being followed.
+     * @return True if `from` follows `to`, false otherwise.
+     * @custom.precondition `from` and `to` are valid vertex slots.
+     */
+    boolean hasEdge(int from, int to);
+
+    /**
+     * Gets the out-neighbors (followed vertices) of a vertex in ascending order.
+     * @param v The vertex.
+     * @return The sorted array of out-neighbors. The array may be shared and must not be modified.
+     * @custom.precondition `v` is a valid vertex slot.
+     */
+    int[] outNeighbors(int v);
+
+    /**
+     * Gets the in-neighbors (followers) of a vertex in ascending order.
+     * @param v The vertex.
+     * @return The sorted array of in-neighbors. The array may be shared and must not be modified.
+     * @custom.precondition `v` is a valid vertex slot.
+     */
+    int[] inNeighbors(int v);
+
+    /**
+     * Calls the action for every out-neighbor of a vertex in ascending order, without allocating.
+     * @param v The vertex.
+     * @param action The action to run for each out-neighbor.
+     * @custom.precondition `v` is a valid vertex slot and `action` is non-null.
+     */
+    void forEachOut(int v, IntConsumer action);
+
+    /**
+     * Calls the action for every in-neighbor of a vertex in ascending order, without allocating.
+     * @param v The vertex.
+     * @param action The action to run for each in-neighbor.
+     * @custom.precondition `v` is a valid vertex slot and `action` is non-null.
+     */
+    void forEachIn(int v, IntConsumer action);
+
+    /**
+     * Gets the number of vertices a vertex follows.
+     * @param v The vertex.
+     * @return The out-degree of `v`.
+     * @custom.precondition `v` is a valid vertex slot.
+     */
+    int outDegree(int v);
+
+    /**
+     * Gets the number of followers of a vertex.
+     * @param v The vertex.
+     * @return The in-degree of `v`.
+     * @custom.precondition `v` is a valid vertex slot.
+     */
+    int inDegree(int v);
+
+    /**
+     * Gets the vertices followed by both `a` and `b`.
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @return The sorted array of common out-neighbors.
+     * @custom.precondition `a` and `b` are valid vertex slots.
+     */
+    int[] commonOut(int a, int b);
+
+    /**
+     * Gets the vertices that follow both `a` and `b`.
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @return The sorted array of common in-neighbors.
+     * @custom.precondition `a` and `b` are valid vertex slots.
+     */
+    int[] commonIn(int a, int b);
+
+    /**
+     * Counts the vertices followed by both `a` and `b`.
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @return The number of common out-neighbors.
+     * @custom.precondition `a` and `b` are valid vertex slots.
+     */
+    int countCommonOut(int a, int b);
+
+    /**
+     * Counts the vertices that follow both `a` and `b`.
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @return The number of common in-neighbors.
+     * @custom.precondition `a` and `b` are valid vertex slots.
+     */
+    int countCommonIn(int a, int b);
+
+    /**
+     * Counts, for each of several vertices, the vertices that follow both it and `a`, reading the followers of `a` once
+     * for the whole batch rather than once per vertex.
+     * @param a The vertex to compare against.
+     * @param vs The vertices to compare with `a`.
+     * @return The number of common in-neighbors of `a` and each of `vs`, in the order of `vs`.
+     * @custom.precondition `a` and every element of `vs` are valid vertex slots.
+     */
+    int[] countCommonIn(int a, int[] vs);
+
+    /**
+     * Gets the vertices that `v` follows and that follow `v` back.
+     * @param v The vertex.
+     * @return The sorted array of mutual neighbors.
+     * @custom.precondition `v` is a valid vertex slot.
+     */
+    int[] mutualNeighbors(int v);
+
+    /**
+     * Removes every edge into and out of a vertex. The slot itself stays in place.
+     * @param v The vertex to clear.
+     * @custom.precondition `v` is a valid vertex slot.
+     * @custom.postcondition The vertex has no edges. No other vertex changes slot.
+     */
+    void clearVertex(int v);
+
+    /**
+     * Renumbers the vertex slots in one batch, dropping the slots that are mapped away.
+     * @param remap For every current slot, its new slot, or -1 if the slot is dropped.
+     * @param newCount The number of slots after compaction.
+     * @custom.precondition `remap` has one entry per current slot, maps the kept slots one to one onto 0..newCount-1 in any order, and every dropped slot has no edges.
+     * @custom.postcondition Every kept vertex has moved to its new slot with its edges renumbered, and the store has `newCount` slots.
+     */
+    void compact(int[] remap, int newCount);
+
+    /**
+     * Takes a point-in-time copy of the store that shares its rows with this one instead of copying them.
+     * Later changes to either store are not seen by the other.
+     * @return A store with the same vertex slots and edges.
+     * @custom.precondition No writer changes the store while the copy is taken.
+     * @custom.postcondition The copy keeps reporting the current edges, whatever later happens to this store.
+     */
+    Adjacency snapshot();
+}
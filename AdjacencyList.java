@@ -0,0 +1,713 @@
+/**
+ * Growable sparse adjacency store for the FollowGraph.
+ * Every vertex keeps a sorted array of out-edges (users it follows) and a sorted array of in-edges (its followers).
+ * Rows keep spare capacity and a separate length, so a follow or unfollow shifts the row in place instead of copying it;
+ * a row grows by doubling and is shrunk once it is less than a quarter full, so memory stays proportional to the edges.
+ * Every row has a stamp that its writer makes odd while it changes the row. Readers read a row optimistically and read it
+ * again if the stamp moved, and the edge count is updated atomically, so readers may run alongside writers of any row:
+ * a reader that overlaps a writer of the same row sees each neighbor either before or after the change. Writers of the
+ * same row must be serialized by the caller.
+ * Snapshots share rows copy-on-write: every snapshot starts a new epoch, and a row whose epoch is older than the store's
+ * is copied before it is first changed in place. Rows that are not owned by the current epoch never change, so they are
+ * handed to callers as they are.
+ */
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class AdjacencyList implements Adjacency{
+    // Kept at the value computed for the class before it was declared, so that graphs already saved can still be read.
+    private static final long serialVersionUID = -3787819825161243853L;
+    private static final int[] EMPTY = new int[0];
+    private static final VarHandle ROWS = MethodHandles.arrayElementVarHandle(int[][].class);
+    private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final ThreadLocal<long[]> MARKS = ThreadLocal.withInitial(() -> new long[0]);
+    private static final VarHandle EDGE_COUNT;
+    static {
+        try {
+            EDGE_COUNT = MethodHandles.lookup().findVarHandle(AdjacencyList.class, "edgeCount", long.class);
+        } catch (ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private Rows out = new Rows();
+    private Rows in = new Rows();
+    private int vertexCount = 0;
+    private long edgeCount = 0;
+
+    /**
+     * Constructs an empty adjacency store.
+     * @custom.postcondition An adjacency store with no vertices and no edges is created.
+     */
+    public AdjacencyList(){}
+
+    /**
+     * Builds an adjacency store from complete out-edge rows in one pass, deriving the in-edge rows by counting.
+     * This costs O(n + m), where repeated addEdge calls would shift a row on every insert.
+     * @param rows The out-edge row of every vertex. The arrays are kept, not copied, and are copied before any change.
+     * @return An adjacency store with rows.length vertices and the given edges.
+     * @custom.precondition Every row is sorted in strictly increasing order, holds only vertices between 0 and rows.length - 1, and is not modified afterwards.
+     * @custom.postcondition The store reports exactly the given edges.
+     */
+    public static AdjacencyList fromRows(int[][] rows){
+        int n = rows.length;
+        AdjacencyList result = new AdjacencyList();
+        result.ensureCapacity(n);
+        int[] inDegree = new int[n];
+        long edges = 0;
+        for (int v = 0; v < n; v++){
+            result.out.set(v, rows[v].length == 0 ? EMPTY : rows[v], rows[v].length);
+            edges += rows[v].length;
+            for (int w : rows[v]){
+                inDegree[w]++;
+            }
+        }
+        int[][] cols = new int[n][];
+        for (int v = 0; v < n; v++){
+            cols[v] = inDegree[v] == 0 ? EMPTY : new int[inDegree[v]];
+            inDegree[v] = 0;
+        }
+        // Sources are visited in increasing order, so every in-edge row comes out sorted.
+        for (int v = 0; v < n; v++){
+            for (int w : rows[v]){
+                cols[w][inDegree[w]++] = v;
+            }
+        }
+        for (int v = 0; v < n; v++){
+            result.in.set(v, cols[v], cols[v].length);
+        }
+        result.edgeCount = edges;
+        return result;
+    }
+
+    @Override
+    public int getVertexCount(){
+        return vertexCount;
+    }
+
+    @Override
+    public long getEdgeCount(){
+        return (long) EDGE_COUNT.getVolatile(this);
+    }
+
+    @Override
+    public void ensureCapacity(int n){
+        if (n <= vertexCount){
+            return;
+        }
+        if (n > out.rows.length){
+            int newLength = Math.max(n, Math.max(16, out.rows.length * 2));
+            out.grow(newLength);
+            in.grow(newLength);
+        }
+        for (int i = vertexCount; i < n; i++){
+            out.rows[i] = EMPTY;
+            in.rows[i] = EMPTY;
+        }
+        vertexCount = n;
+    }
+
+    @Override
+    public boolean addEdge(int from, int to){
+        if (!out.add(from, to)){
+            return false;
+        }
+        in.add(to, from);
+        EDGE_COUNT.getAndAdd(this, 1L);
+        return true;
+    }
+
+    /**
+     * Merges the whole batch into the rows at once: the edges are bucketed by source with a counting sort, each touched
+     * row is rebuilt once by merging its sorted new edges into it, and the in-edge rows are rebuilt the same way. This
+     * costs O(n + m + batch log batch) instead of shifting a row for every single edge.
+     */
+    @Override
+    public long addEdges(int[] from, int[] to, int count){
+        int n = vertexCount;
+        int[] start = new int[n + 1];
+        for (int i = 0; i < count; i++){
+            start[from[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++){
+            start[v + 1] += start[v];
+        }
+        int[] targets = new int[count];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < count; i++){
+            targets[fill[from[i]]++] = to[i];
+        }
+
+        // Rebuild every touched out-row, keeping the edges that are really new in source order.
+        int[] addedFrom = new int[count];
+        int[] addedTo = new int[count];
+        int added = 0;
+        for (int v = 0; v < n; v++){
+            int lo = start[v];
+            int hi = start[v + 1];
+            if (lo == hi){
+                continue;
+            }
+            Arrays.sort(targets, lo, hi);
+            int[] row = out.rows[v];
+            int length = out.length[v];
+            int[] merged = new int[length + hi - lo];
+            int size = 0;
+            int i = 0;
+            int j = lo;
+            while (i < length || j < hi){
+                if (j == hi || (i < length && row[i] <= targets[j])){
+                    if (j < hi && row[i] == targets[j]){
+                        j++;
+                        continue;
+                    }
+                    merged[size++] = row[i++];
+                } else {
+                    int w = targets[j++];
+                    if (size > 0 && merged[size - 1] == w){
+                        continue;
+                    }
+                    merged[size++] = w;
+                    addedFrom[added] = v;
+                    addedTo[added] = w;
+                    added++;
+                }
+            }
+            out.set(v, merged, size);
+        }
+
+        // The new edges come out grouped by ascending source, so bucketing them by target keeps every bucket sorted.
+        Arrays.fill(start, 0);
+        for (int i = 0; i < added; i++){
+            start[addedTo[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++){
+            start[v + 1] += start[v];
+        }
+        int[] sources = new int[added];
+        fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < added; i++){
+            sources[fill[addedTo[i]]++] = addedFrom[i];
+        }
+        for (int v = 0; v < n; v++){
+            int lo = start[v];
+            int hi = start[v + 1];
+            if (lo == hi){
+                continue;
+            }
+            int[] row = in.rows[v];
+            int length = in.length[v];
+            int[] merged = new int[length + hi - lo];
+            int size = 0;
+            int i = 0;
+            int j = lo;
+            while (i < length || j < hi){
+                if (j == hi || (i < length && row[i] < sources[j])){
+                    merged[size++] = row[i++];
+                } else {
+                    merged[size++] = sources[j++];
+                }
+            }
+            in.set(v, merged, size);
+        }
+        edgeCount += added;
+        return added;
+    }
+
+    @Override
+    public boolean removeEdge(int from, int to){
+        if (!out.remove(from, to)){
+            return false;
+        }
+        in.remove(to, from);
+        EDGE_COUNT.getAndAdd(this, -1L);
+        return true;
+    }
+
+    @Override
+    public boolean hasEdge(int from, int to){
+        return out.contains(from, to);
+    }
+
+    @Override
+    public int[] outNeighbors(int v){
+        return out.read(v);
+    }
+
+    @Override
+    public int[] inNeighbors(int v){
+        return in.read(v);
+    }
+
+    @Override
+    public void forEachOut(int v, IntConsumer action){
+        out.forEach(v, action);
+    }
+
+    @Override
+    public void forEachIn(int v, IntConsumer action){
+        in.forEach(v, action);
+    }
+
+    @Override
+    public int outDegree(int v){
+        return out.length[v];
+    }
+
+    @Override
+    public int inDegree(int v){
+        return in.length[v];
+    }
+
+    @Override
+    public int[] commonOut(int a, int b){
+        return intersect(out, a, out, b);
+    }
+
+    @Override
+    public int[] commonIn(int a, int b){
+        return intersect(in, a, in, b);
+    }
+
+    @Override
+    public int countCommonOut(int a, int b){
+        return countIntersection(out, a, out, b);
+    }
+
+    @Override
+    public int countCommonIn(int a, int b){
+        return countIntersection(in, a, in, b);
+    }
+
+    @Override
+    public int[] countCommonIn(int a, int[] vs){
+        // The followers of `a` are marked in a per-thread bitset, so each candidate row is scanned once with a bit test
+        // per entry, instead of being merged against the row of `a` again for every candidate.
+        int[] followers = in.read(a);
+        long[] marks = MARKS.get();
+        int words = (vertexCount + 63) >>> 6;
+        if (marks.length < words){
+            marks = new long[Math.max(words, marks.length * 2)];
+            MARKS.set(marks);
+        }
+        for (int u : followers){
+            marks[u >>> 6] |= 1L << u;
+        }
+        int[] counts = new int[vs.length];
+        try {
+            for (int i = 0; i < vs.length; i++){
+                int v = vs[i];
+                int count;
+                int stamp;
+                do {
+                    stamp = in.readStamp(v);
+                    int[] row = in.row(v);
+                    int length = Math.min(in.length[v], row.length);
+                    count = 0;
+                    for (int k = 0; k < length; k++){
+                        int u = row[k];
+                        if (u >>> 6 < marks.length){
+                            count += (int) (marks[u >>> 6] >>> u) & 1;
+                        }
+                    }
+                } while (!in.validate(v, stamp));
+                counts[i] = count;
+            }
+        } finally {
+            for (int u : followers){
+                marks[u >>> 6] = 0;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] mutualNeighbors(int v){
+        return intersect(out, v, in, v);
+    }
+
+    @Override
+    public void clearVertex(int v){
+        int[] row = out.rows[v];
+        for (int i = 0; i < out.length[v]; i++){
+            if (row[i] != v){
+                in.remove(row[i], v);
+            }
+        }
+        int[] col = in.rows[v];
+        for (int i = 0; i < in.length[v]; i++){
+            if (col[i] != v){
+                out.remove(col[i], v);
+            }
+        }
+        edgeCount -= out.length[v] + in.length[v];
+        if (out.contains(v, v)){
+            edgeCount++;
+        }
+        out.set(v, EMPTY, 0);
+        in.set(v, EMPTY, 0);
+    }
+
+    @Override
+    public void compact(int[] remap, int newCount){
+        Rows newOut = new Rows();
+        Rows newIn = new Rows();
+        int length = Math.max(newCount, 16);
+        newOut.grow(length);
+        newIn.grow(length);
+        for (int v = 0; v < vertexCount; v++){
+            if (remap[v] >= 0){
+                int[] row = renumber(out.rows[v], out.length[v], remap);
+                int[] col = renumber(in.rows[v], in.length[v], remap);
+                newOut.set(remap[v], row, row.length);
+                newIn.set(remap[v], col, col.length);
+            }
+        }
+        out = newOut;
+        in = newIn;
+        vertexCount = newCount;
+    }
+
+    /**
+     * Shares every row with the copy and starts a new epoch, so that both stores copy a shared row before changing it.
+     * Only the row lengths are copied.
+     */
+    @Override
+    public AdjacencyList snapshot(){
+        AdjacencyList copy = new AdjacencyList();
+        copy.out = out.snapshot(vertexCount);
+        copy.in = in.snapshot(vertexCount);
+        copy.vertexCount = vertexCount;
+        copy.edgeCount = getEdgeCount();
+        return copy;
+    }
+
+    /**
+     * Merges two sorted rows into the sorted array of values present in both, reading them again if a writer changed either.
+     */
+    private static int[] intersect(Rows as, int a, Rows bs, int b){
+        for (;;){
+            int stampA = as.readStamp(a);
+            int stampB = bs.readStamp(b);
+            int[] rowA = as.row(a);
+            int[] rowB = bs.row(b);
+            int[] result = intersect(rowA, Math.min(as.length[a], rowA.length), rowB, Math.min(bs.length[b], rowB.length));
+            if (as.validate(a, stampA) && bs.validate(b, stampB)){
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Counts the values present in both sorted rows, reading them again if a writer changed either.
+     */
+    private static int countIntersection(Rows as, int a, Rows bs, int b){
+        for (;;){
+            int stampA = as.readStamp(a);
+            int stampB = bs.readStamp(b);
+            int[] rowA = as.row(a);
+            int[] rowB = bs.row(b);
+            int count = countIntersection(rowA, Math.min(as.length[a], rowA.length), rowB, Math.min(bs.length[b], rowB.length));
+            if (as.validate(a, stampA) && bs.validate(b, stampB)){
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Merges the first `m` values of one sorted row and the first `n` of another into the sorted array of values present in both.
+     */
+    static int[] intersect(int[] a, int m, int[] b, int n){
+        int[] result = new int[Math.min(m, n)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < m && j < n){
+            if (a[i] < b[j]){
+                i++;
+            } else if (a[i] > b[j]){
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Counts the values present in both the first `m` values of one sorted row and the first `n` of another.
+     */
+    static int countIntersection(int[] a, int m, int[] b, int n){
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < m && j < n){
+            if (a[i] < b[j]){
+                i++;
+            } else if (a[i] > b[j]){
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a row with the first `length` vertex ids replaced by their new slots, sorted again only if the remapping
+     * changed their order.
+     */
+    private static int[] renumber(int[] row, int length, int[] remap){
+        if (length == 0){
+            return EMPTY;
+        }
+        int[] result = new int[length];
+        boolean sorted = true;
+        for (int i = 0; i < length; i++){
+            result[i] = remap[row[i]];
+            sorted &= i == 0 || result[i] > result[i - 1];
+        }
+        if (!sorted){
+            Arrays.sort(result);
+        }
+        return result;
+    }
+
+    /**
+     * One direction of the store: a row, a length, an owning epoch and a stamp for every vertex.
+     */
+    private static class Rows implements Serializable{
+        private static final long serialVersionUID = 1L;
+        private int[][] rows = new int[0][];
+        private int[] length = new int[0];
+        private int[] owner = new int[0];
+        private transient int[] stamps = new int[0];
+        // Starts above 0, the owner of rows that no epoch owns.
+        private int epoch = 1;
+
+        /**
+         * Grows the per-vertex arrays to the given length. The new slots are left for the caller to fill.
+         */
+        void grow(int newLength){
+            rows = Arrays.copyOf(rows, newLength);
+            length = Arrays.copyOf(length, newLength);
+            owner = Arrays.copyOf(owner, newLength);
+            stamps = Arrays.copyOf(stamps, newLength);
+        }
+
+        /**
+         * Replaces a row while the caller has exclusive access to the store. The row is not owned by any epoch, so it is
+         * never changed in place and can be handed out as it is; the first change copies it into a row with room to grow.
+         */
+        void set(int v, int[] row, int size){
+            publish(v, row);
+            length[v] = size;
+            owner[v] = 0;
+        }
+
+        /**
+         * Shares every row with a copy of the first `count` vertices, and starts a new epoch so that this store copies
+         * a row before changing it again.
+         */
+        Rows snapshot(int count){
+            Rows copy = new Rows();
+            copy.rows = Arrays.copyOf(rows, count);
+            copy.length = Arrays.copyOf(length, count);
+            copy.owner = new int[count];
+            copy.stamps = new int[count];
+            epoch++;
+            return copy;
+        }
+
+        /**
+         * Inserts a value into a sorted row, in place if this store owns the row and it has room, and otherwise into a
+         * new row with twice the room.
+         * @return True if the value was inserted, false if the row already held it.
+         */
+        boolean add(int v, int value){
+            int[] row = rows[v];
+            int size = length[v];
+            int pos = Arrays.binarySearch(row, 0, size, value);
+            if (pos >= 0){
+                return false;
+            }
+            pos = -pos - 1;
+            beginWrite(v);
+            try {
+                if (owner[v] == epoch && size < row.length){
+                    System.arraycopy(row, pos, row, pos + 1, size - pos);
+                    row[pos] = value;
+                } else {
+                    int[] grown = new int[Math.max(4, size * 2)];
+                    System.arraycopy(row, 0, grown, 0, pos);
+                    grown[pos] = value;
+                    System.arraycopy(row, pos, grown, pos + 1, size - pos);
+                    publish(v, grown);
+                    owner[v] = epoch;
+                }
+                length[v] = size + 1;
+            } finally {
+                endWrite(v);
+            }
+            return true;
+        }
+
+        /**
+         * Removes a value from a sorted row, in place if this store owns the row and it stays at least a quarter full,
+         * and otherwise into a new row of exactly the remaining size.
+         * @return True if the value was removed, false if the row did not hold it.
+         */
+        boolean remove(int v, int value){
+            int[] row = rows[v];
+            int size = length[v];
+            int pos = Arrays.binarySearch(row, 0, size, value);
+            if (pos < 0){
+                return false;
+            }
+            beginWrite(v);
+            try {
+                if (size == 1){
+                    publish(v, EMPTY);
+                } else if (owner[v] == epoch && (size - 1) * 4 >= row.length){
+                    System.arraycopy(row, pos + 1, row, pos, size - pos - 1);
+                } else {
+                    int[] shrunk = new int[size - 1];
+                    System.arraycopy(row, 0, shrunk, 0, pos);
+                    System.arraycopy(row, pos + 1, shrunk, pos, size - pos - 1);
+                    publish(v, shrunk);
+                    owner[v] = epoch;
+                }
+                length[v] = size - 1;
+            } finally {
+                endWrite(v);
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether a row holds a value.
+         */
+        boolean contains(int v, int value){
+            for (;;){
+                int stamp = readStamp(v);
+                int[] row = row(v);
+                boolean found = Arrays.binarySearch(row, 0, Math.min(length[v], row.length), value) >= 0;
+                if (validate(v, stamp)){
+                    return found;
+                }
+            }
+        }
+
+        /**
+         * Gets a row of exactly its length that will never change. A row that this store does not own already never
+         * changes, so it is returned as it is, after trimming it once if it has spare room; an owned row is copied.
+         */
+        int[] read(int v){
+            for (;;){
+                int stamp = readStamp(v);
+                int[] row = row(v);
+                int size = Math.min(length[v], row.length);
+                boolean shared = owner[v] != epoch;
+                int[] result = (shared || size == 0) && size == row.length ? row : Arrays.copyOf(row, size);
+                if (validate(v, stamp)){
+                    if (shared && result != row){
+                        // A writer that got in first has published its own copy, which the failed exchange leaves alone.
+                        ROWS.compareAndSet(rows, v, row, result);
+                    }
+                    return result;
+                }
+            }
+        }
+
+        /**
+         * Calls the action for every value of a row in ascending order. If a writer changes the row part-way through,
+         * the scan picks up again after the last value it passed on.
+         */
+        void forEach(int v, IntConsumer action){
+            int stamp = readStamp(v);
+            int[] row = row(v);
+            int size = Math.min(length[v], row.length);
+            int i = 0;
+            int last = -1;
+            while (i < size){
+                int w = row[i];
+                if (!validate(v, stamp)){
+                    stamp = readStamp(v);
+                    row = row(v);
+                    size = Math.min(length[v], row.length);
+                    int pos = Arrays.binarySearch(row, 0, size, last + 1);
+                    i = pos >= 0 ? pos : -pos - 1;
+                    continue;
+                }
+                action.accept(w);
+                last = w;
+                i++;
+            }
+        }
+
+        /**
+         * Reads a row with acquire semantics, so that a replaced row is seen with its contents.
+         */
+        int[] row(int v){
+            return (int[]) ROWS.getAcquire(rows, v);
+        }
+
+        /**
+         * Replaces a row with release semantics, so that a reader that sees the new row also sees its contents.
+         */
+        private void publish(int v, int[] row){
+            ROWS.setRelease(rows, v, row);
+        }
+
+        /**
+         * Starts an optimistic read of a row, waiting out a writer that is changing it.
+         * @return The stamp to validate the read against.
+         */
+        int readStamp(int v){
+            int stamp;
+            while (((stamp = (int) STAMPS.getAcquire(stamps, v)) & 1) != 0){
+                Thread.onSpinWait();
+            }
+            return stamp;
+        }
+
+        /**
+         * Checks that no writer has started to change a row since its stamp was read.
+         */
+        boolean validate(int v, int stamp){
+            VarHandle.acquireFence();
+            return (int) STAMPS.getOpaque(stamps, v) == stamp;
+        }
+
+        /**
+         * Marks a row as being changed, before any of its values are.
+         */
+        private void beginWrite(int v){
+            STAMPS.setOpaque(stamps, v, stamps[v] + 1);
+            VarHandle.storeStoreFence();
+        }
+
+        /**
+         * Marks a row as consistent again, after all of its values have been changed.
+         */
+        private void endWrite(int v){
+            STAMPS.setRelease(stamps, v, stamps[v] + 1);
+        }
+
+        /**
+         * Restores a serialized direction with no writer in progress on any row.
+         */
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+            in.defaultReadObject();
+            stamps = new int[rows.length];
+        }
+    }
+}
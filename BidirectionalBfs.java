@@ -0,0 +1,158 @@
+/**
+ * Shortest path search that runs Breadth-First Search from both ends at once.
+ * The forward search follows out-edges from the source and the backward search follows in-edges from the destination,
+ * always expanding whichever frontier is smaller. All bookkeeping lives in primitive arrays that are reused by each thread,
+ * and visited marks are epoch stamps, so nothing is allocated or cleared per query except the final path.
+ */
+import java.util.Arrays;
+
+public class BidirectionalBfs{
+    private static final ThreadLocal<BidirectionalBfs> WORKSPACE = ThreadLocal.withInitial(BidirectionalBfs::new);
+
+    private int[] forwardStamp = new int[0];
+    private int[] backwardStamp = new int[0];
+    private int[] forwardParent = new int[0];
+    private int[] backwardParent = new int[0];
+    private int[] forwardDist = new int[0];
+    private int[] backwardDist = new int[0];
+    private int[] forwardQueue = new int[0];
+    private int[] backwardQueue = new int[0];
+    private int epoch = 0;
+    private long edgesScanned = 0;
+
+    private BidirectionalBfs(){}
+
+    /**
+     * Finds a shortest path between two vertices using the calling thread's workspace.
+     * @param adjacency The adjacency store to search.
+     * @param source The vertex the path starts at.
+     * @param target The vertex the path ends at.
+     * @return The vertices along a shortest path from `source` to `target`, or null if `target` cannot be reached.
+     * @custom.precondition `source` and `target` are valid vertex slots of `adjacency`.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public static int[] shortestPath(Adjacency adjacency, int source, int target){
+        return WORKSPACE.get().search(adjacency, source, target);
+    }
+
+    /**
+     * Gets the number of edges the calling thread's last search scanned.
+     * @return The number of out-edges and in-edges followed by the last call to shortestPath on this thread.
+     */
+    public static long lastEdgesScanned(){
+        return WORKSPACE.get().edgesScanned;
+    }
+
+    /**
+     * Runs one bidirectional search on this workspace.
+     */
+    private int[] search(Adjacency adjacency, int source, int target){
+        edgesScanned = 0;
+        if (source == target){
+            return new int[]{source};
+        }
+        prepare(adjacency.getVertexCount());
+        forwardStamp[source] = epoch;
+        forwardParent[source] = -1;
+        forwardDist[source] = 0;
+        forwardQueue[0] = source;
+        backwardStamp[target] = epoch;
+        backwardParent[target] = -1;
+        backwardDist[target] = 0;
+        backwardQueue[0] = target;
+        int forwardHead = 0;
+        int forwardTail = 1;
+        int backwardHead = 0;
+        int backwardTail = 1;
+
+        while (forwardHead < forwardTail && backwardHead < backwardTail){
+            int best = Integer.MAX_VALUE;
+            int meetLeft = -1;
+            int meetRight = -1;
+            if (forwardTail - forwardHead <= backwardTail - backwardHead){
+                int levelEnd = forwardTail;
+                while (forwardHead < levelEnd){
+                    int u = forwardQueue[forwardHead++];
+                    int[] row = adjacency.outNeighbors(u);
+                    edgesScanned += row.length;
+                    for (int w : row){
+                        if (backwardStamp[w] == epoch && forwardDist[u] + 1 + backwardDist[w] < best){
+                            best = forwardDist[u] + 1 + backwardDist[w];
+                            meetLeft = u;
+                            meetRight = w;
+                        }
+                        if (forwardStamp[w] != epoch){
+                            forwardStamp[w] = epoch;
+                            forwardParent[w] = u;
+                            forwardDist[w] = forwardDist[u] + 1;
+                            forwardQueue[forwardTail++] = w;
+                        }
+                    }
+                }
+            } else {
+                int levelEnd = backwardTail;
+                while (backwardHead < levelEnd){
+                    int u = backwardQueue[backwardHead++];
+                    int[] row = adjacency.inNeighbors(u);
+                    edgesScanned += row.length;
+                    for (int w : row){
+                        if (forwardStamp[w] == epoch && forwardDist[w] + 1 + backwardDist[u] < best){
+                            best = forwardDist[w] + 1 + backwardDist[u];
+                            meetLeft = w;
+                            meetRight = u;
+                        }
+                        if (backwardStamp[w] != epoch){
+                            backwardStamp[w] = epoch;
+                            backwardParent[w] = u;
+                            backwardDist[w] = backwardDist[u] + 1;
+                            backwardQueue[backwardTail++] = w;
+                        }
+                    }
+                }
+            }
+            if (meetLeft >= 0){
+                return buildPath(meetLeft, meetRight, best);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds the path through the meeting edge from the parent pointers of both searches.
+     */
+    private int[] buildPath(int meetLeft, int meetRight, int hops){
+        int[] path = new int[hops + 1];
+        int i = forwardDist[meetLeft];
+        for (int v = meetLeft; v != -1; v = forwardParent[v]){
+            path[i--] = v;
+        }
+        i = forwardDist[meetLeft] + 1;
+        for (int v = meetRight; v != -1; v = backwardParent[v]){
+            path[i++] = v;
+        }
+        return path;
+    }
+
+    /**
+     * Grows the arrays to the graph size and starts a new epoch so old visited marks become stale.
+     */
+    private void prepare(int n){
+        if (forwardStamp.length < n){
+            int length = Math.max(n, forwardStamp.length * 2);
+            forwardStamp = Arrays.copyOf(forwardStamp, length);
+            backwardStamp = Arrays.copyOf(backwardStamp, length);
+            forwardParent = new int[length];
+            backwardParent = new int[length];
+            forwardDist = new int[length];
+            backwardDist = new int[length];
+            forwardQueue = new int[length];
+            backwardQueue = new int[length];
+        }
+        if (epoch == Integer.MAX_VALUE){
+            Arrays.fill(forwardStamp, 0);
+            Arrays.fill(backwardStamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+    }
+}
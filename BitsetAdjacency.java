@@ -0,0 +1,366 @@
+/**
+ * Bit-packed adjacency store for the FollowGraph.
+ * Every vertex keeps its row (users it follows) and its column (its followers) as packed long words, so
+ * dense rows take one bit per cell, neighbor scans skip 64 empty cells at a time, and set queries AND whole words.
+ * Rows are allocated on first use and grown on demand, so users without edges cost nothing.
+ * Grown rows are published with release stores and read with acquire loads, words are changed in place, and the edge
+ * count is updated atomically, so readers may run alongside writers of other rows. A reader that overlaps a writer of
+ * the same row sees each bit either before or after the change. Writers of the same row must be serialized by the caller.
+ * Snapshots share rows copy-on-write: every snapshot starts a new epoch, and a row whose epoch is older than the store's
+ * is cloned before its words are first changed in place.
+ */
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class BitsetAdjacency implements Adjacency{
+    // Kept at the value computed for the class before it was declared, so that graphs already saved can still be read.
+    private static final long serialVersionUID = -6924356733263317379L;
+    private static final long[] EMPTY = new long[0];
+    private static final VarHandle ROWS = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final VarHandle EDGE_COUNT;
+    static {
+        try {
+            EDGE_COUNT = MethodHandles.lookup().findVarHandle(BitsetAdjacency.class, "edgeCount", long.class);
+        } catch (ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private long[][] rows = new long[0][];
+    private long[][] cols = new long[0][];
+    private int[] outDegree = new int[0];
+    private int[] inDegree = new int[0];
+    private int[] rowEpoch = new int[0];
+    private int[] colEpoch = new int[0];
+    private int epoch = 1;
+    private int vertexCount = 0;
+    private long edgeCount = 0;
+
+    /**
+     * Constructs an empty bit-packed adjacency store.
+     * @custom.postcondition An adjacency store with no vertices and no edges is created.
+     */
+    public BitsetAdjacency(){}
+
+    @Override
+    public int getVertexCount(){
+        return vertexCount;
+    }
+
+    @Override
+    public long getEdgeCount(){
+        return (long) EDGE_COUNT.getVolatile(this);
+    }
+
+    @Override
+    public void ensureCapacity(int n){
+        if (n <= vertexCount){
+            return;
+        }
+        if (n > rows.length){
+            int newLength = Math.max(n, Math.max(64, rows.length * 2));
+            rows = Arrays.copyOf(rows, newLength);
+            cols = Arrays.copyOf(cols, newLength);
+            outDegree = Arrays.copyOf(outDegree, newLength);
+            inDegree = Arrays.copyOf(inDegree, newLength);
+            rowEpoch = Arrays.copyOf(rowEpoch, newLength);
+            colEpoch = Arrays.copyOf(colEpoch, newLength);
+        }
+        for (int i = vertexCount; i < n; i++){
+            rows[i] = EMPTY;
+            cols[i] = EMPTY;
+        }
+        vertexCount = n;
+    }
+
+    @Override
+    public boolean addEdge(int from, int to){
+        long[] row = row(rows, from);
+        if (testBit(row, to)){
+            return false;
+        }
+        publish(rows, from, setBit(ownedRow(rows, rowEpoch, from), to));
+        publish(cols, to, setBit(ownedRow(cols, colEpoch, to), from));
+        outDegree[from]++;
+        inDegree[to]++;
+        EDGE_COUNT.getAndAdd(this, 1L);
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int from, int to){
+        long[] row = row(rows, from);
+        if (!testBit(row, to)){
+            return false;
+        }
+        ownedRow(rows, rowEpoch, from)[to >>> 6] &= ~(1L << to);
+        ownedRow(cols, colEpoch, to)[from >>> 6] &= ~(1L << from);
+        outDegree[from]--;
+        inDegree[to]--;
+        EDGE_COUNT.getAndAdd(this, -1L);
+        return true;
+    }
+
+    @Override
+    public boolean hasEdge(int from, int to){
+        return testBit(row(rows, from), to);
+    }
+
+    @Override
+    public int[] outNeighbors(int v){
+        return decode(row(rows, v), outDegree[v]);
+    }
+
+    @Override
+    public int[] inNeighbors(int v){
+        return decode(row(cols, v), inDegree[v]);
+    }
+
+    @Override
+    public void forEachOut(int v, IntConsumer action){
+        forEachBit(row(rows, v), action);
+    }
+
+    @Override
+    public void forEachIn(int v, IntConsumer action){
+        forEachBit(row(cols, v), action);
+    }
+
+    @Override
+    public int outDegree(int v){
+        return outDegree[v];
+    }
+
+    @Override
+    public int inDegree(int v){
+        return inDegree[v];
+    }
+
+    @Override
+    public int[] commonOut(int a, int b){
+        return decodeAnd(row(rows, a), row(rows, b));
+    }
+
+    @Override
+    public int[] commonIn(int a, int b){
+        return decodeAnd(row(cols, a), row(cols, b));
+    }
+
+    @Override
+    public int countCommonOut(int a, int b){
+        return countAnd(row(rows, a), row(rows, b));
+    }
+
+    @Override
+    public int countCommonIn(int a, int b){
+        return countAnd(row(cols, a), row(cols, b));
+    }
+
+    @Override
+    public int[] countCommonIn(int a, int[] vs){
+        long[] followers = row(cols, a);
+        int[] counts = new int[vs.length];
+        for (int i = 0; i < vs.length; i++){
+            counts[i] = countAnd(followers, row(cols, vs[i]));
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] mutualNeighbors(int v){
+        return decodeAnd(row(rows, v), row(cols, v));
+    }
+
+    @Override
+    public void clearVertex(int v){
+        long[] row = rows[v];
+        for (int w = 0; w < row.length; w++){
+            for (long word = row[w]; word != 0; word &= word - 1){
+                int to = (w << 6) + Long.numberOfTrailingZeros(word);
+                ownedRow(cols, colEpoch, to)[v >>> 6] &= ~(1L << v);
+                inDegree[to]--;
+                edgeCount--;
+            }
+        }
+        long[] col = cols[v];
+        for (int w = 0; w < col.length; w++){
+            for (long word = col[w]; word != 0; word &= word - 1){
+                int from = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (from != v){
+                    ownedRow(rows, rowEpoch, from)[v >>> 6] &= ~(1L << v);
+                    outDegree[from]--;
+                    edgeCount--;
+                }
+            }
+        }
+        rows[v] = EMPTY;
+        cols[v] = EMPTY;
+        outDegree[v] = 0;
+        inDegree[v] = 0;
+    }
+
+    @Override
+    public void compact(int[] remap, int newCount){
+        int length = Math.max(newCount, 64);
+        long[][] newRows = new long[length][];
+        long[][] newCols = new long[length][];
+        int[] newOutDegree = new int[length];
+        int[] newInDegree = new int[length];
+        for (int v = 0; v < vertexCount; v++){
+            int target = remap[v];
+            if (target >= 0){
+                newRows[target] = renumber(rows[v], remap);
+                newCols[target] = renumber(cols[v], remap);
+                newOutDegree[target] = outDegree[v];
+                newInDegree[target] = inDegree[v];
+            }
+        }
+        rows = newRows;
+        cols = newCols;
+        outDegree = newOutDegree;
+        inDegree = newInDegree;
+        // The renumbered rows are all new, so this store owns every one of them.
+        rowEpoch = new int[length];
+        colEpoch = new int[length];
+        Arrays.fill(rowEpoch, epoch);
+        Arrays.fill(colEpoch, epoch);
+        vertexCount = newCount;
+    }
+
+    /**
+     * Shares every row with the copy and starts a new epoch, so that both stores clone a shared row before changing it.
+     * Only the degree arrays are copied.
+     */
+    @Override
+    public BitsetAdjacency snapshot(){
+        BitsetAdjacency copy = new BitsetAdjacency();
+        copy.rows = Arrays.copyOf(rows, vertexCount);
+        copy.cols = Arrays.copyOf(cols, vertexCount);
+        copy.outDegree = Arrays.copyOf(outDegree, vertexCount);
+        copy.inDegree = Arrays.copyOf(inDegree, vertexCount);
+        copy.rowEpoch = new int[vertexCount];
+        copy.colEpoch = new int[vertexCount];
+        copy.vertexCount = vertexCount;
+        copy.edgeCount = getEdgeCount();
+        epoch++;
+        return copy;
+    }
+
+    /**
+     * Gets a row that may be changed in place, cloning and publishing it first if it may be shared with a snapshot.
+     */
+    private long[] ownedRow(long[][] rows, int[] owner, int v){
+        long[] row = row(rows, v);
+        if (owner[v] != epoch){
+            if (row.length > 0){
+                row = row.clone();
+                publish(rows, v, row);
+            }
+            owner[v] = epoch;
+        }
+        return row;
+    }
+
+    /**
+     * Reads a row with acquire semantics, so that a grown row is seen with its contents.
+     */
+    private static long[] row(long[][] rows, int v){
+        return (long[]) ROWS.getAcquire(rows, v);
+    }
+
+    /**
+     * Replaces a row with release semantics, so that a reader that sees the new row also sees its contents.
+     */
+    private static void publish(long[][] rows, int v, long[] row){
+        ROWS.setRelease(rows, v, row);
+    }
+
+    /**
+     * Checks a bit, treating words past the end of the array as zero.
+     */
+    private static boolean testBit(long[] words, int bit){
+        int w = bit >>> 6;
+        return w < words.length && (words[w] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Sets a bit, growing the array if needed, and returns the array that holds it.
+     */
+    private static long[] setBit(long[] words, int bit){
+        int w = bit >>> 6;
+        if (w >= words.length){
+            words = Arrays.copyOf(words, Math.max(w + 1, words.length * 2));
+        }
+        words[w] |= 1L << bit;
+        return words;
+    }
+
+    /**
+     * Calls the action for every set bit in ascending order.
+     */
+    private static void forEachBit(long[] words, IntConsumer action){
+        for (int w = 0; w < words.length; w++){
+            for (long word = words[w]; word != 0; word &= word - 1){
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+    }
+
+    /**
+     * Expands a bitset with an expected population count into a sorted array of bit positions.
+     * The count is only a sizing hint, since a writer may change the bitset while it is being read.
+     */
+    private static int[] decode(long[] words, int count){
+        int[] result = new int[count];
+        int i = 0;
+        for (int w = 0; w < words.length; w++){
+            for (long word = words[w]; word != 0; word &= word - 1){
+                if (i == result.length){
+                    result = Arrays.copyOf(result, Math.max(4, i * 2));
+                }
+                result[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return i == result.length ? result : Arrays.copyOf(result, i);
+    }
+
+    /**
+     * Expands the intersection of two bitsets into a sorted array of bit positions.
+     */
+    private static int[] decodeAnd(long[] a, long[] b){
+        int length = Math.min(a.length, b.length);
+        long[] and = new long[length];
+        int count = 0;
+        for (int w = 0; w < length; w++){
+            and[w] = a[w] & b[w];
+            count += Long.bitCount(and[w]);
+        }
+        return decode(and, count);
+    }
+
+    /**
+     * Counts the bits set in both bitsets.
+     */
+    private static int countAnd(long[] a, long[] b){
+        int length = Math.min(a.length, b.length);
+        int count = 0;
+        for (int w = 0; w < length; w++){
+            count += Long.bitCount(a[w] & b[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Builds a new bitset with every set bit moved to its remapped position.
+     */
+    private static long[] renumber(long[] words, int[] remap){
+        long[] result = EMPTY;
+        for (int w = 0; w < words.length; w++){
+            for (long word = words[w]; word != 0; word &= word - 1){
+                result = setBit(result, remap[(w << 6) + Long.numberOfTrailingZeros(word)]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * Imports large user and connection files into a FollowGraph.
+ * The file is cut into chunks of about 8 MB at line boundaries, and the chunks are memory-mapped and tokenized in parallel
+ * straight from their bytes, without building a String per line or splitting it. Only a few chunks per worker are parsed
+ * ahead of the one being merged, so memory use does not grow with the file. Connection lines are resolved to user ids
+ * while they are parsed, and the resolved connections are merged into the adjacency store in large batches. Users are
+ * added a chunk at a time. Nothing is printed per line; the counts come back in one ImportReport.
+ *
+ * Lines end at "\n", "\r" or "\r\n", as with BufferedReader, and are read as UTF-8. Users are added in file order, so
+ * the result does not depend on how the chunks were scheduled.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+public class BulkImporter{
+    private static final int CHUNK_SIZE = 8 << 20;
+    private static final int MIN_BATCH = 1 << 20;
+
+    private final FollowGraph graph;
+
+    /**
+     * Constructs a new BulkImporter that adds to the given graph.
+     * @param graph The graph to import into.
+     * @custom.precondition 'graph' is non-null and is not changed by anyone else while an import runs.
+     * @custom.postcondition A BulkImporter for the graph is created.
+     */
+    public BulkImporter(FollowGraph graph){
+        this.graph = graph;
+    }
+
+    /**
+     * Adds every user named in a file with one username per line. Usernames that already exist are counted as duplicates.
+     * @param fileName The name of the file to import.
+     * @return The counts of the import.
+     * @throws IOException If the file cannot be read.
+     * @custom.precondition 'fileName' is non-null.
+     * @custom.postcondition Every non-blank line of the file names a user in the graph.
+     */
+    public ImportReport importUsers(String fileName) throws IOException{
+        long startTime = System.nanoTime();
+        long lines = 0;
+        long imported = 0;
+        long bytes = 0;
+        try (ChunkStream chunks = new ChunkStream(fileName, false)){
+            for (Chunk chunk = chunks.next(); chunk != null; chunk = chunks.next()){
+                lines += chunk.lines;
+                bytes += chunk.bytes;
+                imported += graph.addUsers(chunk.names, chunk.size);
+            }
+        }
+        return new ImportReport(lines, imported, lines - imported, 0, 0, bytes, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Adds every connection in a file with one "follower,followed" pair per line.
+     * A line must hold exactly two comma-separated usernames, ignoring empty fields at its end, and both users must exist.
+     * @param fileName The name of the file to import.
+     * @return The counts of the import.
+     * @throws IOException If the file cannot be read.
+     * @custom.precondition 'fileName' is non-null.
+     * @custom.postcondition Every well-formed line of the file between existing users is a connection in the graph.
+     */
+    public ImportReport importConnections(String fileName) throws IOException{
+        long startTime = System.nanoTime();
+        long lines = 0;
+        long malformed = 0;
+        long unknown = 0;
+        long valid = 0;
+        long imported = 0;
+        long bytes = 0;
+        // Every batch costs one pass over all the rows, so batches are kept at least as large as the user count.
+        int batchSize = Math.max(MIN_BATCH, graph.getAdjacency().getVertexCount());
+        int[] from = new int[0];
+        int[] to = new int[0];
+        int pending = 0;
+        try (ChunkStream chunks = new ChunkStream(fileName, true)){
+            for (Chunk chunk = chunks.next(); chunk != null; chunk = chunks.next()){
+                lines += chunk.lines;
+                malformed += chunk.malformed;
+                unknown += chunk.unknown;
+                bytes += chunk.bytes;
+                valid += chunk.size;
+                if (pending + chunk.size > from.length){
+                    int length = Math.max(pending + chunk.size, Math.min(batchSize, from.length * 2 + chunk.size));
+                    from = Arrays.copyOf(from, length);
+                    to = Arrays.copyOf(to, length);
+                }
+                System.arraycopy(chunk.from, 0, from, pending, chunk.size);
+                System.arraycopy(chunk.to, 0, to, pending, chunk.size);
+                pending += chunk.size;
+                if (pending >= batchSize){
+                    imported += graph.addConnections(from, to, pending);
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0){
+            imported += graph.addConnections(from, to, pending);
+        }
+        return new ImportReport(lines, imported, valid - imported, malformed, unknown, bytes, System.nanoTime() - startTime);
+    }
+
+    /**
+     * The records parsed from one chunk of the file.
+     */
+    private static class Chunk{
+        long lines;
+        long malformed;
+        long unknown;
+        long bytes;
+        int size;
+        String[] names = new String[0];
+        int[] from = new int[0];
+        int[] to = new int[0];
+    }
+
+    /**
+     * The chunks of one file, handed out in file order while the chunks after them are tokenized in parallel.
+     */
+    private class ChunkStream implements AutoCloseable{
+        private final FileChannel channel;
+        private final boolean connections;
+        private final List<long[]> ranges;
+        private final ArrayDeque<CompletableFuture<Chunk>> ahead = new ArrayDeque<>();
+        private final int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        private int next = 0;
+
+        /**
+         * Opens the file and cuts it into chunks.
+         */
+        ChunkStream(String fileName, boolean connections) throws IOException{
+            this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+            this.connections = connections;
+            try {
+                this.ranges = split(channel);
+            } catch (IOException e){
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Waits for the next chunk, starting more chunks so that a window of them is always being tokenized.
+         * @return The next chunk in file order, or null after the last one.
+         */
+        Chunk next() throws IOException{
+            while (next < ranges.size() && ahead.size() < window){
+                long[] range = ranges.get(next++);
+                ahead.add(CompletableFuture.supplyAsync(() -> parse(range)));
+            }
+            CompletableFuture<Chunk> chunk = ahead.poll();
+            if (chunk == null){
+                return null;
+            }
+            try {
+                return chunk.join();
+            } catch (CompletionException e){
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException){
+                    throw ((UncheckedIOException) cause).getCause();
+                } else if (cause instanceof RuntimeException){
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error){
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Maps and tokenizes one chunk.
+         */
+        private Chunk parse(long[] range){
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+                return connections ? parseConnections(buffer) : parseUsers(buffer);
+            } catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Waits for the chunks still being tokenized, then closes the file.
+         */
+        @Override
+        public void close() throws IOException{
+            for (CompletableFuture<Chunk> chunk : ahead){
+                chunk.exceptionally(e -> null).join();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Finds chunk boundaries about CHUNK_SIZE bytes apart, each moved forward to just after the next line break.
+     * @return The [start, end) byte ranges of the chunks.
+     */
+    private static List<long[]> split(FileChannel channel) throws IOException{
+        long size = channel.size();
+        ArrayList<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size){
+            long end = Math.min(size, start + CHUNK_SIZE);
+            while (end < size){
+                probe.clear();
+                int read = channel.read(probe, end);
+                int k = 0;
+                while (k < read && probe.get(k) != '\n'){
+                    k++;
+                }
+                end += k;
+                if (k < read){
+                    end++;
+                    break;
+                }
+            }
+            ranges.add(new long[]{start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * Reads one username per line.
+     */
+    private static Chunk parseUsers(ByteBuffer buffer){
+        Chunk chunk = new Chunk();
+        chunk.bytes = buffer.limit();
+        byte[] scratch = new byte[256];
+        int limit = buffer.limit();
+        int pos = 0;
+        while (pos < limit){
+            int end = lineEnd(buffer, pos, limit);
+            int[] field = trim(buffer, pos, end);
+            if (field[0] < field[1]){
+                chunk.lines++;
+                if (chunk.size == chunk.names.length){
+                    chunk.names = Arrays.copyOf(chunk.names, Math.max(64, chunk.size * 2));
+                }
+                scratch = decodeInto(buffer, field[0], field[1], scratch);
+                chunk.names[chunk.size++] = new String(scratch, 0, field[1] - field[0], StandardCharsets.UTF_8).strip();
+            }
+            pos = nextLine(buffer, end, limit);
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads one "follower,followed" pair per line and resolves both usernames to ids.
+     */
+    private Chunk parseConnections(ByteBuffer buffer){
+        Chunk chunk = new Chunk();
+        chunk.bytes = buffer.limit();
+        byte[] scratch = new byte[256];
+        int limit = buffer.limit();
+        int pos = 0;
+        while (pos < limit){
+            int end = lineEnd(buffer, pos, limit);
+            int[] line = trim(buffer, pos, end);
+            pos = nextLine(buffer, end, limit);
+            if (line[0] == line[1]){
+                continue;
+            }
+            chunk.lines++;
+            int comma = indexOf(buffer, ',', line[0], line[1]);
+            int secondEnd = comma < 0 ? -1 : indexOf(buffer, ',', comma + 1, line[1]);
+            if (secondEnd < 0){
+                secondEnd = line[1];
+            } else if (!onlyCommas(buffer, secondEnd, line[1])){
+                chunk.malformed++;
+                continue;
+            }
+            if (comma < 0){
+                chunk.malformed++;
+                continue;
+            }
+            int[] first = trim(buffer, line[0], comma);
+            int[] second = trim(buffer, comma + 1, secondEnd);
+            scratch = decodeInto(buffer, first[0], first[1], scratch);
+            int a = graph.resolve(new String(scratch, 0, first[1] - first[0], StandardCharsets.UTF_8).strip());
+            scratch = decodeInto(buffer, second[0], second[1], scratch);
+            int b = graph.resolve(new String(scratch, 0, second[1] - second[0], StandardCharsets.UTF_8).strip());
+            if (a < 0 || b < 0){
+                chunk.unknown++;
+                continue;
+            }
+            if (chunk.size == chunk.from.length){
+                chunk.from = Arrays.copyOf(chunk.from, Math.max(64, chunk.size * 2));
+                chunk.to = Arrays.copyOf(chunk.to, chunk.from.length);
+            }
+            chunk.from[chunk.size] = a;
+            chunk.to[chunk.size] = b;
+            chunk.size++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Finds the end of the line starting at `pos`.
+     * @return The position of the next '\n' or '\r', or `limit` if there is none.
+     */
+    private static int lineEnd(ByteBuffer buffer, int pos, int limit){
+        while (pos < limit){
+            byte b = buffer.get(pos);
+            if (b == '\n' || b == '\r'){
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Steps over the line break at `end`, treating "\r\n" as one break.
+     * @return The position where the next line starts.
+     */
+    private static int nextLine(ByteBuffer buffer, int end, int limit){
+        if (end + 1 < limit && buffer.get(end) == '\r' && buffer.get(end + 1) == '\n'){
+            return end + 2;
+        }
+        return end + 1;
+    }
+
+    /**
+     * Finds the first occurrence of a byte in a range.
+     * @return Its position, or -1 if it does not occur.
+     */
+    private static int indexOf(ByteBuffer buffer, char c, int from, int to){
+        for (int i = from; i < to; i++){
+            if (buffer.get(i) == c){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tells whether a range holds nothing but commas, which String.split drops from the end of a line.
+     */
+    private static boolean onlyCommas(ByteBuffer buffer, int from, int to){
+        for (int i = from; i < to; i++){
+            if (buffer.get(i) != ','){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Narrows a range to skip ASCII whitespace and control characters at both ends. Other whitespace is stripped after decoding.
+     * @return The trimmed [start, end) range.
+     */
+    private static int[] trim(ByteBuffer buffer, int from, int to){
+        while (from < to && (buffer.get(from) & 0xFF) <= ' '){
+            from++;
+        }
+        while (to > from && (buffer.get(to - 1) & 0xFF) <= ' '){
+            to--;
+        }
+        return new int[]{from, to};
+    }
+
+    /**
+     * Copies a range of the buffer to the front of a scratch array, growing it if needed.
+     * @return The scratch array holding the bytes.
+     */
+    private static byte[] decodeInto(ByteBuffer buffer, int from, int to, byte[] scratch){
+        int length = to - from;
+        if (length > scratch.length){
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(from, scratch, 0, length);
+        return scratch;
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Enumerates the loops (elementary cycles) of a FollowGraph with Johnson's algorithm.
+ * Start vertices are taken in increasing order, and each search only walks the strongly connected component of its start
+ * vertex among the vertices that are not smaller than it. Every loop is therefore found exactly once, rooted at its smallest
+ * vertex, with no deduplication afterwards. Vertices that cannot lead back to the start stay blocked until something on
+ * their way back changes, which keeps the search from exploring the same dead ends over and over.
+ * Loops have at least two users; a user following itself is not reported.
+ */
+import java.util.Arrays;
+
+public class CycleFinder{
+    private final Adjacency adjacency;
+    private final int n;
+    private final int maxLength;
+    private final long maxResults;
+    private final long deadline;
+    private final SccIndex sccIndex;
+    private final int[] forwardStamp;
+    private final int[] componentStamp;
+    private final int[] queue;
+    private final boolean[] blocked;
+    private final int[][] blockedBy;
+    private final int[] blockedBySize;
+    private final int[] stack;
+    private final int[][] neighbors;
+    private final int[] cursor;
+    private final boolean[] found;
+    private final int[] unblockStack;
+    private int epoch = 0;
+    private int steps = 0;
+    private long produced = 0;
+    private boolean stopped = false;
+    private boolean truncated = false;
+
+    /**
+     * Constructs a new CycleFinder over the given adjacency store.
+     * @param adjacency The adjacency store to search.
+     * @param limits The bounds on loop length (in users), number of loops and running time.
+     * @custom.precondition 'adjacency' and 'limits' are non-null.
+     * @custom.postcondition A CycleFinder ready to run is created.
+     */
+    public CycleFinder(Adjacency adjacency, SearchLimits limits){
+        this(adjacency, limits, null);
+    }
+
+    /**
+     * Constructs a new CycleFinder that uses a component index to skip users that are on no loop and to keep each search inside one component.
+     * @param adjacency The adjacency store to search.
+     * @param limits The bounds on loop length (in users), number of loops and running time.
+     * @param sccIndex An up to date component index of `adjacency`, or null to search without pruning.
+     * @custom.precondition 'adjacency' and 'limits' are non-null.
+     * @custom.postcondition A CycleFinder ready to run is created.
+     */
+    public CycleFinder(Adjacency adjacency, SearchLimits limits, SccIndex sccIndex){
+        this(adjacency, limits, sccIndex, limits.deadline());
+    }
+
+    /**
+     * Constructs a new CycleFinder that stops at a deadline fixed in advance, so that separate workers share one time limit.
+     * @param adjacency The adjacency store to search.
+     * @param limits The bounds on loop length (in users) and number of loops. Its time limit is replaced by `deadline`.
+     * @param sccIndex An up to date component index of `adjacency`, or null to search without pruning.
+     * @param deadline The System.nanoTime() value at which the search stops, or Long.MAX_VALUE for no time limit.
+     * @custom.precondition 'adjacency' and 'limits' are non-null.
+     * @custom.postcondition A CycleFinder ready to run is created.
+     */
+    public CycleFinder(Adjacency adjacency, SearchLimits limits, SccIndex sccIndex, long deadline){
+        this.adjacency = adjacency;
+        this.sccIndex = sccIndex;
+        this.n = adjacency.getVertexCount();
+        this.maxLength = limits.getMaxDepth();
+        this.maxResults = limits.getMaxResults();
+        this.deadline = deadline;
+        forwardStamp = new int[n];
+        componentStamp = new int[n];
+        queue = new int[n];
+        blocked = new boolean[n];
+        blockedBy = new int[n][];
+        blockedBySize = new int[n];
+        stack = new int[n];
+        neighbors = new int[n][];
+        cursor = new int[n];
+        found = new boolean[n];
+        unblockStack = new int[n];
+    }
+
+    /**
+     * Finds every loop and passes each one to the visitor.
+     * @param visitor The callback that receives the loops.
+     * @return The number of loops passed to the visitor.
+     * @custom.precondition 'visitor' is non-null.
+     * @custom.postcondition Every loop within the limits has been passed to the visitor exactly once, unless the visitor stopped the search.
+     */
+    public long run(CycleVisitor visitor){
+        return run(0, n, visitor);
+    }
+
+    /**
+     * Finds the loops whose smallest vertex lies in the given range and passes each one to the visitor.
+     * Ranges can be searched independently, which lets separate workers split the start vertices between them.
+     * @param fromStart The first start vertex, inclusive.
+     * @param toStart The last start vertex, exclusive.
+     * @param visitor The callback that receives the loops.
+     * @return The number of loops passed to the visitor so far by this CycleFinder.
+     * @custom.precondition 0 <= fromStart <= toStart <= the number of vertex slots, and 'visitor' is non-null.
+     * @custom.postcondition Every loop rooted in the range and within the limits has been passed to the visitor exactly once, unless the search was stopped.
+     */
+    public long run(int fromStart, int toStart, CycleVisitor visitor){
+        for (int s = fromStart; s < Math.min(toStart, n - 1) && !stopped; s++){
+            if (sccIndex == null || sccIndex.componentSize(sccIndex.componentOf(s)) > 1){
+                search(s, visitor);
+            }
+        }
+        return produced;
+    }
+
+    /**
+     * Tells whether the search was cut short by its result count or time limit.
+     * @return True if some loops may not have been reported because a limit was reached.
+     */
+    public boolean isTruncated(){
+        return truncated;
+    }
+
+    /**
+     * Reports every loop whose smallest vertex is `s`.
+     */
+    private void search(int s, CycleVisitor visitor){
+        int componentSize = markComponent(s);
+        if (componentSize < 2){
+            return;
+        }
+        for (int i = 0; i < componentSize; i++){
+            int v = queue[i];
+            blocked[v] = false;
+            blockedBySize[v] = 0;
+        }
+        int depth = 0;
+        stack[0] = s;
+        neighbors[0] = adjacency.outNeighbors(s);
+        cursor[0] = 0;
+        found[0] = false;
+        blocked[s] = true;
+        while (depth >= 0){
+            if (deadline != Long.MAX_VALUE && (++steps & 1023) == 0 && System.nanoTime() - deadline > 0){
+                truncated = true;
+                stopped = true;
+                return;
+            }
+            int v = stack[depth];
+            int[] row = neighbors[depth];
+            if (cursor[depth] < row.length){
+                int w = row[cursor[depth]++];
+                if (componentStamp[w] != epoch){
+                    continue;
+                }
+                if (w == s){
+                    if (depth > 0){
+                        found[depth] = true;
+                        produced++;
+                        boolean keepGoing = visitor.visit(Arrays.copyOf(stack, depth + 1));
+                        if (!keepGoing || produced >= maxResults){
+                            truncated = keepGoing;
+                            stopped = true;
+                            return;
+                        }
+                    }
+                } else if (!blocked[w]){
+                    if (depth + 2 > maxLength){
+                        // The loop through w would be too long. Treat it as found so v is not blocked for shorter prefixes.
+                        found[depth] = true;
+                        continue;
+                    }
+                    depth++;
+                    stack[depth] = w;
+                    neighbors[depth] = adjacency.outNeighbors(w);
+                    cursor[depth] = 0;
+                    found[depth] = false;
+                    blocked[w] = true;
+                }
+            } else {
+                if (found[depth]){
+                    unblock(v);
+                } else {
+                    for (int w : row){
+                        if (componentStamp[w] == epoch){
+                            addBlockedBy(w, v);
+                        }
+                    }
+                }
+                boolean f = found[depth];
+                depth--;
+                if (depth >= 0 && f){
+                    found[depth] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the vertices that are reachable from `s` and can reach `s` using only vertices not smaller than `s`.
+     * @return The number of marked vertices, which are left at the front of the queue.
+     */
+    private int markComponent(int s){
+        epoch++;
+        int sComponent = sccIndex == null ? -1 : sccIndex.componentOf(s);
+        int tail = 0;
+        queue[tail++] = s;
+        forwardStamp[s] = epoch;
+        for (int head = 0; head < tail; head++){
+            for (int w : adjacency.outNeighbors(queue[head])){
+                if (w > s && forwardStamp[w] != epoch && (sccIndex == null || sccIndex.componentOf(w) == sComponent)){
+                    forwardStamp[w] = epoch;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        if (tail == 1){
+            return 1;
+        }
+        tail = 0;
+        queue[tail++] = s;
+        componentStamp[s] = epoch;
+        for (int head = 0; head < tail; head++){
+            for (int w : adjacency.inNeighbors(queue[head])){
+                if (forwardStamp[w] == epoch && componentStamp[w] != epoch){
+                    componentStamp[w] = epoch;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Records that `v` should be unblocked when `w` is unblocked.
+     */
+    private void addBlockedBy(int w, int v){
+        int[] list = blockedBy[w];
+        int size = blockedBySize[w];
+        for (int i = 0; i < size; i++){
+            if (list[i] == v){
+                return;
+            }
+        }
+        if (list == null || size == list.length){
+            list = list == null ? new int[4] : Arrays.copyOf(list, size * 2);
+            blockedBy[w] = list;
+        }
+        list[size] = v;
+        blockedBySize[w] = size + 1;
+    }
+
+    /**
+     * Unblocks a vertex and, transitively, every vertex that was waiting on it.
+     */
+    private void unblock(int u){
+        int top = 0;
+        blocked[u] = false;
+        unblockStack[top++] = u;
+        while (top > 0){
+            int x = unblockStack[--top];
+            int[] list = blockedBy[x];
+            for (int i = 0; i < blockedBySize[x]; i++){
+                int w = list[i];
+                if (blocked[w]){
+                    blocked[w] = false;
+                    unblockStack[top++] = w;
+                }
+            }
+            blockedBySize[x] = 0;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Callback that receives the loops found in a FollowGraph one at a time.
+ */
+public interface CycleVisitor{
+
+    /**
+     * Receives one loop.
+     * @param cycle The user indices around the loop, starting at its smallest index. The first index is not repeated at the end.
+     * @return True to keep searching, false to stop the search.
+     */
+    boolean visit(int[] cycle);
+}
@@ -0,0 +1,197 @@
+/**
+ * All-pairs hop distances and shortest-path predecessors for a FollowGraph.
+ * The table is built with bit-parallel multi-source Breadth-First Search: 64 sources are searched together, each vertex
+ * carrying one long word whose bits say which of those sources have reached it. Once built, a distance is an O(1) lookup
+ * and a path is rebuilt in O(L) from the predecessor table. A table never changes once it is built: adding an edge gives
+ * an updated copy that shares every row the edge does not shorten, so readers can go on using the old table while the
+ * copy is made. Anything else requires a rebuild.
+ * The table holds two entries per pair of vertices, so it is only built for graphs of at most MAX_VERTICES slots; larger
+ * graphs answer distance queries with a search instead.
+ */
+import java.util.Arrays;
+
+public class DistanceTable{
+    /** The greatest number of vertex slots a table is built for, which keeps it at 128 MiB. */
+    public static final int MAX_VERTICES = 4096;
+
+    private final int n;
+    private final int[][] dist;
+    private final int[][] pred;
+
+    /**
+     * Builds the distance table for every pair of vertices in the adjacency store.
+     * @param adjacency The adjacency store to measure.
+     * @throws IllegalArgumentException if the adjacency store has more than MAX_VERTICES slots.
+     * @custom.precondition 'adjacency' is non-null. The table takes O(n^2) memory for n vertex slots.
+     * @custom.postcondition A table holding the hop distance and a shortest-path predecessor for every reachable pair is created.
+     */
+    public DistanceTable(Adjacency adjacency){
+        n = adjacency.getVertexCount();
+        if (!fits(n)){
+            throw new IllegalArgumentException("Graph is too large for a distance table.");
+        }
+        dist = new int[n][n];
+        pred = new int[n][n];
+        for (int s = 0; s < n; s++){
+            Arrays.fill(dist[s], -1);
+            Arrays.fill(pred[s], -1);
+        }
+        long[] visited = new long[n];
+        long[] frontier = new long[n];
+        long[] next = new long[n];
+        int[] active = new int[n];
+        int[] nextActive = new int[n];
+        for (int base = 0; base < n; base += 64){
+            int batch = Math.min(64, n - base);
+            Arrays.fill(visited, 0);
+            int activeCount = 0;
+            for (int i = 0; i < batch; i++){
+                int s = base + i;
+                visited[s] = 1L << i;
+                frontier[s] = 1L << i;
+                dist[s][s] = 0;
+                active[activeCount++] = s;
+            }
+            for (int level = 1; activeCount > 0; level++){
+                int nextCount = 0;
+                for (int k = 0; k < activeCount; k++){
+                    int u = active[k];
+                    long bits = frontier[u];
+                    frontier[u] = 0;
+                    for (int w : adjacency.outNeighbors(u)){
+                        long reached = bits & ~visited[w];
+                        if (reached == 0){
+                            continue;
+                        }
+                        visited[w] |= reached;
+                        if (next[w] == 0){
+                            nextActive[nextCount++] = w;
+                        }
+                        next[w] |= reached;
+                        for (long word = reached; word != 0; word &= word - 1){
+                            int s = base + Long.numberOfTrailingZeros(word);
+                            dist[s][w] = level;
+                            pred[s][w] = u;
+                        }
+                    }
+                }
+                for (int k = 0; k < nextCount; k++){
+                    int w = nextActive[k];
+                    frontier[w] = next[w];
+                    next[w] = 0;
+                }
+                int[] swap = active;
+                active = nextActive;
+                nextActive = swap;
+                activeCount = nextCount;
+            }
+        }
+    }
+
+    /**
+     * Creates a table from rows that may be shared with another table.
+     */
+    private DistanceTable(int[][] dist, int[][] pred){
+        this.n = dist.length;
+        this.dist = dist;
+        this.pred = pred;
+    }
+
+    /**
+     * Checks whether a table can be built for a graph of the given size.
+     * @param vertexCount The number of vertex slots.
+     * @return True if the number of slots is at most MAX_VERTICES.
+     */
+    public static boolean fits(int vertexCount){
+        return vertexCount <= MAX_VERTICES;
+    }
+
+    /**
+     * Gets the number of vertex slots the table was built for.
+     * @return The number of vertex slots.
+     */
+    public int getVertexCount(){
+        return n;
+    }
+
+    /**
+     * Gets the hop distance between two vertices.
+     * @param from The source vertex.
+     * @param to The destination vertex.
+     * @return The number of follow edges on a shortest path, or -1 if `to` cannot be reached from `from`.
+     * @custom.precondition `from` and `to` are valid vertex slots.
+     */
+    public int distance(int from, int to){
+        return dist[from][to];
+    }
+
+    /**
+     * Rebuilds a shortest path between two vertices from the predecessor table.
+     * @param from The source vertex.
+     * @param to The destination vertex.
+     * @return The vertices along a shortest path, or null if `to` cannot be reached from `from`.
+     * @custom.precondition `from` and `to` are valid vertex slots.
+     */
+    public int[] path(int from, int to){
+        int hops = dist[from][to];
+        if (hops < 0){
+            return null;
+        }
+        int[] path = new int[hops + 1];
+        int v = to;
+        for (int i = hops; i > 0; i--){
+            path[i] = v;
+            v = pred[from][v];
+        }
+        path[0] = from;
+        return path;
+    }
+
+    /**
+     * Gets the table for the graph with a new edge added, without a full rebuild and without changing this table.
+     * Any new shortest path uses the edge once, so each distance becomes min(old, dist(s, from) + 1 + dist(to, t)). Only
+     * the rows of sources that reach `from` can change, and only the rows that do are copied, so the update costs
+     * O(n) per source that reaches `from`.
+     * @param from The vertex that started following.
+     * @param to The vertex being followed.
+     * @return A table that reflects the graph including the new edge. It shares the unchanged rows with this one.
+     * @custom.precondition This table was up to date before the edge from `from` to `to` was added.
+     * @custom.postcondition This table is unchanged.
+     */
+    public DistanceTable withEdge(int from, int to){
+        int[][] newDist = dist.clone();
+        int[][] newPred = pred.clone();
+        // No shortest path from `to` goes through the edge into `to`, so its row is the same in both tables.
+        int[] toDist = dist[to];
+        int[] toPred = pred[to];
+        for (int s = 0; s < n; s++){
+            int toFrom = dist[s][from];
+            if (toFrom < 0){
+                continue;
+            }
+            int[] row = dist[s];
+            int[] changed = null;
+            int[] changedPred = null;
+            for (int t = 0; t < n; t++){
+                int rest = toDist[t];
+                if (rest < 0){
+                    continue;
+                }
+                int candidate = toFrom + 1 + rest;
+                if (row[t] < 0 || candidate < row[t]){
+                    if (changed == null){
+                        changed = row.clone();
+                        changedPred = pred[s].clone();
+                    }
+                    changed[t] = candidate;
+                    changedPred[t] = t == to ? from : toPred[t];
+                }
+            }
+            if (changed != null){
+                newDist[s] = changed;
+                newPred[s] = changedPred;
+            }
+        }
+        return new DistanceTable(newDist, newPred);
+    }
+}
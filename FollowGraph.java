@@ -1,44 +1,299 @@
 /**
  * Represents a graph of User objects.
+ * A FollowGraph can be shared between threads. Adding and removing users takes an exclusive lock, while queries and
+ * connection changes share it: connection changes only lock the stripes of their two users, so follows and unfollows
+ * of different users run in parallel with each other and with queries. Simple lookups first try an optimistic read
+ * that takes no lock at all.
+ * Long analytics can run on a snapshot() instead: a read-only, point-in-time view that shares the connection rows and
+ * the user tables with the live graph copy-on-write, so it costs little to take and never holds up writers while it is searched.
+ * Callers that keep hold of users can resolve() each name to an id once and then use the id-based methods, which skip the
+ * username lookup and return user ids instead of lists of names. Each graph hands out its own ids in the order users
+ * are added and never changes or reuses them, while the slots that index the adjacency store are reused after removals.
+ * With GraphMetrics attached through setMetrics, every operation records its latency, errors and result sizes.
+ * Messages and listings are printed to the console unless another writer is given to setOutput.
  */
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Queue;
-import java.util.Set;
-import java.util.Stack;
-import java.util.stream.Collectors;
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 
 public class FollowGraph implements Serializable{
+    // Kept at the value of the original class, whose graphs held a boolean matrix, so that follow_graph.obj files saved
+    // by the first version of the program can still be read. readObject converts them.
+    private static final long serialVersionUID = 269444172567319701L;
     private ArrayList<User> users = new ArrayList<User>();
-    public static final int MAX_USERS = 100;
-    public boolean[][] connections = new boolean[MAX_USERS][MAX_USERS];
+    private Adjacency adjacency = new AdjacencyList();
+    private static final int STRIPES = 64;
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private transient volatile ConcurrentHashMap<String, User> userIndex = new ConcurrentHashMap<>();
     private int userCount = 0;
+    private int tombstoneCount = 0;
+    private int nextId = 0;
+    private transient int[] slotOfId = new int[16];
+    private transient int[] idOfSlot = new int[16];
+    private transient int[] freeSlots = new int[16];
+    private transient boolean idOrdered = true;
+    private transient boolean usersShared = false;
+    private transient boolean recordsShared = false;
+    private double compactionThreshold = 0.25;
+    private transient DistanceTable distanceTable;
+    private transient SccIndex sccIndex;
+    private transient int sccBuilds = 0;
+    private transient int[] sccChanges;
+    private transient int sccChangeCount = 0;
+    private transient int parallelism = 1;
+    private transient ForkJoinPool searchPool;
+    private transient MutationLog mutationLog;
+    private transient StampedLock structureLock = new StampedLock();
+    private transient ReentrantLock[] stripes = newStripes();
+    private transient Object derivedLock = new Object();
+    private transient long derivedVersion = 0;
+    private transient boolean readOnly = false;
+    private transient volatile GraphMetrics metrics;
+    private transient volatile PrintWriter output = console();
+    private transient Recommender recommender = new Recommender();
+    private transient HopSearch hopSearch = new HopSearch();
+    private transient PageRank pageRank = new PageRank();
     
     /**
      * Gets the total number of users in the follow graph.
      * @return The total number of users.
      */
     public int getUserCount(){
-        return userCount;
+        return optimisticReadInt(() -> userCount);
     }
 
     /**
      * Returns the list of users in the graph.
-     * @return The ArrayList containing all users in the graph.
+     * @return A new ArrayList containing all users in the graph, in index order.
      */
     public ArrayList<User> getUsers(){
-        return users;
+        long stamp = structureLock.readLock();
+        try {
+            ArrayList<User> live = new ArrayList<>(userCount);
+            if (idOrdered){
+                for (User a: users){
+                    if (a != null){
+                        live.add(a);
+                    }
+                }
+            } else {
+                for (int id = 0; id < nextId; id++){
+                    if (slotOfId[id] >= 0){
+                        live.add(users.get(slotOfId[id]));
+                    }
+                }
+            }
+            return live;
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gets the id the next added user will get. Every id below it has been handed out, so it also bounds arrays indexed by id.
+     * @return The next id.
+     */
+    public int getNextId(){
+        return nextId;
+    }
+
+    /**
+     * Gets the number of slots freed by removed users that have not been reused or compacted yet.
+     * @return The number of tombstoned slots.
+     */
+    public int getTombstoneCount(){
+        return tombstoneCount;
+    }
+
+    /**
+     * Sets the fraction of tombstoned slots at which removeUser compacts the graph.
+     * @param compactionThreshold The fraction of all slots that may be tombstoned before compaction runs. 0 compacts after every removal.
+     * @custom.precondition 'compactionThreshold' is between 0 and 1.
+     * @custom.postcondition Future removals compact the graph once the tombstoned fraction exceeds the new threshold.
+     */
+    public void setCompactionThreshold(double compactionThreshold){
+        long stamp = structureLock.writeLock();
+        try {
+            this.compactionThreshold = compactionThreshold;
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the fraction of tombstoned slots at which removeUser compacts the graph.
+     * @return The compaction threshold.
+     */
+    public double getCompactionThreshold(){
+        return compactionThreshold;
+    }
+
+    /**
+     * Attaches a write-ahead log that records every later change to the graph.
+     * @param mutationLog The log to append to, or null to stop logging.
+     * @custom.postcondition Every later change made through addUser, removeUser, addConnection, removeConnection or the loaders is appended to the log.
+     */
+    public void setMutationLog(MutationLog mutationLog){
+        checkWritable();
+        long stamp = structureLock.writeLock();
+        try {
+            this.mutationLog = mutationLog;
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the write-ahead log the graph records its changes in.
+     * @return The attached log, or null if changes are not logged.
+     */
+    public MutationLog getMutationLog(){
+        return mutationLog;
+    }
+
+    /**
+     * Attaches statistics that record the call count, latency, errors and result sizes of every query and change.
+     * @param metrics The statistics to record into, or null to stop recording.
+     * @custom.postcondition Every later call to an operation listed in GraphOperation is recorded in the statistics.
+     */
+    public void setMetrics(GraphMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the statistics the graph records its operations in.
+     * @return The attached statistics, or null if operations are not recorded.
+     */
+    public GraphMetrics getMetrics(){
+        return metrics;
+    }
+
+    /**
+     * Sets where the graph prints its error messages and user listings.
+     * @param output The writer to print to, or null to print to the console again.
+     * @custom.postcondition Every later message and listing is printed to `output`. The graph does not flush it, so a
+     * writer that should show each message at once needs automatic flushing.
+     */
+    public void setOutput(PrintWriter output){
+        this.output = output == null ? console() : output;
+    }
+
+    /**
+     * Gets the writer the graph prints its error messages and user listings to.
+     * @return The writer set with setOutput, or a writer to the console.
+     */
+    public PrintWriter getOutput(){
+        return output;
+    }
+
+    /**
+     * Creates a writer to the console that flushes after every line.
+     * @return The console writer.
+     */
+    private static PrintWriter console(){
+        return new PrintWriter(System.out, true);
+    }
+
+    /**
+     * Gets the adjacency store that holds the connections, for classes in this package that walk its rows directly.
+     * @return The live adjacency store. Callers must not modify it.
+     */
+    Adjacency getAdjacency(){
+        return adjacency;
+    }
+
+    /**
+     * Sets how many worker threads findAllLoops, allPaths and influence scoring may use.
+     * @param parallelism The number of workers. 1 or less runs every search on the calling thread.
+     * @custom.postcondition Later exhaustive searches and influence computations split their work across the given number of workers, and any previous worker pool is shut down.
+     */
+    public void setParallelism(int parallelism){
+        long stamp = structureLock.writeLock();
+        try {
+            if (searchPool != null){
+                searchPool.shutdown();
+                searchPool = null;
+            }
+            this.parallelism = Math.max(1, parallelism);
+            if (this.parallelism > 1){
+                searchPool = new ForkJoinPool(this.parallelism);
+            }
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets how many worker threads findAllLoops, allPaths and influence scoring may use.
+     * @return The number of workers, 1 if searches run on the calling thread.
+     */
+    public int getParallelism(){
+        return parallelism;
+    }
+
+    /**
+     * Sets how closely influence scores must converge: iteration stops once the scores of all users together change by less than this.
+     * @param tolerance The convergence tolerance.
+     * @custom.precondition 'tolerance' is positive.
+     * @custom.postcondition The next influence query computes the scores again with the new tolerance.
+     */
+    public void setInfluenceTolerance(double tolerance){
+        pageRank.setTolerance(tolerance);
+    }
+
+    /**
+     * Gets how closely influence scores must converge.
+     * @return The convergence tolerance.
+     */
+    public double getInfluenceTolerance(){
+        return pageRank.getTolerance();
+    }
+
+    /**
+     * Sets the greatest number of iterations one computation of the influence scores may run, whether or not it has converged.
+     * @param maxIterations The iteration limit.
+     * @custom.precondition 'maxIterations' is positive.
+     * @custom.postcondition The next influence query computes the scores again with the new limit.
+     */
+    public void setInfluenceIterationLimit(int maxIterations){
+        pageRank.setMaxIterations(maxIterations);
+    }
+
+    /**
+     * Gets the greatest number of iterations one computation of the influence scores may run.
+     * @return The iteration limit.
+     */
+    public int getInfluenceIterationLimit(){
+        return pageRank.getMaxIterations();
+    }
+
+    /**
+     * Gets the number of iterations the last computation of the influence scores ran.
+     * @return The iteration count, or 0 if the scores have not been computed.
+     */
+    public int getInfluenceIterations(){
+        return pageRank.getIterations();
     }
 
     /**
@@ -48,6 +303,36 @@ public class FollowGraph implements Serializable{
      */
     public FollowGraph(){}
 
+    /**
+     * Constructs a new, empty FollowGraph object that keeps its connections in the given adjacency store.
+     * Use an AdjacencyList for sparse graphs, or a BitsetAdjacency when many users have very large follower or following lists.
+     * @param adjacency The empty adjacency store to use.
+     * @custom.precondition 'adjacency' is non-null and contains no vertices.
+     * @custom.postcondition A new FollowGraph object is created on top of the given adjacency store.
+     */
+    public FollowGraph(Adjacency adjacency){
+        this.adjacency = adjacency;
+    }
+
+    /**
+     * Constructs a FollowGraph from users and an adjacency store that were restored together, such as by GraphSnapshot.
+     * @param users The users in index order, with no removed slots.
+     * @param adjacency The adjacency store holding the connections between them.
+     * @param compactionThreshold The fraction of tombstoned slots at which removeUser compacts the graph.
+     * @param nextId The id the next added user gets.
+     * @custom.precondition Every user's index position equals its position in 'users', every user has a distinct id below 'nextId', and 'adjacency' has exactly users.size() vertices.
+     * @custom.postcondition A FollowGraph over the given users and connections is created, and its users keep their ids.
+     */
+    FollowGraph(ArrayList<User> users, Adjacency adjacency, double compactionThreshold, int nextId){
+        this.users = users;
+        this.adjacency = adjacency;
+        this.userCount = users.size();
+        this.compactionThreshold = compactionThreshold;
+        this.nextId = nextId;
+        rebuildUserIndex();
+        rebuildIdIndex();
+    }
+
     /**
      * Constructs a new FollowGraph object with the specified users, connections, and user count.
      * @param users The list of users in the graph.
@@ -58,336 +343,1993 @@ public class FollowGraph implements Serializable{
      */
     public FollowGraph(ArrayList<User> users, boolean[][] connections, int userCount){
         this.users = users;
-        this.connections = connections;
         this.userCount = userCount;
+        for (int i = 0; i < users.size(); i++){
+            users.get(i).setIndexPos(i);
+            users.get(i).setId(i);
+        }
+        nextId = users.size();
+        rebuildUserIndex();
+        rebuildIdIndex();
+        addMatrixEdges(connections);
+    }
+
+    /**
+     * Adds the connections of an adjacency matrix, in which user i follows user j when connections[i][j] is true.
+     * @param connections The matrix. Entries outside the current users are ignored.
+     * @custom.precondition The user in slot i is the user of row and column i.
+     */
+    private void addMatrixEdges(boolean[][] connections){
+        int n = users.size();
+        adjacency.ensureCapacity(n);
+        for (int i = 0; i < n && i < connections.length; i++){
+            for (int j = 0; j < n && j < connections[i].length; j++){
+                if (connections[i][j]){
+                    adjacency.addEdge(i, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a point-in-time, read-only view of the graph. Every query method works on the view, and it keeps answering
+     * for the moment it was taken while the live graph goes on changing. The view shares the connection rows and the
+     * user tables with the graph copy-on-write: the graph copies a shared table the first time it adds or removes a
+     * user afterwards, and renumbers copies of its users when it compacts. Taking the view only needs the read lock, and
+     * holds up connection changes just while the adjacency store starts a new epoch.
+     * Methods that change the view throw UnsupportedOperationException. Its derived indices and search parallelism are
+     * its own, and it is not attached to the graph's mutation log.
+     * @return A read-only view of the graph as it is now.
+     * @custom.postcondition The graph is unchanged, and the view holds the same users and connections.
+     */
+    public FollowGraph snapshot(){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                FollowGraph view;
+                // Connection changes only hold the read lock and their stripes, so taking every stripe keeps them out
+                // of the store while its rows are shared. Other snapshots are kept out the same way.
+                lockAllStripes();
+                try {
+                    view = new FollowGraph(adjacency.snapshot());
+                    usersShared = true;
+                    recordsShared = true;
+                } finally {
+                    unlockAllStripes();
+                }
+                view.users = users;
+                view.userIndex = userIndex;
+                view.userCount = userCount;
+                view.tombstoneCount = tombstoneCount;
+                view.nextId = nextId;
+                view.slotOfId = slotOfId;
+                view.idOfSlot = idOfSlot;
+                view.freeSlots = freeSlots;
+                view.idOrdered = idOrdered;
+                view.compactionThreshold = compactionThreshold;
+                view.readOnly = true;
+                view.metrics = metrics;
+                view.output = output;
+                return view;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.SNAPSHOT, e);
+        } finally {
+            stopTimer(GraphOperation.SNAPSHOT, start);
+        }
+    }
+
+    /**
+     * Gives the graph its own copies of the user tables if a snapshot shares them, before the caller changes them.
+     * The caller holds the write lock.
+     */
+    private void unshareUsers(){
+        if (usersShared){
+            users = new ArrayList<>(users);
+            userIndex = new ConcurrentHashMap<>(userIndex);
+            slotOfId = slotOfId.clone();
+            idOfSlot = idOfSlot.clone();
+            freeSlots = freeSlots.clone();
+            usersShared = false;
+        }
+    }
+
+    /**
+     * Checks whether this graph is a read-only view taken by snapshot().
+     * @return True if the graph cannot be changed.
+     */
+    public boolean isSnapshot(){
+        return readOnly;
+    }
+
+    /**
+     * Rejects a change to a read-only view.
+     * @throws UnsupportedOperationException if this graph is a snapshot.
+     */
+    private void checkWritable(){
+        if (readOnly){
+            throw new UnsupportedOperationException("This graph is a read-only snapshot.");
+        }
+    }
+
+    /**
+     * Starts timing an operation.
+     * @return The start time in nanoseconds, or NOT_TIMED if no statistics are attached.
+     */
+    private long startTimer(){
+        return metrics == null ? NOT_TIMED : System.nanoTime();
+    }
+
+    /**
+     * Records a completed call of an operation started with startTimer.
+     * @param operation The operation.
+     * @param start The value startTimer returned.
+     */
+    private void stopTimer(GraphOperation operation, long start){
+        GraphMetrics current = metrics;
+        if (current != null && start != NOT_TIMED){
+            current.get(operation).recordCall(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records an operation that failed with an exception.
+     * @param operation The operation.
+     * @param e The exception it failed with.
+     * @return The exception, for the caller to rethrow.
+     */
+    private RuntimeException failed(GraphOperation operation, RuntimeException e){
+        recordError(operation);
+        return e;
+    }
+
+    /**
+     * Records an operation that reported an error without throwing.
+     * @param operation The operation.
+     */
+    private void recordError(GraphOperation operation){
+        GraphMetrics current = metrics;
+        if (current != null){
+            current.get(operation).recordError();
+        }
+    }
+
+    /**
+     * Records the number of items an operation produced.
+     * @param operation The operation.
+     * @param size The number of paths, loops, users or connections.
+     */
+    private void recordResult(GraphOperation operation, long size){
+        GraphMetrics current = metrics;
+        if (current != null){
+            current.get(operation).recordResult(size);
+        }
+    }
+
+    /**
+     * Gets the total number of connections in the follow graph.
+     * @return The total number of connections.
+     */
+    public long getConnectionCount(){
+        return adjacency.getEdgeCount();
     }
 
     /**
      * Adds a new user to the follow graph.
      * @param userName The name of the new user to be added.
-     * @custom.precondition  'userName' is a non-null, non-empty String and the graph has not reached maximum capacity (MAX_USERS).
-     * @custom.postcondition If a user with the same name doesn't already exist, the new user is added to the graph. Otherwise an error message is displayed to the console.
+     * @custom.precondition  'userName' is a non-null, non-empty String.
+     * @custom.postcondition If a user with the same name doesn't already exist, the new user is added to the graph. Otherwise an error message is printed to the graph's output.
+     */
+    public void addUser(String userName){
+        long start = startTimer();
+        try {
+            checkWritable();
+            MutationLog log = null;
+            long sequence = -1;
+            int id = -1;
+            long stamp = structureLock.writeLock();
+            try {
+                if (!checkIfUserExists(userName)){
+                    id = insertUser(userName, nextId);
+                    if (mutationLog != null){
+                        log = mutationLog;
+                        sequence = log.reserve();
+                    }
+                } else {
+                    output.println("Username already exists.");
+                    recordError(GraphOperation.ADD_USER);
+                }
+            } finally {
+                structureLock.unlockWrite(stamp);
+            }
+            if (sequence >= 0){
+                log.logAddUser(sequence, userName, id);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.ADD_USER, e);
+        } finally {
+            stopTimer(GraphOperation.ADD_USER, start);
+        }
+    }
+
+    /**
+     * Adds a user with the id it was given when it was first added, for replaying a mutation log on a snapshot.
+     * A user that already exists is left as it is, so that records the snapshot already contains change nothing.
+     * @param userName The name of the user.
+     * @param id The id recorded for the user.
+     * @custom.precondition 'userName' is a non-null, non-empty String and 'id' is not negative.
+     * @custom.postcondition A user with the name exists. If it was added here, it has the recorded id unless another user holds that id.
+     */
+    void restoreUser(String userName, int id){
+        checkWritable();
+        MutationLog log = null;
+        long sequence = -1;
+        long stamp = structureLock.writeLock();
+        try {
+            if (checkIfUserExists(userName)){
+                return;
+            }
+            id = insertUser(userName, slotOrNone(id) < 0 ? id : nextId);
+            if (mutationLog != null){
+                log = mutationLog;
+                sequence = log.reserve();
+            }
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+        if (sequence >= 0){
+            log.logAddUser(sequence, userName, id);
+        }
+    }
+
+    /**
+     * Adds a new user with the given id while the caller holds the write lock, reusing a freed slot if there is one.
+     * @param userName The name of the new user.
+     * @param id An id that no current user holds. Ids at or above nextId that are skipped are retired.
+     * @return The id of the new user.
+     */
+    private int insertUser(String userName, int id){
+        unshareUsers();
+        boolean reused = tombstoneCount > 0;
+        int slot = placeUser(userName, id);
+        adjacency.ensureCapacity(users.size());
+        userAdded(slot, reused);
+        return id;
+    }
+
+    /**
+     * Adds a batch of users, giving each new name the next id, in one write lock. Room for the whole batch is made once,
+     * and the derived indices are brought up to date once at the end, instead of user by user.
+     * @param userNames The names of the users to add, in the order their ids are handed out.
+     * @param count The number of names in the batch.
+     * @return The number of users added. Names that already exist, in the graph or earlier in the batch, are skipped.
+     * @custom.precondition 'userNames' holds at least `count` non-null names.
+     * @custom.postcondition Every name of the batch is a user of the graph, and each added one is in the mutation log if one is attached.
+     */
+    int addUsers(String[] userNames, int count){
+        long start = startTimer();
+        try {
+            checkWritable();
+            MutationLog log = null;
+            long sequence = -1;
+            String[] addedNames = new String[count];
+            int[] addedIds = new int[count];
+            int added = 0;
+            long stamp = structureLock.writeLock();
+            try {
+                unshareUsers();
+                int firstNew = users.size();
+                int appended = Math.max(0, count - tombstoneCount);
+                users.ensureCapacity(firstNew + appended);
+                if (nextId + count > slotOfId.length){
+                    slotOfId = Arrays.copyOf(slotOfId, nextId + count);
+                }
+                if (firstNew + appended > idOfSlot.length){
+                    idOfSlot = Arrays.copyOf(idOfSlot, firstNew + appended);
+                }
+                for (int i = 0; i < count; i++){
+                    if (!checkIfUserExists(userNames[i])){
+                        addedIds[added] = nextId;
+                        addedNames[added++] = userNames[i];
+                        placeUser(userNames[i], nextId);
+                    }
+                }
+                adjacency.ensureCapacity(users.size());
+                usersAdded(firstNew);
+                if (mutationLog != null && added > 0){
+                    log = mutationLog;
+                    sequence = log.reserve(added);
+                }
+                recordResult(GraphOperation.ADD_USERS, added);
+            } finally {
+                structureLock.unlockWrite(stamp);
+            }
+            if (sequence >= 0){
+                for (int i = 0; i < added; i++){
+                    log.logAddUser(sequence + i, addedNames[i], addedIds[i]);
+                }
+            }
+            return added;
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.ADD_USERS, e);
+        } finally {
+            stopTimer(GraphOperation.ADD_USERS, start);
+        }
+    }
+
+    /**
+     * Puts a new user in a freed slot if there is one, or in a new slot at the end, while the caller holds the write
+     * lock and has unshared the user tables. Growing the adjacency store and the derived indices are left to the caller.
+     * @param userName The name of the new user.
+     * @param id An id that no current user holds. Ids at or above nextId that are skipped are retired.
+     * @return The slot of the new user.
+     */
+    private int placeUser(String userName, int id){
+        User user = new User(userName, id);
+        int slot;
+        if (tombstoneCount > 0){
+            // Reuse the most recently freed slot. Its row was cleared when its user was removed.
+            slot = freeSlots[--tombstoneCount];
+            users.set(slot, user);
+            idOrdered = false;
+        } else {
+            slot = users.size();
+            users.add(user);
+        }
+        if (id < nextId){
+            idOrdered = false;
+        }
+        user.setIndexPos(slot);
+        mapId(id, slot);
+        if (id > nextId){
+            Arrays.fill(slotOfId, nextId, id, -1);
+        }
+        nextId = Math.max(nextId, id + 1);
+        userIndex.put(normalize(userName), user);
+        userCount++;
+        return slot;
+    }
+
+    /**
+     * Removes a user from the follow graph.
+     * @param userName The name of the user to be removed.
+     * @custom.precondition 'userName' is a non-null, non-empty string, representing a user that exists within the graph.
+     * @custom.postcondition If a user with the given name exists, the user and all associated connections are removed from the graph, its id is retired and its slot is tombstoned for the next added user to reuse. Once the tombstoned fraction exceeds the compaction threshold the graph is compacted and the indices of the remaining users are adjusted. Otherwise, an error message is printed to the graph's output.
+     */
+    public void removeUser(String userName){
+        long start = startTimer();
+        try {
+            checkWritable();
+            MutationLog log = null;
+            long sequence = -1;
+            String removed = null;
+            long stamp = structureLock.writeLock();
+            try {
+                User a = findUser(userName);
+                if (a != null){
+                    unshareUsers();
+                    userIndex.remove(normalize(userName));
+                    int a_index = a.getIndexPos();
+                    adjacency.clearVertex(a_index);
+                    dropDerivedIndices();
+                    users.set(a_index, null);
+                    slotOfId[a.getId()] = -1;
+                    idOfSlot[a_index] = -1;
+                    if (tombstoneCount == freeSlots.length){
+                        freeSlots = Arrays.copyOf(freeSlots, Math.max(16, tombstoneCount * 2));
+                    }
+                    freeSlots[tombstoneCount++] = a_index;
+                    userCount--;
+                    if (tombstoneCount > compactionThreshold * users.size()){
+                        compactUnlocked();
+                    }
+                    if (mutationLog != null){
+                        log = mutationLog;
+                        sequence = log.reserve();
+                        removed = a.getUserName();
+                    }
+                } else {
+                    output.println("Username doesn't exists.");
+                    recordError(GraphOperation.REMOVE_USER);
+                }
+            } finally {
+                structureLock.unlockWrite(stamp);
+            }
+            if (sequence >= 0){
+                log.logRemoveUser(sequence, removed);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.REMOVE_USER, e);
+        } finally {
+            stopTimer(GraphOperation.REMOVE_USER, start);
+        }
+    }
+
+    /**
+     * Reclaims the slots of removed users in one batch. The remaining users are renumbered densely in the order of their ids, and keep their ids.
+     * @custom.postcondition The graph has no tombstoned slots and every user's index position is between 0 and getUserCount() - 1.
+     */
+    public void compact(){
+        long start = startTimer();
+        try {
+            checkWritable();
+            long stamp = structureLock.writeLock();
+            try {
+                compactUnlocked();
+            } finally {
+                structureLock.unlockWrite(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.COMPACT, e);
+        } finally {
+            stopTimer(GraphOperation.COMPACT, start);
+        }
+    }
+
+    /**
+     * Compacts the graph while the caller holds the write lock.
+     */
+    private void compactUnlocked(){
+        if (tombstoneCount == 0){
+            return;
+        }
+        unshareUsers();
+        // A snapshot still reads the slots of the users it shares, so they are renumbered as copies.
+        boolean copyRecords = recordsShared;
+        int[] remap = new int[users.size()];
+        Arrays.fill(remap, -1);
+        ArrayList<User> compacted = new ArrayList<>(userCount);
+        // Taking the users in id order puts the slots back in id order, which reused slots had broken.
+        for (int id = 0; id < nextId; id++){
+            int slot = slotOfId[id];
+            if (slot >= 0){
+                User a = copyRecords ? new User(users.get(slot)) : users.get(slot);
+                remap[slot] = compacted.size();
+                a.setIndexPos(compacted.size());
+                compacted.add(a);
+            }
+        }
+        adjacency.compact(remap, compacted.size());
+        dropDerivedIndices();
+        users = compacted;
+        rebuildIdIndex();
+        if (copyRecords){
+            rebuildUserIndex();
+            recordsShared = false;
+        }
+    }
+
+    /**
+     * Rebuilds the maps between ids and slots and the list of free slots from the users.
+     * @custom.precondition Every user has a distinct id below nextId.
+     * @custom.postcondition Every id maps to its user's slot, or to -1 if the user was removed, and every tombstoned slot is free.
+     */
+    private void rebuildIdIndex(){
+        slotOfId = new int[Math.max(16, nextId)];
+        Arrays.fill(slotOfId, -1);
+        idOfSlot = new int[Math.max(16, users.size())];
+        Arrays.fill(idOfSlot, -1);
+        freeSlots = new int[Math.max(16, users.size())];
+        tombstoneCount = 0;
+        idOrdered = true;
+        recommender.resize(users.size());
+        int lastId = Integer.MAX_VALUE;
+        // Free slots are pushed from the end, so the lowest one is reused first.
+        for (int i = users.size() - 1; i >= 0; i--){
+            User a = users.get(i);
+            if (a == null){
+                freeSlots[tombstoneCount++] = i;
+            } else {
+                slotOfId[a.getId()] = i;
+                idOfSlot[i] = a.getId();
+                idOrdered &= a.getId() < lastId;
+                lastId = a.getId();
+            }
+        }
+    }
+
+    /**
+     * Records the slot of a new user's id.
+     * @param id The id.
+     * @param slot The slot of the user.
+     */
+    private void mapId(int id, int slot){
+        if (id >= slotOfId.length){
+            slotOfId = Arrays.copyOf(slotOfId, Math.max(16, id * 2));
+        }
+        if (slot >= idOfSlot.length){
+            idOfSlot = Arrays.copyOf(idOfSlot, Math.max(16, slot * 2));
+        }
+        slotOfId[id] = slot;
+        idOfSlot[slot] = id;
+    }
+
+    /**
+     * Checks if a user with the given username exists in the graph.
+     * @param userName The name of the user to check for.
+     * @return True if a user with the given username exists, false otherwise.
+     * @custom.precondition 'userName' is a non-null string.
+     * @custom.postcondition The method returns true if the user exists, false otherwise.
+     */
+    public Boolean checkIfUserExists(String userName){
+        return userName != null && userIndex.containsKey(normalize(userName));
+    }
+
+    /**
+     * Runs a short query without locking, and runs it again under the read lock if users were added or removed meanwhile.
+     * The query may see the graph half-way through such a change, so anything it throws is only passed on if the read validates.
+     * @param query The query to run.
+     * @return The result of the query on a consistent graph.
+     */
+    private <T> T optimisticRead(Supplier<T> query){
+        long stamp = structureLock.tryOptimisticRead();
+        if (stamp != 0){
+            try {
+                T result = query.get();
+                if (structureLock.validate(stamp)){
+                    return result;
+                }
+            } catch (RuntimeException e){
+                if (structureLock.validate(stamp)){
+                    throw e;
+                }
+            }
+        }
+        stamp = structureLock.readLock();
+        try {
+            return query.get();
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs a short query that returns an int the same way as optimisticRead, without boxing its result.
+     * @param query The query to run.
+     * @return The result of the query on a consistent graph.
+     */
+    private int optimisticReadInt(IntSupplier query){
+        long stamp = structureLock.tryOptimisticRead();
+        if (stamp != 0){
+            try {
+                int result = query.getAsInt();
+                if (structureLock.validate(stamp)){
+                    return result;
+                }
+            } catch (RuntimeException e){
+                if (structureLock.validate(stamp)){
+                    throw e;
+                }
+            }
+        }
+        stamp = structureLock.readLock();
+        try {
+            return query.getAsInt();
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Creates the locks that serialize connection changes, one per stripe of users.
+     * @return The stripe locks.
+     */
+    private static ReentrantLock[] newStripes(){
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++){
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /**
+     * Locks the stripes of both ends of a connection, always in stripe order so that two writers cannot deadlock.
+     * @param from The index of one user.
+     * @param to The index of the other user.
+     */
+    private void lockStripes(int from, int to){
+        int a = from & (STRIPES - 1);
+        int b = to & (STRIPES - 1);
+        stripes[Math.min(a, b)].lock();
+        if (a != b){
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    /**
+     * Locks every stripe in stripe order, which keeps all connection changes out until unlockAllStripes.
+     */
+    private void lockAllStripes(){
+        for (ReentrantLock stripe : stripes){
+            stripe.lock();
+        }
+    }
+
+    /**
+     * Unlocks the stripes locked by lockAllStripes.
+     */
+    private void unlockAllStripes(){
+        for (int i = STRIPES - 1; i >= 0; i--){
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Unlocks the stripes locked by lockStripes.
+     * @param from The index of one user.
+     * @param to The index of the other user.
+     */
+    private void unlockStripes(int from, int to){
+        int a = from & (STRIPES - 1);
+        int b = to & (STRIPES - 1);
+        if (a != b){
+            stripes[Math.max(a, b)].unlock();
+        }
+        stripes[Math.min(a, b)].unlock();
+    }
+
+    /**
+     * Retrieves the User object corresponding to the provided userName.
+     * @param userName The username to search for.
+     * @return The User object associated with the provided username, or null if the user is not found.
+     * @custom.precondition 'userName' is a non-null string.
+     * @custom.postcondition The method returns a User object if a user with the given username exists.
+     */
+    private User findUser(String userName){
+        return userName == null ? null : userIndex.get(normalize(userName));
+    }
+
+    /**
+     * Looks up the id of a user once, so that later calls can use the id-based methods and skip the username lookup.
+     * Ids are handed out by the graph in the order users are added and are never changed or reused, so an id keeps
+     * naming the same user for as long as the graph exists.
+     * @param userName The username to look up.
+     * @return The user's id, or -1 if there is no such user.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public int resolve(String userName){
+        User a = findUser(userName);
+        return a == null ? -1 : a.getId();
+    }
+
+    /**
+     * Gets the username of the user with the given id.
+     * @param id The id of the user.
+     * @return The username.
+     * @throws IllegalArgumentException if the id does not belong to a user in the graph.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public String nameOf(int id){
+        return optimisticRead(() -> users.get(slotOf(id)).getUserName());
+    }
+
+    /**
+     * Gets the slot of the user with the given id.
+     * @param id The id.
+     * @return The user's slot.
+     * @throws IllegalArgumentException if the id was never handed out or belongs to a removed user.
+     */
+    private int slotOf(int id){
+        int slot = slotOrNone(id);
+        if (slot < 0){
+            throw new IllegalArgumentException("User id doesn't exist.");
+        }
+        return slot;
+    }
+
+    /**
+     * Gets the slot of the user with the given id, or -1 if there is no such user.
+     * @param id The id.
+     * @return The user's slot, or -1.
+     */
+    private int slotOrNone(int id){
+        return id >= 0 && id < nextId ? slotOfId[id] : -1;
+    }
+
+    /**
+     * Converts user slots into user ids, in the same order.
+     * @param slots The slots of existing users.
+     * @return A new array of their ids.
+     */
+    private int[] toIds(int[] slots){
+        int[] ids = new int[slots.length];
+        for (int i = 0; i < slots.length; i++){
+            ids[i] = idOfSlot[slots[i]];
+        }
+        return ids;
+    }
+
+    /**
+     * Orders user slots by the ids of their users, which is the order the users were added in.
+     * @param slots The slots of existing users.
+     * @return The slots themselves if no slot has been reused since the last compaction, since slot order is then id order, or else a sorted copy.
+     */
+    private int[] inIdOrder(int[] slots){
+        if (idOrdered || slots.length < 2){
+            return slots;
+        }
+        long[] keyed = new long[slots.length];
+        for (int i = 0; i < slots.length; i++){
+            keyed[i] = ((long) idOfSlot[slots[i]] << 32) | slots[i];
+        }
+        Arrays.sort(keyed);
+        int[] sorted = new int[slots.length];
+        for (int i = 0; i < slots.length; i++){
+            sorted[i] = (int) keyed[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Normalizes a username into the key used by the user index, so that lookups ignore case.
+     * @param userName The username to normalize.
+     * @return The case-folded username.
+     * @custom.precondition 'userName' is a non-null string.
+     */
+    private static String normalize(String userName){
+        return userName.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Rebuilds the user index from the list of users.
+     * @custom.postcondition Every user in the graph can be found by its normalized username.
+     */
+    private void rebuildUserIndex(){
+        userIndex = new ConcurrentHashMap<>();
+        for (User a: users){
+            if (a != null){
+                userIndex.put(normalize(a.getUserName()), a);
+            }
+        }
+    }
+
+    /**
+     * Restores a serialized FollowGraph, rebuilding the transient user index and locks.
+     * Graphs saved by the first version of the program hold a boolean matrix of connections instead of an adjacency store,
+     * and their users fill slots 0 to userCount - 1 with no gaps. Their matrix is converted into an AdjacencyList.
+     * @param in The stream to read the graph from.
+     * @throws IOException If the stream cannot be read.
+     * @throws ClassNotFoundException If a serialized class cannot be found.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass saved = fields.getObjectStreamClass();
+        users = (ArrayList<User>) fields.get("users", null);
+        adjacency = (Adjacency) fields.get("adjacency", null);
+        userCount = fields.get("userCount", 0);
+        tombstoneCount = fields.get("tombstoneCount", 0);
+        nextId = fields.get("nextId", 0);
+        compactionThreshold = fields.get("compactionThreshold", 0.25);
+        if (users == null){
+            throw new InvalidObjectException("FollowGraph has no users.");
+        }
+        if (adjacency == null){
+            if (saved.getField("connections") == null){
+                throw new InvalidObjectException("FollowGraph has neither an adjacency store nor a connection matrix.");
+            }
+            adjacency = new AdjacencyList();
+            userCount = users.size();
+            tombstoneCount = 0;
+            for (int i = 0; i < users.size(); i++){
+                users.get(i).setIndexPos(i);
+            }
+            boolean[][] connections = (boolean[][]) fields.get("connections", null);
+            if (connections != null){
+                addMatrixEdges(connections);
+            }
+        }
+        structureLock = new StampedLock();
+        stripes = newStripes();
+        derivedLock = new Object();
+        recommender = new Recommender();
+        hopSearch = new HopSearch();
+        pageRank = new PageRank();
+        output = console();
+        if (nextId == 0 && !users.isEmpty()){
+            // Graphs saved before users had ids give each user the id of its slot.
+            for (int i = 0; i < users.size(); i++){
+                if (users.get(i) != null){
+                    users.get(i).setId(i);
+                }
+            }
+            nextId = users.size();
+        }
+        rebuildUserIndex();
+        rebuildIdIndex();
+    }
+
+    /**
+     * Adds a connection between two users, indicating that one user follows the other.
+     * @param userFrom The name of the user initiating the follow.
+     * @param userTo The name of the user being followed.
+     * @custom.precondition  'userFrom' and 'userTo' are non-null, non-empty strings representing users existing within the graph. 
+     * @custom.postcondition  If both usernames exist, a connection from 'userFrom' to 'userTo' is established in the graph, represented as an edge in the adjacency store. Otherwise an error message is printed for the user that doesn't exist.
+     */
+    public void addConnection(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            checkWritable();
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userFrom);
+                User b = findUser(userTo);
+                if (a == null || b == null){
+                    recordError(GraphOperation.ADD_CONNECTION);
+                }
+                if (a == null){
+                    output.println("userFrom doesn't exist.");
+                }
+                if (b == null){
+                    output.println("userTo doesn't exist.");
+                }
+                if (a != null && b != null){
+                    connect(a.getIndexPos(), b.getIndexPos());
+                }
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.ADD_CONNECTION, e);
+        } finally {
+            stopTimer(GraphOperation.ADD_CONNECTION, start);
+        }
+    }
+
+    /**
+     * Removes a connection between two users.
+     * @param userFrom The name of the user who is currently following the other user.
+     * @param userTo The name of the user being followed.
+     * @custom.precondition  `userFrom` and `userTo` are non-null, non-empty strings representing users that exist in the graph and have a connection established between them.
+     * @custom.postcondition If both users exist and a connection exists between them, the connection is removed. Otherwise, error messages indicating the non-existence of users or the connection are printed to the graph's output.
+     */
+    public void removeConnection(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            checkWritable();
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userFrom);
+                User b = findUser(userTo);
+                if (a == null || b == null){
+                    recordError(GraphOperation.REMOVE_CONNECTION);
+                }
+                if (a == null){
+                    output.println("userFrom doesn't exist.");
+                }
+                if (b == null){
+                    output.println("userTo doesn't exist.");
+                }
+                if (a != null && b != null){
+                    disconnect(a.getIndexPos(), b.getIndexPos());
+                }
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.REMOVE_CONNECTION, e);
+        } finally {
+            stopTimer(GraphOperation.REMOVE_CONNECTION, start);
+        }
+    }
+
+    /**
+     * Adds a connection between two users given by id, skipping the username lookup.
+     * @param from The id of the user initiating the follow.
+     * @param to The id of the user being followed.
+     * @throws IllegalArgumentException if either id does not belong to a user in the graph.
+     * @custom.precondition Both ids were returned by resolve.
+     * @custom.postcondition A connection from 'from' to 'to' exists in the graph.
+     */
+    public void addConnection(int from, int to){
+        long start = startTimer();
+        try {
+            checkWritable();
+            long stamp = structureLock.readLock();
+            try {
+                connect(slotOf(from), slotOf(to));
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.ADD_CONNECTION, e);
+        } finally {
+            stopTimer(GraphOperation.ADD_CONNECTION, start);
+        }
+    }
+
+    /**
+     * Removes a connection between two users given by id, skipping the username lookup.
+     * @param from The id of the user who is following.
+     * @param to The id of the user being followed.
+     * @throws IllegalArgumentException if either id does not belong to a user in the graph.
+     * @custom.precondition Both ids were returned by resolve.
+     * @custom.postcondition No connection from 'from' to 'to' exists in the graph.
+     */
+    public void removeConnection(int from, int to){
+        long start = startTimer();
+        try {
+            checkWritable();
+            long stamp = structureLock.readLock();
+            try {
+                disconnect(slotOf(from), slotOf(to));
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.REMOVE_CONNECTION, e);
+        } finally {
+            stopTimer(GraphOperation.REMOVE_CONNECTION, start);
+        }
+    }
+
+    /**
+     * Adds a connection between two existing users while the caller holds the read lock, locking only their stripes.
+     * The change takes its place in the mutation log under the stripe locks, and is appended once they are released,
+     * since appending can wait for a commit.
+     * @param from The index of the following user.
+     * @param to The index of the followed user.
+     */
+    private void connect(int from, int to){
+        long sequence = -1;
+        lockStripes(from, to);
+        try {
+            if (adjacency.addEdge(from, to)){
+                connectionAdded(from, to);
+                if (mutationLog != null){
+                    sequence = mutationLog.reserve();
+                }
+            }
+        } finally {
+            unlockStripes(from, to);
+        }
+        if (sequence >= 0){
+            mutationLog.logAddConnection(sequence, users.get(from).getUserName(), users.get(to).getUserName());
+        }
+    }
+
+    /**
+     * Removes a connection between two existing users while the caller holds the read lock, locking only their stripes.
+     * Like connect, it appends to the mutation log only after releasing the stripes.
+     * @param from The index of the following user.
+     * @param to The index of the followed user.
+     */
+    private void disconnect(int from, int to){
+        long sequence = -1;
+        lockStripes(from, to);
+        try {
+            if (adjacency.removeEdge(from, to)){
+                connectionRemoved(from, to);
+                if (mutationLog != null){
+                    sequence = mutationLog.reserve();
+                }
+            }
+        } finally {
+            unlockStripes(from, to);
+        }
+        if (sequence >= 0){
+            mutationLog.logRemoveConnection(sequence, users.get(from).getUserName(), users.get(to).getUserName());
+        }
+    }
+
+    /**
+     * Adds a batch of connections between users given by id, merging them into the adjacency store in one pass.
+     * @param from The id of the following user of each connection.
+     * @param to The id of the followed user of each connection.
+     * @param count The number of connections in the batch.
+     * @return The number of connections that did not exist before.
+     * @custom.precondition Both arrays hold at least `count` ids returned by resolve.
+     * @custom.postcondition Every connection of the batch between users that still exist exists, and each one is in the mutation log if one is attached. Connections of users removed since their ids were resolved are skipped.
+     */
+    long addConnections(int[] from, int[] to, int count){
+        long start = startTimer();
+        try {
+            checkWritable();
+            MutationLog log = null;
+            long sequence = -1;
+            String[] fromNames = null;
+            String[] toNames = null;
+            long added;
+            long stamp = structureLock.writeLock();
+            try {
+                dropDerivedIndices();
+                int[] fromSlots = new int[count];
+                int[] toSlots = new int[count];
+                int kept = 0;
+                for (int i = 0; i < count; i++){
+                    fromSlots[kept] = slotOrNone(from[i]);
+                    toSlots[kept] = slotOrNone(to[i]);
+                    if (fromSlots[kept] >= 0 && toSlots[kept] >= 0){
+                        kept++;
+                    }
+                }
+                added = adjacency.addEdges(fromSlots, toSlots, kept);
+                if (mutationLog != null && kept > 0){
+                    // Connections that already existed are logged too. Replaying them changes nothing.
+                    log = mutationLog;
+                    sequence = log.reserve(kept);
+                    fromNames = new String[kept];
+                    toNames = new String[kept];
+                    for (int i = 0; i < kept; i++){
+                        fromNames[i] = users.get(fromSlots[i]).getUserName();
+                        toNames[i] = users.get(toSlots[i]).getUserName();
+                    }
+                }
+                recordResult(GraphOperation.ADD_CONNECTIONS, added);
+            } finally {
+                structureLock.unlockWrite(stamp);
+            }
+            if (sequence >= 0){
+                for (int i = 0; i < fromNames.length; i++){
+                    log.logAddConnection(sequence + i, fromNames[i], toNames[i]);
+                }
+            }
+            return added;
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.ADD_CONNECTIONS, e);
+        } finally {
+            stopTimer(GraphOperation.ADD_CONNECTIONS, start);
+        }
+    }
+
+    /**
+     * Brings the derived indices up to date after a user has been added.
+     * @param index The index of the new user.
+     * @param reused True if the user took over the slot of a removed user.
+     */
+    private void userAdded(int index, boolean reused){
+        recommender.resize(index + 1);
+        synchronized (derivedLock){
+            distanceTable = null;
+            // A reused slot has had no connections since its user was removed, so it already is a component of its own.
+            if (sccIndex != null && !reused){
+                sccIndex.vertexAdded(index);
+            }
+            derivedVersion++;
+        }
+    }
+
+    /**
+     * Brings the derived indices up to date after a batch of users has been added.
+     * @param firstNew The number of slots before the batch. Slots from there on are new; the batch reused the ones below.
+     */
+    private void usersAdded(int firstNew){
+        recommender.resize(users.size());
+        synchronized (derivedLock){
+            distanceTable = null;
+            if (sccIndex != null){
+                for (int v = firstNew; v < users.size(); v++){
+                    sccIndex.vertexAdded(v);
+                }
+            }
+            derivedVersion++;
+        }
+    }
+
+    /**
+     * Drops the derived indices after users have been removed or renumbered, or after a bulk change.
+     * The derived indices are guarded by their own monitor, and every change bumps a version so that an index built
+     * while connections were changing is never kept, except the component index, which catches up instead.
+     */
+    private void dropDerivedIndices(){
+        synchronized (derivedLock){
+            distanceTable = null;
+            sccIndex = null;
+            recommender.clear();
+            hopSearch.clear();
+            derivedVersion++;
+        }
+    }
+
+    /**
+     * Brings the derived indices up to date after a connection has been added.
+     * @param from The index of the user who started following.
+     * @param to The index of the user being followed.
+     */
+    private void connectionAdded(int from, int to){
+        DistanceTable table;
+        long version;
+        synchronized (derivedLock){
+            table = distanceTable;
+            if (sccIndex != null){
+                sccIndex.edgeAdded(from, to);
+            }
+            recordSccChange(from, to, true);
+            recommender.rowChanged(from);
+            version = ++derivedVersion;
+        }
+        if (table == null){
+            return;
+        }
+        // The updated table is worked out outside the monitor, while queries go on reading the old one. It is only kept
+        // if nothing else changed meanwhile, since another change would have started from the old table too; otherwise
+        // the table is dropped and rebuilt when it is next needed.
+        DistanceTable updated = table.withEdge(from, to);
+        synchronized (derivedLock){
+            distanceTable = derivedVersion == version ? updated : null;
+        }
+    }
+
+    /**
+     * Brings the derived indices up to date after a connection has been removed.
+     * @param from The index of the user who stopped following.
+     * @param to The index of the user no longer followed.
+     */
+    private void connectionRemoved(int from, int to){
+        synchronized (derivedLock){
+            distanceTable = null;
+            if (sccIndex != null){
+                sccIndex.edgeRemoved(from, to);
+            }
+            recordSccChange(from, to, false);
+            recommender.rowChanged(from);
+            derivedVersion++;
+        }
+    }
+
+    /**
+     * Remembers a connection change for the component indices being built, if any, while the caller holds the derived
+     * index monitor.
+     * @param from The index of the user whose connections changed.
+     * @param to The index of the other user.
+     * @param added True if the connection was added, false if it was removed.
+     */
+    private void recordSccChange(int from, int to, boolean added){
+        if (sccBuilds == 0){
+            return;
+        }
+        if (sccChanges == null){
+            sccChanges = new int[48];
+        } else if (sccChangeCount + 3 > sccChanges.length){
+            sccChanges = Arrays.copyOf(sccChanges, sccChanges.length * 2);
+        }
+        sccChanges[sccChangeCount++] = from;
+        sccChanges[sccChangeCount++] = to;
+        sccChanges[sccChangeCount++] = added ? 1 : 0;
+    }
+
+    /**
+     * Checks whether one user follows another.
+     * @param userFrom The name of the user who may be following.
+     * @param userTo The name of the user who may be followed.
+     * @return True if both users exist and 'userFrom' follows 'userTo', false otherwise.
+     * @custom.precondition 'userFrom' and 'userTo' are non-null strings.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public boolean hasConnection(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            return optimisticRead(() -> {
+                User a = findUser(userFrom);
+                User b = findUser(userTo);
+                return a != null && b != null && adjacency.hasEdge(a.getIndexPos(), b.getIndexPos());
+            });
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.HAS_CONNECTION, e);
+        } finally {
+            stopTimer(GraphOperation.HAS_CONNECTION, start);
+        }
+    }
+
+    /**
+     * Checks whether two users follow each other.
+     * @param userA The name of the first user.
+     * @param userB The name of the second user.
+     * @return True if both users exist and each follows the other, false otherwise.
+     * @custom.precondition 'userA' and 'userB' are non-null strings.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public boolean isMutual(String userA, String userB){
+        long start = startTimer();
+        try {
+            return optimisticRead(() -> {
+                User a = findUser(userA);
+                User b = findUser(userB);
+                return a != null && b != null && adjacency.hasEdge(a.getIndexPos(), b.getIndexPos())
+                        && adjacency.hasEdge(b.getIndexPos(), a.getIndexPos());
+            });
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.IS_MUTUAL, e);
+        } finally {
+            stopTimer(GraphOperation.IS_MUTUAL, start);
+        }
+    }
+
+    /**
+     * Finds the shortest path between two users in the follow graph using bidirectional Breadth-First Search.
+     * @param userFrom The starting user for the path.
+     * @param userTo The ending user for the path.
+     * @return A string representing the shortest path between the two users, including the number of users along the path. Returns the path as a string of usernames delimited by "->" and the number of users in the path separated by "###".
+     * @custom.precondition `userFrom` and `userTo` are valid usernames existing in the graph.
+     * @custom.postcondition The shortest path from userFrom to userTo is returned as a String. If either user or the path doesn't exist, an error message is printed and an empty String is returned.
+     */
+    public String shortestPath(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userFrom);
+                if (a == null){
+                    output.println("userFrom doesn't exist.");
+                    recordError(GraphOperation.SHORTEST_PATH);
+                    return "";
+                }
+                User b = findUser(userTo);
+                if (b == null){
+                    output.println("userTo doesn't exist.");
+                    recordError(GraphOperation.SHORTEST_PATH);
+                    return "";
+                }
+                PathResult path = shortestPathResult(a.getIndexPos(), b.getIndexPos());
+                if (path == null){
+                    output.println("Path doesn't exist.");
+                    return "";
+                }
+                return joinUserNames(path.getPath()) + "###" + path.getLength();
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.SHORTEST_PATH, e);
+        } finally {
+            stopTimer(GraphOperation.SHORTEST_PATH, start);
+        }
+    }
+
+    /**
+     * Finds the shortest path between two users and returns it as user indices with its hop count.
+     * @param userFrom The starting user for the path.
+     * @param userTo The ending user for the path.
+     * @return The shortest path from userFrom to userTo, or null if either user doesn't exist or no path exists.
+     * @custom.precondition `userFrom` and `userTo` are non-null strings.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public PathResult shortestPathResult(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userFrom);
+                User b = findUser(userTo);
+                if (a == null || b == null){
+                    return null;
+                }
+                return shortestPathResult(a.getIndexPos(), b.getIndexPos());
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.SHORTEST_PATH, e);
+        } finally {
+            stopTimer(GraphOperation.SHORTEST_PATH, start);
+        }
+    }
+
+    /**
+     * Finds the shortest path between two users given by id, skipping the username lookups and building no names.
+     * @param from The id of the starting user.
+     * @param to The id of the ending user.
+     * @return The shortest path as user ids with its hop count, or null if no path exists.
+     * @throws IllegalArgumentException if either id does not belong to a user in the graph.
+     * @custom.precondition Both ids were returned by resolve.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public PathResult shortestPath(int from, int to){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                PathResult path = shortestPathResult(slotOf(from), slotOf(to));
+                return path == null ? null : new PathResult(toIds(path.getPath()));
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.SHORTEST_PATH, e);
+        } finally {
+            stopTimer(GraphOperation.SHORTEST_PATH, start);
+        }
+    }
+
+    /**
+     * Runs the bidirectional search between two user indices.
+     * @param from The index of the starting user.
+     * @param to The index of the ending user.
+     * @return The shortest path, or null if no path exists.
+     */
+    private PathResult shortestPathResult(int from, int to){
+        int[] path;
+        synchronized (derivedLock){
+            if (sccIndex != null && !sccIndex.isStale() && !sccIndex.canReach(from, to)){
+                return null;
+            }
+            path = distanceTable != null ? distanceTable.path(from, to) : null;
+            if (distanceTable != null){
+                return path == null ? null : new PathResult(path);
+            }
+        }
+        path = BidirectionalBfs.shortestPath(adjacency, from, to);
+        GraphMetrics current = metrics;
+        if (current != null){
+            current.get(GraphOperation.SHORTEST_PATH).recordEdges(BidirectionalBfs.lastEdgesScanned());
+        }
+        return path == null ? null : new PathResult(path);
+    }
+
+    /**
+     * Builds the all-pairs distance table, so that later distance and shortest path queries are table lookups.
+     * The table is kept up to date when connections are added, and is dropped when connections or users are removed.
+     * @throws IllegalArgumentException if the graph has more than DistanceTable.MAX_VERTICES user slots.
+     * @custom.precondition The graph is small enough for a table with one entry per pair of users.
+     * @custom.postcondition The distance table reflects the current graph, unless connections changed while it was being built.
+     */
+    public void buildDistanceTable(){
+        long stamp = structureLock.readLock();
+        try {
+            buildDistanceTableUnlocked();
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Builds the distance table while the caller holds the read lock, and keeps it only if no connection changed meanwhile.
+     * @return The table that was built.
+     */
+    private DistanceTable buildDistanceTableUnlocked(){
+        long version;
+        synchronized (derivedLock){
+            version = derivedVersion;
+        }
+        DistanceTable table = new DistanceTable(adjacency);
+        synchronized (derivedLock){
+            if (derivedVersion == version){
+                distanceTable = table;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Gets the number of follow edges on a shortest path between two users, building the distance table if needed.
+     * Graphs too large for a distance table are measured with a bidirectional search instead.
+     * @param userFrom The starting user.
+     * @param userTo The ending user.
+     * @return The hop distance, or -1 if userTo cannot be reached from userFrom.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users.
+     * @custom.postcondition The distance table is built if it was missing and the graph is small enough. The graph is unchanged.
+     */
+    public int getDistance(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userFrom);
+                User b = findUser(userTo);
+                if (a == null || b == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                synchronized (derivedLock){
+                    if (distanceTable != null){
+                        return distanceTable.distance(a.getIndexPos(), b.getIndexPos());
+                    }
+                }
+                if (!DistanceTable.fits(adjacency.getVertexCount())){
+                    int[] path = BidirectionalBfs.shortestPath(adjacency, a.getIndexPos(), b.getIndexPos());
+                    GraphMetrics current = metrics;
+                    if (current != null){
+                        current.get(GraphOperation.GET_DISTANCE).recordEdges(BidirectionalBfs.lastEdgesScanned());
+                    }
+                    return path == null ? -1 : path.length - 1;
+                }
+                return buildDistanceTableUnlocked().distance(a.getIndexPos(), b.getIndexPos());
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_DISTANCE, e);
+        } finally {
+            stopTimer(GraphOperation.GET_DISTANCE, start);
+        }
+    }
+
+    /**
+     * Finds all paths between two users in the follow graph using Depth-First Search.
+     * @param userFrom The starting user for the paths.
+     * @param userTo The ending user for the paths.
+     * @return An ArrayList of strings, where each string represents a path from userFrom to userTo. Each path string contains usernames delimited by "->". The list is sorted alphabetically.
+     * @custom.precondition `userFrom` and `userTo` are valid usernames that exist within the graph.
+     * @custom.postcondition An ArrayList containing all paths between the given users is returned. The ArrayList is sorted alphabetically. If either user doesn't exist, an IllegalArgumentException is thrown.
+     */
+    public ArrayList<String> allPaths(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userFrom);
+                if (a == null) {
+                    output.println("userFrom doesn't exist.");
+                    recordError(GraphOperation.ALL_PATHS);
+                    return null;
+                }
+
+                User b = findUser(userTo);
+                if (b == null) {
+                    output.println("userTo doesn't exist.");
+                    recordError(GraphOperation.ALL_PATHS);
+                    return null;
+                }
+        
+                if (a == b){
+                    return new ArrayList<>(Collections.singletonList(userFrom));
+                }
+
+                ArrayList<String> result = new ArrayList<>();
+                if (searchPool != null) {
+                    // The workers must not see connections change under them, so they search a pinned copy.
+                    SccIndex index = getSccIndex();
+                    Adjacency pinned = pinConnections();
+                    for (int[] path : ParallelSearch.findPaths(searchPool, pinned, matchesPinned(index), a.getIndexPos(), b.getIndexPos(), SearchLimits.NONE)) {
+                        result.add(joinUserNames(path));
+                    }
+                } else {
+                    PathIterator paths = new PathIterator(adjacency, a.getIndexPos(), b.getIndexPos(), SearchLimits.NONE, getSccIndex());
+                    while (paths.hasNext()) {
+                        result.add(joinUserNames(paths.next()));
+                    }
+                }
+                Collections.sort(result);
+                recordResult(GraphOperation.ALL_PATHS, result.size());
+                return result;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.ALL_PATHS, e);
+        } finally {
+            stopTimer(GraphOperation.ALL_PATHS, start);
+        }
+    }
+
+    /**
+     * Lazily enumerates the paths between two users as user indices, stopping at the given limits.
+     * @param userFrom The starting user for the paths.
+     * @param userTo The ending user for the paths.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @return A PathIterator that produces the paths in depth-first order. Only the paths taken from it are ever built.
+     * It searches the connections as they were when it was created, which it shares copy-on-write like a snapshot, so
+     * the graph may go on changing while it is in use.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users and 'limits' is non-null.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public PathIterator allPathsIterator(String userFrom, String userTo, SearchLimits limits){
+        long stamp = structureLock.readLock();
+        try {
+            return newPinnedPathIterator(userFrom, userTo, limits);
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Creates a path iterator over the connections as they are now, while the caller holds the read lock. Like snapshot,
+     * it pins the adjacency store and the user list so that neither changes under the iterator, and it prunes with the
+     * component index only if the index matched the pinned connections.
+     * @param userFrom The starting user for the paths.
+     * @param userTo The ending user for the paths.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @return A PathIterator positioned before the first path, which may be used after the read lock is released.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     */
+    private PathIterator newPinnedPathIterator(String userFrom, String userTo, SearchLimits limits){
+        User a = findUser(userFrom);
+        User b = findUser(userTo);
+        if (a == null || b == null) {
+            throw new IllegalArgumentException("Username doesn't exist.");
+        }
+        SccIndex index = getSccIndex();
+        Adjacency pinned = pinConnections();
+        usersShared = true;
+        SccIndex pruning = matchesPinned(index);
+        long[] reachesTarget = pruning == null ? null : pruning.verticesReaching(b.getIndexPos());
+        return new PathIterator(pinned, new int[]{a.getIndexPos()}, b.getIndexPos(), limits, reachesTarget, limits.deadline());
+    }
+
+    /**
+     * Takes a copy-on-write copy of the adjacency store for a search that must not see connections change, while the
+     * caller holds the read lock. Every stripe is held while the store starts a new epoch, so no connection change is
+     * half-way through.
+     * @return A copy of the adjacency store that no writer changes.
+     */
+    private Adjacency pinConnections(){
+        lockAllStripes();
+        try {
+            return adjacency.snapshot();
+        } finally {
+            unlockAllStripes();
+        }
+    }
+
+    /**
+     * Checks whether a component index taken from getSccIndex before pinConnections matched the pinned connections.
+     * It did if it is still the kept index and has not gone stale: staleness is never cleared, and a kept index only
+     * lags the connections while a change holds its stripes. Later additions only grow what it reports as reachable, and
+     * never move a vertex to another component.
+     * @param index The index returned by getSccIndex.
+     * @return The index if it can prune a search of the pinned connections, or null.
+     */
+    private SccIndex matchesPinned(SccIndex index){
+        synchronized (derivedLock){
+            return sccIndex == index && !index.isStale() ? index : null;
+        }
+    }
+
+    /**
+     * Creates a path iterator while the caller holds the read lock.
+     * @param userFrom The starting user for the paths.
+     * @param userTo The ending user for the paths.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @return A PathIterator positioned before the first path.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     */
+    private PathIterator newPathIterator(String userFrom, String userTo, SearchLimits limits){
+        User a = findUser(userFrom);
+        User b = findUser(userTo);
+        if (a == null || b == null) {
+            throw new IllegalArgumentException("Username doesn't exist.");
+        }
+        return new PathIterator(adjacency, a.getIndexPos(), b.getIndexPos(), limits, getSccIndex());
+    }
+
+    /**
+     * Lazily streams the paths between two users as "->" delimited usernames, stopping at the given limits.
+     * @param userFrom The starting user for the paths.
+     * @param userTo The ending user for the paths.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @return A sequential Stream of path strings in depth-first order. Like allPathsIterator, it searches the graph as it
+     * was when the stream was created, and names the users as they were then.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users and 'limits' is non-null.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public Stream<String> streamAllPaths(String userFrom, String userTo, SearchLimits limits){
+        PathIterator paths;
+        ArrayList<User> slots;
+        long stamp = structureLock.readLock();
+        try {
+            paths = newPinnedPathIterator(userFrom, userTo, limits);
+            // The list is shared now, so the graph copies it before its next change and this one stays as it is.
+            slots = users;
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(paths, Spliterator.ORDERED | Spliterator.NONNULL), false).map(path -> joinUserNames(slots, path));
+    }
+
+    /**
+     * Counts the paths between two users without building any of them, stopping at the given limits.
+     * @param userFrom The starting user for the paths.
+     * @param userTo The ending user for the paths.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @return The number of paths found within the limits.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users and 'limits' is non-null.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public long countAllPaths(String userFrom, String userTo, SearchLimits limits){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                long count = newPathIterator(userFrom, userTo, limits).count();
+                recordResult(GraphOperation.COUNT_ALL_PATHS, count);
+                return count;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.COUNT_ALL_PATHS, e);
+        } finally {
+            stopTimer(GraphOperation.COUNT_ALL_PATHS, start);
+        }
+    }
+
+    /**
+     * Joins the usernames along a path of user indices with "->".
+     * @param path The user indices along the path.
+     * @return The path as a "->" delimited String of usernames.
+     */
+    private String joinUserNames(int[] path){
+        return joinUserNames(users, path);
+    }
+
+    /**
+     * Joins the usernames along a path of user indices with "->", taking the users from the given slots.
+     * @param slots The users by slot.
+     * @param path The user indices along the path.
+     * @return The path as a "->" delimited String of usernames.
+     */
+    private static String joinUserNames(ArrayList<User> slots, int[] path){
+        StringBuilder str_path = new StringBuilder();
+        for (int ind: path){
+            if (str_path.length() > 0){
+                str_path.append("->");
+            }
+            str_path.append(slots.get(ind).getUserName());
+        }
+        return str_path.toString();
+    }
+
+    /**
+     * Joins the usernames around a loop with "->", starting and ending at the user that was added first.
+     * @param cycle The user indices around the loop, starting at the smallest index.
+     * @return The loop as a "->" delimited String of usernames.
+     */
+    private String joinLoop(int[] cycle){
+        int first = 0;
+        if (!idOrdered){
+            for (int i = 1; i < cycle.length; i++){
+                if (idOfSlot[cycle[i]] < idOfSlot[cycle[first]]){
+                    first = i;
+                }
+            }
+        }
+        StringBuilder loop = new StringBuilder();
+        for (int i = 0; i <= cycle.length; i++){
+            loop.append(users.get(cycle[(first + i) % cycle.length]).getUserName());
+            if (i < cycle.length){
+                loop.append("->");
+            }
+        }
+        return loop.toString();
+    }
+
+    /**
+     * Finds all loops within the follow graph.
+     * @return An ArrayList of strings, where each string represents a unique loop in the graph.
+     * @custom.postcondition An ArrayList of strings is returned, representing all unique loops in the follow graph. The ArrayList is sorted alphabetically.
      */
-    public void addUser(String userName){
-        if (!checkIfUserExists(userName)){
-            users.add(new User(userName));
-            userCount = User.getUserCount();
-        } else {
-            System.out.println("Username doesn't exists.");
-        }
+    public ArrayList<String> findAllLoops(){
+        return findAllLoops(SearchLimits.NONE);
     }
 
     /**
-     * Removes a user from the follow graph.
-     * @param userName The name of the user to be removed.
-     * @custom.precondition 'userName' is a non-null, non-empty string, representing a user that exists within the graph.
-     * @custom.postcondition If a user with the given name exists, the user and all associated connections are removed from the graph.  The indices of subsequent users are adjusted accordingly. Otherwise, an error message is displayed to the console.
+     * Finds the loops within the follow graph, stopping at the given limits.
+     * @param limits The bounds on loop length (in users), number of loops and running time.
+     * @return An ArrayList of strings, where each string represents a unique loop starting and ending at the same user.
+     * @custom.precondition 'limits' is non-null.
+     * @custom.postcondition An ArrayList of the loops found within the limits is returned, sorted alphabetically.
      */
-    public void removeUser(String userName){
-        if (checkIfUserExists(userName)){
-            User a = findUser(userName);
-            int a_index = a.getIndexPos();
-            int numUsers = users.size();
-            for (int i = a_index; i < numUsers - 1; i++) {
-                System.arraycopy(connections[i + 1], 0, connections[i], 0, numUsers);
-                for (int j = 0; j < numUsers; j++) {
-                    connections[j][i] = connections[j][i + 1];
+    public ArrayList<String> findAllLoops(SearchLimits limits){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                ArrayList<String> result = new ArrayList<>();
+                // A result cap needs one shared count, so only uncapped searches are split across workers.
+                if (searchPool != null && limits.getMaxResults() == Long.MAX_VALUE){
+                    SccIndex index = getSccIndex();
+                    Adjacency pinned = pinConnections();
+                    for (int[] cycle : ParallelSearch.findLoops(searchPool, pinned, matchesPinned(index), limits)){
+                        result.add(joinLoop(cycle));
+                    }
+                } else {
+                    new CycleFinder(adjacency, limits, getSccIndex()).run(cycle -> {
+                        result.add(joinLoop(cycle));
+                        return true;
+                    });
                 }
+                Collections.sort(result);
+                recordResult(GraphOperation.FIND_ALL_LOOPS, result.size());
+                return result;
+            } finally {
+                structureLock.unlockRead(stamp);
             }
-            Arrays.fill(connections[numUsers - 1], false);
-            for (int i = 0; i < numUsers - 1; i++) {
-                connections[i][numUsers - 1] = false; 
-            }
-    
-            for (int i = a_index + 1; i < numUsers; i++){
-                users.get(i).setIndexPos(i - 1);
-                users.set(i - 1, users.get(i));
-            }
-            users.remove(users.size() - 1);
-            User.setUserCount(User.getUserCount() - 1);
-            userCount--;
-        } else {
-            System.out.println("Username doesn't exists.");
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.FIND_ALL_LOOPS, e);
+        } finally {
+            stopTimer(GraphOperation.FIND_ALL_LOOPS, start);
         }
     }
 
     /**
-     * Checks if a user with the given username exists in the graph.
-     * @param userName The name of the user to check for.
-     * @return True if a user with the given username exists, false otherwise.
-     * @custom.precondition 'userName' is a non-null string.
-     * @custom.postcondition The method returns true if the user exists, false otherwise.
+     * Passes every loop in the follow graph to a callback as it is found, stopping at the given limits.
+     * Each loop is reported exactly once, as user indices starting at its smallest index.
+     * @param limits The bounds on loop length (in users), number of loops and running time.
+     * @param visitor The callback that receives the loops. It can stop the search by returning false.
+     * @return The number of loops passed to the callback.
+     * @custom.precondition 'limits' and 'visitor' are non-null.
+     * @custom.postcondition The graph is unchanged.
      */
-    public Boolean checkIfUserExists(String userName){
-        for (User a: users){
-            if (a.getUserName().equalsIgnoreCase(userName)){
-                return true;
+    public long forEachLoop(SearchLimits limits, CycleVisitor visitor){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                long count = new CycleFinder(adjacency, limits, getSccIndex()).run(visitor);
+                recordResult(GraphOperation.FOR_EACH_LOOP, count);
+                return count;
+            } finally {
+                structureLock.unlockRead(stamp);
             }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.FOR_EACH_LOOP, e);
+        } finally {
+            stopTimer(GraphOperation.FOR_EACH_LOOP, start);
         }
-        return false;
     }
 
     /**
-     * Retrieves the User object corresponding to the provided userName.
-     * @param userName The username to search for.
-     * @return The User object associated with the provided username, or null if the user is not found.
-     * @custom.precondition 'userName' is a non-null string.
-     * @custom.postcondition The method returns a User object if a user with the given username exists.
+     * Gets the strongly connected component index, rebuilding it if it is missing or stale. The caller holds the read or write lock.
+     * Connections may change while the index is built, since it runs under the read lock, so the changes made meanwhile
+     * are recorded and applied to the new index before it is kept. Every stripe is held while they are applied, so no
+     * change is half-way through: each one either reached the record or starts after the index is kept.
+     * @return An up to date component index.
      */
-    private User findUser(String userName){
-        for (User a: users){
-            if (a.getUserName().equalsIgnoreCase(userName)){
-                return a;
+    private SccIndex getSccIndex(){
+        int start;
+        synchronized (derivedLock){
+            if (sccIndex != null && !sccIndex.isStale()){
+                return sccIndex;
+            }
+            sccBuilds++;
+            start = sccChangeCount;
+        }
+        SccIndex index = null;
+        try {
+            index = new SccIndex(adjacency);
+        } finally {
+            lockAllStripes();
+            try {
+                synchronized (derivedLock){
+                    if (index != null){
+                        index.catchUp(sccChanges, start, sccChangeCount);
+                        // Another build may have finished first; its index is just as current and is kept instead.
+                        if (sccIndex == null || sccIndex.isStale()){
+                            sccIndex = index;
+                        } else {
+                            index = sccIndex;
+                        }
+                    }
+                    if (--sccBuilds == 0){
+                        sccChangeCount = 0;
+                    }
+                }
+            } finally {
+                unlockAllStripes();
             }
         }
-        return null;
+        return index;
     }
 
     /**
-     * Adds a connection between two users, indicating that one user follows the other.
-     * @param userFrom The name of the user initiating the follow.
-     * @param userTo The name of the user being followed.
-     * @custom.precondition  'userFrom' and 'userTo' are non-null, non-empty strings representing users existing within the graph. 
-     * @custom.postcondition  If both usernames exist, a connection from 'userFrom' to 'userTo' is established in the graph, represented as a 'true' value in the connections matrix. Otherwise an error message is printed for the user that doesn't exist.
+     * Gets the number of strongly connected components in the follow graph. Users in the same component can all reach each other.
+     * @return The number of components.
+     * @custom.postcondition The component index is built if it was missing or stale. The graph is unchanged.
      */
-    public void addConnection(String userFrom, String userTo){
-        int a_index = 0;
-        int b_index = 0;
-        if (!checkIfUserExists(userFrom)){
-            System.out.println("userFrom doesn't exist.");
-        } else {
-            a_index = findUser(userFrom).getIndexPos();
-        }
-
-        if (!checkIfUserExists(userTo)){
-            System.out.println("userTo doesn't exist.");
-        } else {
-            b_index = findUser(userTo).getIndexPos();
-        }
-
-        if (checkIfUserExists(userFrom) && checkIfUserExists(userFrom)){
-            connections[a_index][b_index] = true;
+    public int getComponentCount(){
+        long stamp = structureLock.readLock();
+        try {
+            // Tombstoned slots have no edges, so each of them is a component of its own.
+            return getSccIndex().getComponentCount() - tombstoneCount;
+        } finally {
+            structureLock.unlockRead(stamp);
         }
     }
 
     /**
-     * Removes a connection between two users.
-     * @param userFrom The name of the user who is currently following the other user.
-     * @param userTo The name of the user being followed.
-     * @custom.precondition  `userFrom` and `userTo` are non-null, non-empty strings representing users that exist in the graph and have a connection established between them.
-     * @custom.postcondition If both users exist and a connection exists between them, the connection is removed. Otherwise, error messages indicating the non-existence of users or the connection are printed to the console.
+     * Gets the id of the strongly connected component the given user belongs to.
+     * @param username The name of the user.
+     * @return The component id. Two users have the same id exactly when they can reach each other.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition The component index is built if it was missing or stale. Ids are valid until the graph changes.
      */
-    public void removeConnection(String userFrom, String userTo){
-        int a_index = 0;
-        int b_index = 0;
-        if (!checkIfUserExists(userFrom)){
-            System.out.println("userFrom doesn't exist.");
-        } else {
-            User a = findUser(userFrom);
-            a_index = a.getIndexPos();
-        }
-
-        if (!checkIfUserExists(userTo)){
-            System.out.println("userTo doesn't exist.");
-        } else {
-            User b = findUser(userTo);
-            b.getIndexPos();
-        }
-
-        if (checkIfUserExists(userTo) && checkIfUserExists(userFrom)){
-            connections[a_index][b_index] = false;
+    public int getComponentId(String username){
+        long stamp = structureLock.readLock();
+        try {
+            return getSccIndex().componentOf(getUserIndex(username));
+        } finally {
+            structureLock.unlockRead(stamp);
         }
-        
     }
 
     /**
-     * Finds the shortest path between two users in the follow graph using Breadth-First Search.
-     * @param userFrom The starting user for the path.
-     * @param userTo The ending user for the path.
-     * @return A string representing the shortest path between the two users, including the number of users along the path. Returns the path as a string of usernames delimited by "->" and the number of users in the path separated by "###".
-     * @custom.precondition `userFrom` and `userTo` are valid usernames existing in the graph.
-     * @custom.postcondition The shortest path from userFrom to userTo is returned as a String. If no path exists, an IllegalArgumentException is thrown.
+     * Gets the number of users in the strongly connected component of the given user.
+     * @param username The name of the user.
+     * @return The size of the user's component, including the user.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition The component index is built if it was missing or stale. The graph is unchanged.
      */
-    public String shortestPath(String userFrom, String userTo){
-        User a;
-        User b;
-        if (!checkIfUserExists(userFrom)){
-            System.out.println("userFrom doesn't exist.");
-            return "";
-        } else {
-            a = findUser(userFrom);
-        }
-        if (!checkIfUserExists(userTo)){
-            System.out.println("userTo doesn't exist.");
-            return "";
-        } else {
-            b = findUser(userTo);
+    public int getComponentSize(String username){
+        long stamp = structureLock.readLock();
+        try {
+            SccIndex index = getSccIndex();
+            return index.componentSize(index.componentOf(getUserIndex(username)));
+        } finally {
+            structureLock.unlockRead(stamp);
         }
-        int a_index = a.getIndexPos();
-        int b_index = b.getIndexPos();
-        int n = connections.length;
-        boolean[] visited = new boolean[n];
-        Queue<List<Integer>> queue = new LinkedList<>();
-        queue.add(Collections.singletonList(a_index));
-        visited[a_index] = true;
-        while (!queue.isEmpty()) {
-            List<Integer> path = queue.poll();
-            int currentNode = path.get(path.size() - 1);
-
-            if (currentNode == b_index) {
-                StringBuilder str_path = new StringBuilder();
-                for (Integer ind: path){
-                    str_path.append("->").append(users.get(ind).getUserName()); 
-                }
-                return str_path.substring(2) + "###" + path.size();
-            }
+    }
 
-            for (int neighbor = 0; neighbor < n; neighbor++) {
-                if (connections[currentNode][neighbor] == true && !visited[neighbor]) {
-                    visited[neighbor] = true;
-                    List<Integer> newPath = new ArrayList<>(path);
-                    newPath.add(neighbor);
-                    queue.add(newPath);
-                }
+    /**
+     * Checks whether there is any path from one user to another, in constant time once the component index is built.
+     * @param userFrom The starting user.
+     * @param userTo The ending user.
+     * @return True if userTo can be reached from userFrom by following connections.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users.
+     * @custom.postcondition The component index is built if it was missing or stale. The graph is unchanged.
+     */
+    public boolean canReach(String userFrom, String userTo){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int a = getUserIndex(userFrom);
+                int b = getUserIndex(userTo);
+                return getSccIndex().canReach(a, b);
+            } finally {
+                structureLock.unlockRead(stamp);
             }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.CAN_REACH, e);
+        } finally {
+            stopTimer(GraphOperation.CAN_REACH, start);
         }
-        System.out.println("Path doesn't exist.");
-        return "";
     }
 
     /**
-     * Finds all paths between two users in the follow graph using Depth-First Search.
-     * @param userFrom The starting user for the paths.
-     * @param userTo The ending user for the paths.
-     * @return An ArrayList of strings, where each string represents a path from userFrom to userTo. Each path string contains usernames delimited by "->". The list is sorted alphabetically.
-     * @custom.precondition `userFrom` and `userTo` are valid usernames that exist within the graph.
-     * @custom.postcondition An ArrayList containing all paths between the given users is returned. The ArrayList is sorted alphabetically. If either user doesn't exist, an IllegalArgumentException is thrown.
+     * Gets every user within k hops of the given user: the users it follows, the users they follow, and so on k times.
+     * Results are cached per user and k until the graph next changes.
+     * @param username The name of the user.
+     * @param k The greatest number of hops.
+     * @return An ArrayList of the usernames of the users within k hops, not including the user, in the order the users were added.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph or k is negative.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition The graph is unchanged.
      */
-    public ArrayList<String> allPaths(String userFrom, String userTo){
-        User a;
-        User b;
-
-        if (!checkIfUserExists(userFrom)) {
-            System.out.println("userFrom doesn't exist.");
-            return null;
-        } else {
-            a = findUser(userFrom);
-        }
-
-        if (!checkIfUserExists(userTo)) {
-            System.out.println("userTo doesn't exist.");
-            return null;
-        } else {
-            b = findUser(userTo);
-        }
-        
-        int a_index = a.getIndexPos();
-        int b_index = b.getIndexPos();
-
-        if (a_index == b_index){
-            return new ArrayList<>(Collections.singletonList(userFrom));
+    public ArrayList<String> getUsersWithinHops(String username, int k){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int a = getUserIndex(username);
+                ArrayList<String> names = toUserNames(hopSearch.within(adjacency, a, checkHops(k), currentVersion()));
+                recordResult(GraphOperation.WITHIN_HOPS, names.size());
+                return names;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.WITHIN_HOPS, e);
+        } finally {
+            stopTimer(GraphOperation.WITHIN_HOPS, start);
         }
+    }
 
-        int n = connections.length;
-        List<List<Integer>> allPaths = new ArrayList<>();
-        Stack<List<Integer>> stack = new Stack<>();
-        stack.push(new ArrayList<>(Collections.singletonList(a_index)));
-
-        while (!stack.isEmpty()) {
-            List<Integer> path = stack.pop();
-            int currentNode = path.get(path.size() - 1);
-            if (currentNode == b_index) {
-                allPaths.add(path);
-            } else {
-                for (int neighbor = 0; neighbor < n; neighbor++) {
-                    if (connections[currentNode][neighbor] && !path.contains(neighbor)) {
-                        List<Integer> newPath = new ArrayList<>(path);
-                        newPath.add(neighbor);
-                        stack.push(newPath);
-                    }
-                }
+    /**
+     * Gets the ids of every user within k hops of the user with the given id, in the same way as getUsersWithinHops
+     * but without looking up or building any names.
+     * @param id The id of the user.
+     * @param k The greatest number of hops.
+     * @return The ids of the users within k hops, not including the user, in no particular order. The array is the caller's own.
+     * @throws IllegalArgumentException if the id does not belong to a user in the graph or k is negative.
+     * @custom.precondition The id was returned by resolve.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public int[] withinHops(int id, int k){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int[] ids = toIds(hopSearch.within(adjacency, slotOf(id), checkHops(k), currentVersion()));
+                recordResult(GraphOperation.WITHIN_HOPS, ids.length);
+                return ids;
+            } finally {
+                structureLock.unlockRead(stamp);
             }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.WITHIN_HOPS, e);
+        } finally {
+            stopTimer(GraphOperation.WITHIN_HOPS, start);
         }
+    }
 
-        ArrayList<String> result = new ArrayList<>();
-        for (List<Integer> path : allPaths) {
-            String strPath = path.stream().map(index -> users.get(index).getUserName()).collect(Collectors.joining("->"));
-            result.add(strPath);
+    /**
+     * Counts the users at each number of hops from the given user, which sizes its audience without listing it.
+     * Passing Integer.MAX_VALUE as k counts every user the given user can reach.
+     * Results are cached per user and k until the graph next changes.
+     * @param username The name of the user.
+     * @param k The greatest number of hops.
+     * @return The number of users first reached after each number of hops, starting with 1 for the user itself at 0 hops.
+     *         The array ends at the last hop that reached a new user, so it is shorter than k + 1 when the search runs out first.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph or k is negative.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public int[] getHopCounts(String username, int k){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int a = getUserIndex(username);
+                return hopSearch.counts(adjacency, a, checkHops(k), currentVersion()).clone();
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.HOP_COUNTS, e);
+        } finally {
+            stopTimer(GraphOperation.HOP_COUNTS, start);
         }
-        Collections.sort(result);
-        return result;
     }
 
     /**
-     * Finds all loops within the follow graph.
-     * @return An ArrayList of strings, where each string represents a unique loop in the graph.
-     * @custom.postcondition An ArrayList of strings is returned, representing all unique loops in the follow graph. The ArrayList is sorted alphabetically.
+     * Counts the users at each number of hops from the user with the given id, in the same way as getHopCounts.
+     * @param id The id of the user.
+     * @param k The greatest number of hops.
+     * @return The number of users first reached after each number of hops, starting with 1 for the user itself at 0 hops.
+     * @throws IllegalArgumentException if the id does not belong to a user in the graph or k is negative.
+     * @custom.precondition The id was returned by resolve.
+     * @custom.postcondition The graph is unchanged.
      */
-    public ArrayList<String> findAllLoops(){
-        int n = connections.length;
-        ArrayList<String> result = new ArrayList<>();
-        
-        for (int start = 0; start < n; start++) {
-            Stack<List<Integer>> stack = new Stack<>();
-            stack.push(new ArrayList<>(Collections.singletonList(start)));
-            
-            while (!stack.isEmpty()) {
-                List<Integer> path = stack.pop();
-                int currentNode = path.get(path.size() - 1);
-                
-                for (int neighbor = 0; neighbor < n; neighbor++) {
-                    if (connections[currentNode][neighbor]) {
-                        if (neighbor == start && path.size() > 1) {
-                            String cycle = path.stream().map(index -> users.get(index).getUserName()).collect(Collectors.joining("->"));
-                            result.add(cycle + "->"  + users.get(start).getUserName());
-                        } else if (!path.contains(neighbor)) {
-                            List<Integer> newPath = new ArrayList<>(path);
-                            newPath.add(neighbor);
-                            stack.push(newPath);
-                        }
-                    }
-                }
+    public int[] hopCounts(int id, int k){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                return hopSearch.counts(adjacency, slotOf(id), checkHops(k), currentVersion()).clone();
+            } finally {
+                structureLock.unlockRead(stamp);
             }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.HOP_COUNTS, e);
+        } finally {
+            stopTimer(GraphOperation.HOP_COUNTS, start);
         }
+    }
 
-        ArrayList<ArrayList<String>> temp = new ArrayList<>();
-        for (String s: result){
-            temp.add(new ArrayList<>(Arrays.asList(s.split("->"))));
+    /**
+     * Checks that a hop limit is not negative.
+     * @param k The hop limit.
+     * @return The hop limit.
+     * @throws IllegalArgumentException if k is negative.
+     */
+    private static int checkHops(int k){
+        if (k < 0){
+            throw new IllegalArgumentException("Hop limit must not be negative.");
         }
-
-        ArrayList<String> new_result = new ArrayList<>(normalize(temp, result));
-        new_result.removeIf(Objects::isNull);
-        Collections.sort(new_result);
-        return new_result;
+        return k;
     }
 
     /**
-    * Normalize loops lexicographically from the given list.
-    * @param a A list of loops where each loop is represented as a list of strings (usernames).
-    * @param result The original list of loops as strings. This will be modified to remove duplicates.
-    * @return A new list of strings with duplicates removed, preserving the original formatting.
-    * @custom.precondition `a` contains a valid ArrayList of ArrayList<String> and `result` is an ArrayList of string.
-    * @custom.postcondition Returns an ArrayList of strings where each valid string is a unique loop. The original parameter `result` is modified in the process.
-    */
-    private ArrayList<String> normalize(ArrayList<ArrayList<String>> a, ArrayList<String> result){
-        for (ArrayList<String> b: a){
-            ArrayList<String> sortedList = new ArrayList<>(b);
-            Collections.sort(sortedList);
-            String max_elim = sortedList.get(0);
-            b.remove(b.size()-1);
-            while (!b.get(0).equalsIgnoreCase(max_elim)){
-                Collections.rotate(b, -1);
-            }
+     * Reads the version that every change to the users or connections bumps.
+     * @return The current version.
+     */
+    private long currentVersion(){
+        synchronized (derivedLock){
+            return derivedVersion;
         }
+    }
 
-        Set<ArrayList<String>> set = new HashSet<>();
-
-        for (int i = 0; i < result.size(); i++){
-            if(!set.add(a.get(i))){
-                result.set(i, null);
-            }
+    /**
+     * Gets the index of a user, failing if the user does not exist.
+     * @param username The name of the user.
+     * @return The user's index.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     */
+    private int getUserIndex(String username){
+        User a = findUser(username);
+        if (a == null) {
+            throw new IllegalArgumentException("Username doesn't exist.");
         }
-        return result;
+        return a.getIndexPos();
     }
 
     /**
@@ -395,18 +2337,26 @@ public class FollowGraph implements Serializable{
      *
      * @param comp The Comparator used to sort the users. This allows for flexibility in sorting by different criteria (e.g., name, number of followers).
      * @custom.precondition `comp` is a valid Comparator object for User objects.
-     * @custom.postcondition All users in the graph are printed to the console, sorted according to the specified comparator.
+     * @custom.postcondition All users in the graph are printed to the graph's output, sorted according to the specified comparator.
      */
     public void printAllUsers(Comparator<User> comp){
-        System.out.println("Users: ");
-        System.out.printf("%-30s %-20s %-20s%n", "User Name", "Number of Followers", "Number of Following");
-        ArrayList<User> copy_ = new ArrayList<>(users);
-        Collections.sort(copy_, comp);
-        for (User a : copy_) {
-            String userName = a.getUserName();
-            int followersCount = this.getAllFollowers(userName).size();
-            int followingCount = this.getAllFollowing(userName).size();
-            System.out.printf("%-38s %-20d %-20d%n", userName, followersCount, followingCount);
+        long start = startTimer();
+        try {
+            output.println("Users: ");
+            output.printf("%-30s %-20s %-20s%n", "User Name", "Number of Followers", "Number of Following");
+            ArrayList<User> copy_ = getUsers();
+            Collections.sort(copy_, comp);
+            for (User a : copy_) {
+                String userName = a.getUserName();
+                int followersCount = getFollowerCount(a);
+                int followingCount = getFollowingCount(a);
+                output.printf("%-38s %-20d %-20d%n", userName, followersCount, followingCount);
+            }
+            recordResult(GraphOperation.PRINT_ALL_USERS, copy_.size());
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.PRINT_ALL_USERS, e);
+        } finally {
+            stopTimer(GraphOperation.PRINT_ALL_USERS, start);
         }
     }
 
@@ -416,18 +2366,26 @@ public class FollowGraph implements Serializable{
      * @param comp The primary Comparator for sorting users.
      * @param comp2 The secondary Comparator used to break ties when the primary Comparator considers two users equal.
      * @custom.precondition `comp` and `comp2` are valid Comparator objects for User objects.
-     * @custom.postcondition  All users are printed to the console, sorted according to the combined criteria of both comparators.
+     * @custom.postcondition  All users are printed to the graph's output, sorted according to the combined criteria of both comparators.
      */
     public void printAllUsers(Comparator<User> comp, Comparator<User> comp2){
-        System.out.println("Users:");
-        System.out.printf("%-30s %-20s %-20s%n", "User Name", "Number of Followers", "Number of Following");
-        ArrayList<User> copy_ = new ArrayList<>(users);
-        Collections.sort(copy_,comp.thenComparing(comp2));
-        for (User a : copy_) {
-            String userName = a.getUserName();
-            int followersCount = this.getAllFollowers(userName).size();
-            int followingCount = this.getAllFollowing(userName).size();
-            System.out.printf("%-38s %-20d %-20d%n", userName, followersCount, followingCount);
+        long start = startTimer();
+        try {
+            output.println("Users:");
+            output.printf("%-30s %-20s %-20s%n", "User Name", "Number of Followers", "Number of Following");
+            ArrayList<User> copy_ = getUsers();
+            Collections.sort(copy_,comp.thenComparing(comp2));
+            for (User a : copy_) {
+                String userName = a.getUserName();
+                int followersCount = getFollowerCount(a);
+                int followingCount = getFollowingCount(a);
+                output.printf("%-38s %-20d %-20d%n", userName, followersCount, followingCount);
+            }
+            recordResult(GraphOperation.PRINT_ALL_USERS, copy_.size());
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.PRINT_ALL_USERS, e);
+        } finally {
+            stopTimer(GraphOperation.PRINT_ALL_USERS, start);
         }
     }
 
@@ -435,20 +2393,20 @@ public class FollowGraph implements Serializable{
      * Prints all users that the given user is following.
      * @param username The name of the user.
      * @custom.precondition The `username` exists in the `FollowGraph`.
-     * @custom.postcondition Prints a list of users that the given user is following to the console. Throws `IllegalArgumentException` if the user does not exist.
+     * @custom.postcondition Prints a list of users that the given user is following to the graph's output. Throws `IllegalArgumentException` if the user does not exist.
      */
     public void printAllFollowing(String username){
-        System.out.println(getAllFollowing(username));
+        output.println(getAllFollowing(username));
     }
 
     /**
      * Prints all users that are following the given user (i.e., the followers of the given user).
      * @param username The name of the user whose followers are to be printed.
      * @custom.precondition The `username` exists in the `FollowGraph`.
-     * @custom.postcondition Prints a list of users following the specified user to the console.  If the specified user does not exist, an IllegalArgumentException is thrown.
+     * @custom.postcondition Prints a list of users following the specified user to the graph's output.  If the specified user does not exist, an IllegalArgumentException is thrown.
      */
     public void printAllFollowers(String username){
-        System.out.println(getAllFollowers(username));
+        output.println(getAllFollowers(username));
     }
 
     /**
@@ -460,21 +2418,30 @@ public class FollowGraph implements Serializable{
      * @custom.postcondition  Returns a list of usernames that the given user is following. Throws an IllegalArgumentException if the username does not exist.
      */
     public ArrayList<String> getAllFollowing(String username){
-        ArrayList<String> all_followers = new ArrayList<>();
-        int a;
-        if (!checkIfUserExists(username)) {
-            throw new IllegalArgumentException("Username doesn't exist.");
-        } else {
-            a = findUser(username).getIndexPos();
-        }
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int a;
+                User user = findUser(username);
+                if (user == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                } else {
+                    a = user.getIndexPos();
+                }
         
-        for (int i = 0; i < connections.length; i++){
-            if ( connections[a][i] == true){
-                all_followers.add(users.get(i).getUserName());
+                ArrayList<String> all_followers = toUserNames(adjacency.outNeighbors(a));
+
+                recordResult(GraphOperation.GET_ALL_FOLLOWING, all_followers.size());
+                return all_followers;
+            } finally {
+                structureLock.unlockRead(stamp);
             }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_ALL_FOLLOWING, e);
+        } finally {
+            stopTimer(GraphOperation.GET_ALL_FOLLOWING, start);
         }
-
-        return all_followers;
     }
     
     /**
@@ -486,72 +2453,523 @@ public class FollowGraph implements Serializable{
      * @custom.postcondition Returns a list of all followers of the specified user. Throws `IllegalArgumentException` if the user doesn't exist.
      */
     public ArrayList<String> getAllFollowers(String username){
-        ArrayList<String> all_following = new ArrayList<>();
-        int a;
-        if (!checkIfUserExists(username)) {
-            throw new IllegalArgumentException("Username doesn't exist.");
-        } else {
-            a = findUser(username).getIndexPos();
-        }
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int a;
+                User user = findUser(username);
+                if (user == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                } else {
+                    a = user.getIndexPos();
+                }
         
-        for (int i = 0; i < connections.length; i++){
-            if ( connections[i][a] == true){
-                all_following.add(users.get(i).getUserName());
+                ArrayList<String> all_following = toUserNames(adjacency.inNeighbors(a));
+
+                recordResult(GraphOperation.GET_ALL_FOLLOWERS, all_following.size());
+                return all_following;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_ALL_FOLLOWERS, e);
+        } finally {
+            stopTimer(GraphOperation.GET_ALL_FOLLOWERS, start);
+        }
+    }
+
+    /**
+     * Gets the ids of all users followed by the user with the given id, skipping the username lookup and building no names.
+     * @param id The id of the user.
+     * @return The ids of the followed users, in no particular order. The array is the caller's own.
+     * @throws IllegalArgumentException if the id does not belong to a user in the graph.
+     * @custom.precondition The id was returned by resolve.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public int[] followingOf(int id){
+        long start = startTimer();
+        try {
+            int[] following = optimisticRead(() -> {
+                return toIds(adjacency.outNeighbors(slotOf(id)));
+            });
+            recordResult(GraphOperation.FOLLOWING_OF, following.length);
+            return following;
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.FOLLOWING_OF, e);
+        } finally {
+            stopTimer(GraphOperation.FOLLOWING_OF, start);
+        }
+    }
+
+    /**
+     * Gets the ids of all followers of the user with the given id, skipping the username lookup and building no names.
+     * @param id The id of the user.
+     * @return The ids of the followers, in no particular order. The array is the caller's own.
+     * @throws IllegalArgumentException if the id does not belong to a user in the graph.
+     * @custom.precondition The id was returned by resolve.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public int[] followersOf(int id){
+        long start = startTimer();
+        try {
+            int[] followers = optimisticRead(() -> {
+                return toIds(adjacency.inNeighbors(slotOf(id)));
+            });
+            recordResult(GraphOperation.FOLLOWERS_OF, followers.length);
+            return followers;
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.FOLLOWERS_OF, e);
+        } finally {
+            stopTimer(GraphOperation.FOLLOWERS_OF, start);
+        }
+    }
+
+    /**
+     * Gets the number of users following the given user.
+     * @param username The name of the user.
+     * @return The number of followers of the specified user.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition Returns the follower count in constant time. Throws an IllegalArgumentException if the username does not exist.
+     */
+    public int getFollowerCount(String username){
+        long start = startTimer();
+        try {
+            return optimisticReadInt(() -> {
+                User a = findUser(username);
+                if (a == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                return adjacency.inDegree(a.getIndexPos());
+            });
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_FOLLOWER_COUNT, e);
+        } finally {
+            stopTimer(GraphOperation.GET_FOLLOWER_COUNT, start);
+        }
+    }
+
+    /**
+     * Gets the number of users the given user is following.
+     * @param username The name of the user.
+     * @return The number of users followed by the specified user.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition Returns the following count in constant time. Throws an IllegalArgumentException if the username does not exist.
+     */
+    public int getFollowingCount(String username){
+        long start = startTimer();
+        try {
+            return optimisticReadInt(() -> {
+                User a = findUser(username);
+                if (a == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                return adjacency.outDegree(a.getIndexPos());
+            });
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_FOLLOWING_COUNT, e);
+        } finally {
+            stopTimer(GraphOperation.GET_FOLLOWING_COUNT, start);
+        }
+    }
+
+    /**
+     * Gets the number of users following the given user without looking up its name.
+     * @param user A user belonging to this graph.
+     * @return The number of followers of the user.
+     * @custom.precondition 'user' is a user currently in this graph.
+     */
+    public int getFollowerCount(User user){
+        return optimisticReadInt(() -> adjacency.inDegree(user.getIndexPos()));
+    }
+
+    /**
+     * Gets the number of users the given user is following without looking up its name.
+     * @param user A user belonging to this graph.
+     * @return The number of users followed by the user.
+     * @custom.precondition 'user' is a user currently in this graph.
+     */
+    public int getFollowingCount(User user){
+        return optimisticReadInt(() -> adjacency.outDegree(user.getIndexPos()));
+    }
+
+    /**
+     * Gets a list of all users that the given user follows and that follow the given user back.
+     * @param username The name of the user.
+     * @return An ArrayList of the usernames of all mutual follows of the specified user.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition Returns the list of mutual follows. Throws an IllegalArgumentException if the username does not exist.
+     */
+    public ArrayList<String> getMutualFollows(String username){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(username);
+                if (a == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                ArrayList<String> names = toUserNames(adjacency.mutualNeighbors(a.getIndexPos()));
+                recordResult(GraphOperation.GET_MUTUAL_FOLLOWS, names.size());
+                return names;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_MUTUAL_FOLLOWS, e);
+        } finally {
+            stopTimer(GraphOperation.GET_MUTUAL_FOLLOWS, start);
+        }
+    }
+
+    /**
+     * Gets a list of all users that follow both of the given users.
+     * @param userA The name of the first user.
+     * @param userB The name of the second user.
+     * @return An ArrayList of the usernames of all common followers.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users.
+     * @custom.postcondition Returns the list of common followers. Throws an IllegalArgumentException if either username does not exist.
+     */
+    public ArrayList<String> getCommonFollowers(String userA, String userB){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userA);
+                User b = findUser(userB);
+                if (a == null || b == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                ArrayList<String> names = toUserNames(adjacency.commonIn(a.getIndexPos(), b.getIndexPos()));
+                recordResult(GraphOperation.GET_COMMON_FOLLOWERS, names.size());
+                return names;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_COMMON_FOLLOWERS, e);
+        } finally {
+            stopTimer(GraphOperation.GET_COMMON_FOLLOWERS, start);
+        }
+    }
+
+    /**
+     * Gets a list of all users that both of the given users follow.
+     * @param userA The name of the first user.
+     * @param userB The name of the second user.
+     * @return An ArrayList of the usernames of all users followed by both.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users.
+     * @custom.postcondition Returns the list of common followees. Throws an IllegalArgumentException if either username does not exist.
+     */
+    public ArrayList<String> getCommonFollowing(String userA, String userB){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userA);
+                User b = findUser(userB);
+                if (a == null || b == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                ArrayList<String> names = toUserNames(adjacency.commonOut(a.getIndexPos(), b.getIndexPos()));
+                recordResult(GraphOperation.GET_COMMON_FOLLOWING, names.size());
+                return names;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_COMMON_FOLLOWING, e);
+        } finally {
+            stopTimer(GraphOperation.GET_COMMON_FOLLOWING, start);
+        }
+    }
+
+    /**
+     * Scores how alike the audiences of two users are, from how many followers they share.
+     * The shared followers are counted without being listed, by a merge of the sorted follower rows or by ANDing the
+     * follower bitsets, depending on the adjacency store.
+     * @param userA The name of the first user.
+     * @param userB The name of the second user.
+     * @param measure How to turn the shared and total follower counts into a score.
+     * @return The score, from 0 to 1. 0 if neither user has followers.
+     * @throws IllegalArgumentException if either username does not exist in the graph.
+     * @custom.precondition The graph contains both users, and 'measure' is non-null.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public double getFollowerSimilarity(String userA, String userB, SimilarityMeasure measure){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(userA);
+                User b = findUser(userB);
+                if (a == null || b == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                int slotA = a.getIndexPos();
+                int slotB = b.getIndexPos();
+                return measure.score(adjacency.countCommonIn(slotA, slotB), adjacency.inDegree(slotA), adjacency.inDegree(slotB));
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.FOLLOWER_SIMILARITY, e);
+        } finally {
+            stopTimer(GraphOperation.FOLLOWER_SIMILARITY, start);
+        }
+    }
+
+    /**
+     * Scores how alike the audience of one user is to the audience of each of many candidates, in one pass.
+     * The followers of the user are read once for the whole batch, and each candidate's followers are then checked
+     * against them, which is cheaper than scoring the pairs one at a time when there are many candidates.
+     * @param id The id of the user to compare against.
+     * @param candidateIds The ids of the users to score.
+     * @param measure How to turn the shared and total follower counts into a score.
+     * @return The score of each candidate, from 0 to 1, in the order of 'candidateIds'. Ids that do not belong to a user score 0.
+     * @throws IllegalArgumentException if 'id' does not belong to a user in the graph.
+     * @custom.precondition The id was returned by resolve, and 'candidateIds' and 'measure' are non-null.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public double[] followerSimilarity(int id, int[] candidateIds, SimilarityMeasure measure){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int slot = slotOf(id);
+                int[] slots = new int[candidateIds.length];
+                int found = 0;
+                for (int candidate : candidateIds){
+                    int s = slotOrNone(candidate);
+                    if (s >= 0){
+                        slots[found++] = s;
+                    }
+                }
+                if (found < slots.length){
+                    slots = Arrays.copyOf(slots, found);
+                }
+                int[] common = adjacency.countCommonIn(slot, slots);
+                int followers = adjacency.inDegree(slot);
+                double[] scores = new double[candidateIds.length];
+                int next = 0;
+                for (int i = 0; i < candidateIds.length; i++){
+                    if (slotOrNone(candidateIds[i]) >= 0){
+                        scores[i] = measure.score(common[next], followers, adjacency.inDegree(slots[next]));
+                        next++;
+                    }
+                }
+                recordResult(GraphOperation.FOLLOWER_SIMILARITY, scores.length);
+                return scores;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.FOLLOWER_SIMILARITY, e);
+        } finally {
+            stopTimer(GraphOperation.FOLLOWER_SIMILARITY, start);
+        }
+    }
+
+    /**
+     * Suggests users to follow: the users followed by the ones the given user follows, ranked by how many of the user's
+     * followees follow them. Users the given user already follows are left out, and ties go to the user added first.
+     * Results are cached per user until the user or one of their followees changes whom they follow.
+     * @param username The name of the user to recommend for.
+     * @param k The greatest number of recommendations.
+     * @return The usernames of up to k recommended users, best first. Empty if k is not positive.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public ArrayList<String> recommend(String username, int k){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(username);
+                if (a == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                ArrayList<String> names = new ArrayList<>();
+                if (k > 0){
+                    for (int id : recommender.recommend(adjacency, a.getIndexPos(), k, idOfSlot)){
+                        names.add(users.get(slotOfId[id]).getUserName());
+                    }
+                }
+                recordResult(GraphOperation.RECOMMEND, names.size());
+                return names;
+            } finally {
+                structureLock.unlockRead(stamp);
             }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.RECOMMEND, e);
+        } finally {
+            stopTimer(GraphOperation.RECOMMEND, start);
         }
+    }
+
+    /**
+     * Suggests users to follow for the user with the given id, in the same way as recommend(String, int) but without
+     * looking up or building any names.
+     * @param id The id of the user to recommend for.
+     * @param k The greatest number of recommendations.
+     * @return The ids of up to k recommended users, best first. Empty if k is not positive.
+     * @throws IllegalArgumentException if the id does not belong to a user in the graph.
+     * @custom.precondition The id was returned by resolve.
+     * @custom.postcondition The graph is unchanged.
+     */
+    public int[] recommend(int id, int k){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                int slot = slotOf(id);
+                int[] ids = k > 0 ? recommender.recommend(adjacency, slot, k, idOfSlot) : new int[0];
+                recordResult(GraphOperation.RECOMMEND, ids.length);
+                return ids;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.RECOMMEND, e);
+        } finally {
+            stopTimer(GraphOperation.RECOMMEND, start);
+        }
+    }
+
+    /**
+     * Gets the influence score of the given user: their PageRank over the follow edges, so following from influential
+     * users counts for more than following from many users nobody follows.
+     * Scores are computed when first asked for and kept until the graph changes. Computing them again after a change
+     * starts from the previous scores, so it takes few iterations when little has changed.
+     * @param username The name of the user.
+     * @return The influence score. The scores of all users add up to 1.
+     * @throws IllegalArgumentException if the specified username does not exist in the graph.
+     * @custom.precondition The graph contains the user specified by `username`.
+     * @custom.postcondition The influence scores are computed if the graph changed since they were last computed. The graph is unchanged.
+     */
+    public double getInfluence(String username){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                User a = findUser(username);
+                if (a == null) {
+                    throw new IllegalArgumentException("Username doesn't exist.");
+                }
+                return influenceScores()[a.getId()];
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_INFLUENCE, e);
+        } finally {
+            stopTimer(GraphOperation.GET_INFLUENCE, start);
+        }
+    }
 
-        return all_following;
+    /**
+     * Gets the influence score of every user, in the same way as getInfluence.
+     * @return The influence scores indexed by user id, with 0 for ids that do not belong to a user. The array is the caller's own.
+     * @custom.postcondition The influence scores are computed if the graph changed since they were last computed. The graph is unchanged.
+     */
+    public double[] getInfluenceScores(){
+        long start = startTimer();
+        try {
+            long stamp = structureLock.readLock();
+            try {
+                double[] scores = influenceScores().clone();
+                recordResult(GraphOperation.GET_INFLUENCE_SCORES, scores.length);
+                return scores;
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.GET_INFLUENCE_SCORES, e);
+        } finally {
+            stopTimer(GraphOperation.GET_INFLUENCE_SCORES, start);
+        }
+    }
+
+    /**
+     * Gets the influence scores by id, computing them again if the graph has changed. The caller holds the read or write lock.
+     * @return The shared score array.
+     */
+    private double[] influenceScores(){
+        return pageRank.scores(adjacency, idOfSlot, nextId, searchPool, currentVersion());
+    }
+
+    /**
+     * Converts an array of vertex indices into the matching usernames.
+     * @param indices The vertex indices.
+     * @return An ArrayList of usernames in the order the users were added.
+     */
+    private ArrayList<String> toUserNames(int[] indices){
+        ArrayList<String> names = new ArrayList<>(indices.length);
+        for (int i : inIdOrder(indices)){
+            names.add(users.get(i).getUserName());
+        }
+        return names;
     }
 
     /**
      * Loads all users from a specified file into the FollowGraph.
+     * The file is read and tokenized before any lock is taken, like loadAllConnections, and one summary line is printed
+     * at the end instead of a line per user.
      * @param filename The name of the file containing user data. Each line in the file should represent a single username.
      * @custom.precondition The file denoted by 'filename' exists and is readable. Each line in the file should contain a single valid username.
-     * @custom.postcondition  Users listed in the input file are added to the FollowGraph if they don't already exist.  Any I/O errors are reported to the console.
+     * @custom.postcondition  Users listed in the input file are added to the FollowGraph if they don't already exist. A summary of the import, or an error related to file access, is printed to the graph's output.
      */
     public void loadAllUsers(String filename) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String name = line.strip();
-                if (this.checkIfUserExists(name)){
-                    continue;
-                }
-                this.addUser(name);
-                System.out.println(name + " has been added");
+        long start = startTimer();
+        try {
+            checkWritable();
+            try {
+                output.println(new BulkImporter(this).importUsers(filename));
+            } catch (NoSuchFileException e) {
+                output.println("File not found.");
+                recordError(GraphOperation.LOAD_ALL_USERS);
+            } catch (IOException e) {
+                output.println("Error reading the file.");
+                recordError(GraphOperation.LOAD_ALL_USERS);
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.out.println("Error reading the file: " + e.getMessage());
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.LOAD_ALL_USERS, e);
+        } finally {
+            stopTimer(GraphOperation.LOAD_ALL_USERS, start);
         }
     }
 
     /**
      * Loads all connections from the specified file into the FollowGraph.
+     * The file is read and its usernames are resolved before any lock is taken, and the connections are then added in
+     * large batches, so the graph is locked only while they are merged in. One summary line is printed at the end.
      * @param filename The name of the file from which to load the connections.
      * @custom.precondition  The file specified by `filename` must exist, be readable, and follow the specified CSV format.  The users involved in the connections should already exist in the FollowGraph.
-     * @custom.postcondition Connections are added to the FollowGraph according to the file contents. Any errors related to file access, format, or non-existent users are printed to the console.
+     * @custom.postcondition Connections are added to the FollowGraph according to the file contents. A summary of the import, or an error related to file access, is printed to the graph's output.
      */
     public void loadAllConnections(String filename) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] connection = Arrays.stream(line.split(",")).map(String::strip).toArray(String[]::new);
-                
-                if (connection.length != 2) continue;
-                
-                if (!checkIfUserExists(connection[0])) continue;
-    
-                if (!checkIfUserExists(connection[1])) continue;
-    
-                this.addConnection(connection[0], connection[1]);
-                System.out.println(connection[0] + ", " + connection[1] + " added");
+        long start = startTimer();
+        try {
+            checkWritable();
+            try {
+                output.println(new BulkImporter(this).importConnections(filename));
+            } catch (NoSuchFileException e) {
+                output.println("File not found.");
+                recordError(GraphOperation.LOAD_ALL_CONNECTIONS);
+            } catch (IOException e) {
+                output.println("Error reading the file.");
+                recordError(GraphOperation.LOAD_ALL_CONNECTIONS);
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found.");
-        } catch (IOException e) {
-            System.out.println("Error reading the file.");
+        } catch (RuntimeException e){
+            throw failed(GraphOperation.LOAD_ALL_CONNECTIONS, e);
+        } finally {
+            stopTimer(GraphOperation.LOAD_ALL_CONNECTIONS, start);
         }
     }
 }
@@ -1,37 +1,95 @@
 /**
  * Menu driven java class to access and execute functions on the FollowGraph.
+ * Run with "-batch [file]" to execute commands from a file, or from standard input if no file is given, instead of
+ * showing the menu. Each line holds one command such as "U alice", "C alice,bob" or "SP alice,carol", and results are
+ * written to standard output.
  */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InvalidClassException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.Scanner;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import javax.management.JMException;
 
 public class FollowGraphDriver {
+    private static final long CHECKPOINT_BYTES = 4L << 20;
+
     public static void main(String[] args) throws IOException {   
         FollowGraph followGraph = new FollowGraph();     
         Scanner scanner = new Scanner(System.in);
-        FileInputStream file = null;
+        if (new File("follow_graph.bin").exists()) {
+            followGraph = GraphSnapshot.read("follow_graph.bin");
+        } else {
+            // Graphs saved before the binary snapshot format are still read once, and are saved as a snapshot on quit.
+            FileInputStream file = null;
+            try {
+                file = new FileInputStream("follow_graph.obj");
+                ObjectInputStream inStream = new ObjectInputStream(file);
+                followGraph = (FollowGraph) inStream.readObject();
+                inStream.close();
+                if (file != null) {
+                    file.close();
+                }
+            } catch (FileNotFoundException e) {
+                System.out.println("follow_graph.bin is not found. New FollowGraph object will be created.");
+            } catch (InvalidClassException e) {
+                System.out.println("follow_graph.obj was saved by an incompatible version and cannot be read: " + e.getMessage());
+                System.out.println("New FollowGraph object will be created.");
+            } catch (IOException e) {
+                System.out.println("follow_graph.obj cannot be read: " + e.getMessage());
+                System.out.println("New FollowGraph object will be created.");
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+        MutationLog log = new MutationLog("follow_graph.log");
+        int recovered = log.replay(followGraph);
+        if (recovered > 0) {
+            System.out.println("Recovered " + recovered + " changes from follow_graph.log.");
+        }
+        followGraph.setMutationLog(log);
+        GraphMetrics metrics = new GraphMetrics();
         try {
-            file = new FileInputStream("follow_graph.obj");
-            ObjectInputStream inStream = new ObjectInputStream(file);
-            followGraph = (FollowGraph) inStream.readObject();
-            User.setUserCount(inStream.readInt());
-            inStream.close();
-            if (file != null) {
-                file.close();
-            }
-        } catch (FileNotFoundException e) {
-            System.out.println("follow_graph.obj is not found. New FollowGraph object will be created.");
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            metrics.register("follow_graph");
+        } catch (JMException e) {
+            System.out.println("Metrics could not be published over JMX: " + e.getMessage());
+        }
+        followGraph.setMetrics(metrics);
+        if (args.length > 0 && args[0].equalsIgnoreCase("-batch")) {
+            BufferedReader in = args.length > 1
+                    ? Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)
+                    : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            // Messages and listings from the graph go into the same buffer, so they stay in order with the results.
+            followGraph.setOutput(new PrintWriter(out));
+            try {
+                new BatchRunner(followGraph, log, metrics, out).run(in);
+            } finally {
+                in.close();
+                out.flush();
+                followGraph.setOutput(null);
+            }
+            checkpoint(followGraph, log);
+            log.close();
+            return;
         }
         boolean isContinue = true;
         System.out.println("************ Menu ************");
-        System.out.println("(U) Add User\n(C) Add Connection\n(AU) Load all Users\n(AC) Load all Connections\n(P) Print all Users\n(L) Print all Loops\n(RU) Remove User\n(RC) Remove Connection\n(SP) Find Shortest Path\n(AP) Find All Paths\n(Q) Quit");        
+        System.out.println("(U) Add User\n(C) Add Connection\n(AU) Load all Users\n(AC) Load all Connections\n(P) Print all Users\n(L) Print all Loops\n(RU) Remove User\n(RC) Remove Connection\n(SP) Find Shortest Path\n(AP) Find All Paths\n(M) Print Metrics\n(Q) Quit");        
 
         while (isContinue){    
             System.out.print("Enter a selection: ");
@@ -39,26 +97,35 @@ public class FollowGraphDriver {
 
             switch (a) {
                 case "Q":
-                    FileOutputStream file_ = new FileOutputStream("follow_graph.obj");
-                    ObjectOutputStream outStream = new ObjectOutputStream(file_);
-                    outStream.writeObject(followGraph);
-                    outStream.writeInt(followGraph.getUserCount());
-                    outStream.close(); 
+                    checkpoint(followGraph, log);
+                    log.close();
                     System.out.println("Program terminating...");
                     isContinue = false;
                     break;
                 case "AU":
                     System.out.print("Enter the file name: ");
                     String au_name = scanner.nextLine();
-                    followGraph.loadAllUsers(au_name);
+                    try {
+                        System.out.println(new BulkImporter(followGraph).importUsers(au_name));
+                    } catch (NoSuchFileException e) {
+                        System.out.println("File not found: " + au_name);
+                    } catch (IOException e) {
+                        System.out.println("Error reading the file: " + e.getMessage());
+                    }
                     break;
                 case "AC":
                     System.out.print("Enter the file name: ");
                     String ac_name = scanner.nextLine();
-                    followGraph.loadAllConnections(ac_name);
+                    try {
+                        System.out.println(new BulkImporter(followGraph).importConnections(ac_name));
+                    } catch (NoSuchFileException e) {
+                        System.out.println("File not found: " + ac_name);
+                    } catch (IOException e) {
+                        System.out.println("Error reading the file: " + e.getMessage());
+                    }
                     break;
                 case "P":
-                    System.out.println("(SA) Sort Users by Name\n(SB) Sort Users by Number of Followers\n(SC) Sort Users by Number of Following\n(Q) Quit");
+                    System.out.println("(SA) Sort Users by Name\n(SB) Sort Users by Number of Followers\n(SC) Sort Users by Number of Following\n(SD) Sort Users by Influence\n(Q) Quit");
                     boolean isContinue2 = true;
                     while (isContinue2){
                         System.out.print("Enter a selection: ");
@@ -73,6 +140,9 @@ public class FollowGraphDriver {
                             case "SC":
                                 followGraph.printAllUsers(new FollowingComparator(followGraph), new NameComparator());
                                 break;
+                            case "SD":
+                                followGraph.printAllUsers(new InfluenceComparator(followGraph), new NameComparator());
+                                break;
                             case "Q":
                                 isContinue2 = false;
                                 break;
@@ -82,7 +152,7 @@ public class FollowGraphDriver {
                         }
                     }
                     System.out.println("************ Menu ************");
-                    System.out.println("(U) Add User\n(C) Add Connection\n(AU) Load all Users\n(AC) Load all Connections\n(P) Print all Users\n(L) Print all Loops\n(RU) Remove User\n(RC) Remove Connection\n(SP) Find Shortest Path\n(AP) Find All Paths\n(Q) Quit");        
+                    System.out.println("(U) Add User\n(C) Add Connection\n(AU) Load all Users\n(AC) Load all Connections\n(P) Print all Users\n(L) Print all Loops\n(RU) Remove User\n(RC) Remove Connection\n(SP) Find Shortest Path\n(AP) Find All Paths\n(M) Print Metrics\n(Q) Quit");        
                     break;
                 case "L":
                     ArrayList<String> loops = followGraph.findAllLoops();
@@ -132,7 +202,7 @@ public class FollowGraphDriver {
                         __isContinue = false;
                     }
                     System.out.println("\n************ Menu ************");
-                    System.out.println("(U) Add User\n(C) Add Connection\n(AU) Load all Users\n(AC) Load all Connections\n(P) Print all Users\n(L) Print all Loops \n(RU) Remove User\n(RC) Remove Connection\n(SP) Find Shortest Path\n(AP) Find All Paths\n(Q) Quit");        
+                    System.out.println("(U) Add User\n(C) Add Connection\n(AU) Load all Users\n(AC) Load all Connections\n(P) Print all Users\n(L) Print all Loops \n(RU) Remove User\n(RC) Remove Connection\n(SP) Find Shortest Path\n(AP) Find All Paths\n(M) Print Metrics\n(Q) Quit");        
                     break;
                 case "C":
                     System.out.print("\nPlease enter the source of the connection to add: ");
@@ -200,12 +270,291 @@ public class FollowGraphDriver {
                         System.out.println(s);
                     }
                     break;
+                case "M":
+                    if (metrics.getTotalCalls() == 0){
+                        System.out.println("No operations have been recorded yet.");
+                        break;
+                    }
+                    System.out.print(metrics.dump());
+                    break;
                 default:
                     System.out.println("Wrong option. Try again.");
                     break;
             }
-        
+            if (isContinue && log.size() > CHECKPOINT_BYTES) {
+                checkpoint(followGraph, log);
+            }
         }
         scanner.close();
     }
+
+    /**
+     * Saves a snapshot of the graph and drops the write-ahead log records the snapshot now contains.
+     * @param followGraph The graph to save.
+     * @param log The log attached to the graph.
+     * @throws IOException If the snapshot cannot be written or the log cannot be truncated.
+     * @custom.postcondition follow_graph.bin holds the current graph and follow_graph.log holds only changes made after it was started.
+     */
+    private static void checkpoint(FollowGraph followGraph, MutationLog log) throws IOException {
+        // The snapshot is durable before the log is cut. If the program dies in between, the old records are replayed on the
+        // new snapshot: users it already holds are skipped, re-added users get their logged ids back, and the connection
+        // records are replayed in order, so the graph ends up as it was. Records appended after `covered` are kept.
+        long covered = log.size();
+        GraphSnapshot.write(followGraph, "follow_graph.bin");
+        log.truncate(covered);
+    }
+
+    /**
+     * Runs commands read line by line, writing every result through one buffered writer.
+     * A line holds a command and its arguments, separated by the first run of whitespace, and two usernames are separated
+     * by a comma. Blank lines and lines starting with "#" are skipped, and "Q" stops reading. Runs of consecutive "C"
+     * commands are collected and added together, through the bulk path once a run is large enough to beat adding the
+     * connections one at a time. Problems are reported as "Line n: message" in the output, in order with the results.
+     */
+    private static class BatchRunner {
+        // A bulk add rebuilds arrays over every user, so short runs are cheaper one connection at a time.
+        private static final int MIN_BULK = 64;
+        private static final int MAX_RUN = 1 << 20;
+
+        private final FollowGraph followGraph;
+        private final MutationLog log;
+        private final GraphMetrics metrics;
+        private final BufferedWriter out;
+        private int[] from = new int[64];
+        private int[] to = new int[64];
+        private int pending = 0;
+        private long lineNumber = 0;
+
+        BatchRunner(FollowGraph followGraph, MutationLog log, GraphMetrics metrics, BufferedWriter out) {
+            this.followGraph = followGraph;
+            this.log = log;
+            this.metrics = metrics;
+            this.out = out;
+        }
+
+        /**
+         * Runs every command of a stream.
+         * @param in The commands, one per line.
+         * @throws IOException If the commands cannot be read or the results cannot be written.
+         */
+        void run(BufferedReader in) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int start = 0;
+                while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+                    start++;
+                }
+                if (start == line.length() || line.charAt(start) == '#') {
+                    continue;
+                }
+                int end = start;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                String command = line.substring(start, end).toUpperCase(Locale.ROOT);
+                String argument = line.substring(end).trim();
+                if (command.equals("C")) {
+                    queueConnection(argument);
+                    continue;
+                }
+                flushConnections();
+                if (command.equals("Q")) {
+                    break;
+                }
+                execute(command, argument);
+                if (log.size() > CHECKPOINT_BYTES) {
+                    checkpoint(followGraph, log);
+                }
+            }
+            flushConnections();
+        }
+
+        /**
+         * Runs one command other than "C" and "Q".
+         */
+        private void execute(String command, String argument) throws IOException {
+            switch (command) {
+                case "U":
+                    if (argument.isEmpty()) {
+                        error("You cannot leave the username empty.");
+                    } else if (followGraph.resolve(argument) >= 0) {
+                        error("Username already exists: " + argument);
+                    } else {
+                        followGraph.addUser(argument);
+                    }
+                    break;
+                case "RU":
+                    if (followGraph.resolve(argument) < 0) {
+                        error("Username doesn't exist: " + argument);
+                    } else {
+                        followGraph.removeUser(argument);
+                    }
+                    break;
+                case "RC": {
+                    int[] ids = resolvePair(argument);
+                    if (ids != null) {
+                        followGraph.removeConnection(ids[0], ids[1]);
+                    }
+                    break;
+                }
+                case "SP": {
+                    int[] ids = resolvePair(argument);
+                    if (ids == null) {
+                        break;
+                    }
+                    PathResult path = followGraph.shortestPath(ids[0], ids[1]);
+                    if (path == null) {
+                        out.write("Path doesn't exist.");
+                    } else {
+                        int[] users = path.getPath();
+                        for (int i = 0; i < users.length; i++) {
+                            if (i > 0) {
+                                out.write("->");
+                            }
+                            out.write(followGraph.nameOf(users[i]));
+                        }
+                        out.write("###");
+                        out.write(Integer.toString(path.getLength()));
+                    }
+                    out.newLine();
+                    break;
+                }
+                case "AP": {
+                    int[] ids = resolvePair(argument);
+                    if (ids != null) {
+                        String[] names = argument.split(",", 2);
+                        writeAll(followGraph.allPaths(names[0].trim(), names[1].trim()));
+                    }
+                    break;
+                }
+                case "L":
+                    writeAll(followGraph.findAllLoops());
+                    break;
+                case "P":
+                    printUsers(argument.isEmpty() ? "SA" : argument.toUpperCase(Locale.ROOT));
+                    break;
+                case "AU":
+                case "AC":
+                    try {
+                        BulkImporter importer = new BulkImporter(followGraph);
+                        out.write((command.equals("AU") ? importer.importUsers(argument) : importer.importConnections(argument)).toString());
+                        out.newLine();
+                    } catch (NoSuchFileException e) {
+                        error("File not found: " + argument);
+                    }
+                    break;
+                case "M":
+                    out.write(metrics.dump());
+                    break;
+                default:
+                    error("Wrong option: " + command);
+                    break;
+            }
+        }
+
+        /**
+         * Resolves the two users of a "C" command and adds the connection to the pending run.
+         */
+        private void queueConnection(String argument) throws IOException {
+            int[] ids = resolvePair(argument);
+            if (ids == null) {
+                return;
+            }
+            if (pending == from.length) {
+                from = Arrays.copyOf(from, pending * 2);
+                to = Arrays.copyOf(to, pending * 2);
+            }
+            from[pending] = ids[0];
+            to[pending] = ids[1];
+            pending++;
+            if (pending == MAX_RUN) {
+                flushConnections();
+            }
+        }
+
+        /**
+         * Adds the pending run of connections, checkpointing afterwards if the log has grown large.
+         */
+        private void flushConnections() throws IOException {
+            if (pending == 0) {
+                return;
+            }
+            if (pending >= Math.max(MIN_BULK, followGraph.getUserCount() / 256)) {
+                followGraph.addConnections(from, to, pending);
+            } else {
+                for (int i = 0; i < pending; i++) {
+                    followGraph.addConnection(from[i], to[i]);
+                }
+            }
+            pending = 0;
+            if (log.size() > CHECKPOINT_BYTES) {
+                checkpoint(followGraph, log);
+            }
+        }
+
+        /**
+         * Resolves a "follower,followed" argument to user ids, reporting an error if it is malformed or names an unknown user.
+         * @return The two ids, or null after reporting an error.
+         */
+        private int[] resolvePair(String argument) throws IOException {
+            int comma = argument.indexOf(',');
+            if (comma < 0) {
+                error("Expected two usernames separated by a comma.");
+                return null;
+            }
+            String first = argument.substring(0, comma).trim();
+            String second = argument.substring(comma + 1).trim();
+            int a = followGraph.resolve(first);
+            int b = followGraph.resolve(second);
+            if (a < 0 || b < 0) {
+                error("Username doesn't exist: " + (a < 0 ? first : second));
+                return null;
+            }
+            return new int[]{a, b};
+        }
+
+        /**
+         * Prints every user in the order of a "P" sort option, through the writer the graph was given.
+         */
+        private void printUsers(String option) throws IOException {
+            switch (option) {
+                case "SA":
+                    followGraph.printAllUsers(new NameComparator());
+                    break;
+                case "SB":
+                    followGraph.printAllUsers(new FollowersComparator(followGraph), new NameComparator());
+                    break;
+                case "SC":
+                    followGraph.printAllUsers(new FollowingComparator(followGraph), new NameComparator());
+                    break;
+                case "SD":
+                    followGraph.printAllUsers(new InfluenceComparator(followGraph), new NameComparator());
+                    break;
+                default:
+                    error("Wrong option: " + option);
+                    break;
+            }
+        }
+
+        /**
+         * Writes the number of results on one line, then each result on its own line.
+         */
+        private void writeAll(ArrayList<String> results) throws IOException {
+            out.write(Integer.toString(results.size()));
+            out.newLine();
+            for (String result : results) {
+                out.write(result);
+                out.newLine();
+            }
+        }
+
+        /**
+         * Reports a problem with the current line.
+         */
+        private void error(String message) throws IOException {
+            out.write("Line " + lineNumber + ": " + message);
+            out.newLine();
+        }
+    }
 }
@@ -12,8 +12,8 @@ public class FollowersComparator implements Comparator<User>{
     }
     @Override
     public int compare(User o1, User o2) {
-        int o1_followers = followGraph.getAllFollowers(o1.getUserName()).size();
-        int o2_followers = followGraph.getAllFollowers(o2.getUserName()).size();
+        int o1_followers = followGraph.getFollowerCount(o1);
+        int o2_followers = followGraph.getFollowerCount(o2);
         
         if (o1_followers == o2_followers) return 0;
         else if (o1_followers > o2_followers) return -1;
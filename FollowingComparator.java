@@ -12,8 +12,8 @@ public class FollowingComparator implements Comparator<User>{
     }
     @Override
     public int compare(User o1, User o2) {
-        int o1_following = followGraph.getAllFollowing(o1.getUserName()).size();
-        int o2_following = followGraph.getAllFollowing(o2.getUserName()).size();
+        int o1_following = followGraph.getFollowingCount(o1);
+        int o2_following = followGraph.getFollowingCount(o2);
         
         if (o1_following == o2_following) return 0;
         else if (o1_following > o2_following) return -1;
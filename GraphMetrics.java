@@ -0,0 +1,120 @@
+/**
+ * Per-operation statistics for a FollowGraph: call counts, latency histograms, error counts, result sizes and, for
+ * shortest path searches, the number of edges scanned. Attach it with FollowGraph.setMetrics and publish it over JMX
+ * with register. Recording is lock-free and allocation-free, so it can stay on under load.
+ */
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class GraphMetrics implements GraphMetricsMBean{
+    /**
+     * The JMX domain the statistics are registered under.
+     */
+    public static final String DOMAIN = "FollowGraph";
+
+    private final OperationStats[] stats;
+    private final ArrayList<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * Constructs empty statistics for every operation.
+     * @custom.postcondition Every operation has statistics with no recorded calls.
+     */
+    public GraphMetrics(){
+        GraphOperation[] operations = GraphOperation.values();
+        stats = new OperationStats[operations.length];
+        for (GraphOperation operation : operations){
+            stats[operation.ordinal()] = new OperationStats(operation);
+        }
+    }
+
+    /**
+     * Gets the statistics of one operation.
+     * @param operation The operation.
+     * @return Its statistics.
+     * @custom.precondition 'operation' is non-null.
+     */
+    public OperationStats get(GraphOperation operation){
+        return stats[operation.ordinal()];
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server, as DOMAIN:type=Metrics,graph=name and one
+     * DOMAIN:type=Operation,graph=name,name=method MBean per operation.
+     * @param graphName The name that tells this graph apart from others in the same JVM.
+     * @throws JMException If the names are invalid or already taken.
+     * @custom.precondition 'graphName' is non-null and not registered yet.
+     * @custom.postcondition The statistics can be read over JMX.
+     */
+    public synchronized void register(String graphName) throws JMException{
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String graph = ObjectName.quote(graphName);
+        ObjectName name = new ObjectName(DOMAIN + ":type=Metrics,graph=" + graph);
+        server.registerMBean(this, name);
+        registered.add(name);
+        for (OperationStats operationStats : stats){
+            name = new ObjectName(DOMAIN + ":type=Operation,graph=" + graph + ",name=" + operationStats.getOperation().getMethodName());
+            server.registerMBean(operationStats, name);
+            registered.add(name);
+        }
+    }
+
+    /**
+     * Removes these statistics from the platform MBean server.
+     * @throws JMException If an MBean cannot be unregistered.
+     * @custom.postcondition None of the MBeans registered by register remain.
+     */
+    public synchronized void unregister() throws JMException{
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered){
+            if (server.isRegistered(name)){
+                server.unregisterMBean(name);
+            }
+        }
+        registered.clear();
+    }
+
+    @Override
+    public long getTotalCalls(){
+        long total = 0;
+        for (OperationStats operationStats : stats){
+            total += operationStats.getCalls();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalErrors(){
+        long total = 0;
+        for (OperationStats operationStats : stats){
+            total += operationStats.getErrors();
+        }
+        return total;
+    }
+
+    @Override
+    public String dump(){
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-20s %10s %8s %10s %10s %10s %10s %10s %10s %12s %10s %14s%n", "Operation", "Calls",
+                "Errors", "Mean(us)", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "Max(us)", "Results", "MaxResult", "EdgesScanned"));
+        for (OperationStats s : stats){
+            if (s.getCalls() == 0){
+                continue;
+            }
+            out.append(String.format("%-20s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %12d %10d %14d%n",
+                    s.getOperation().getMethodName(), s.getCalls(), s.getErrors(), s.getMeanMicros(), s.getP50Micros(),
+                    s.getP90Micros(), s.getP99Micros(), s.getP999Micros(), s.getMaxMicros(), s.getResultTotal(),
+                    s.getMaxResultSize(), s.getEdgesScanned()));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void reset(){
+        for (OperationStats operationStats : stats){
+            operationStats.reset();
+        }
+    }
+}
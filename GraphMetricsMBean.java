@@ -0,0 +1,28 @@
+/**
+ * JMX view of the statistics of every FollowGraph operation. Each operation is also registered as its own OperationStatsMBean.
+ */
+public interface GraphMetricsMBean{
+
+    /**
+     * Gets the total number of calls over all operations.
+     * @return The number of calls.
+     */
+    long getTotalCalls();
+
+    /**
+     * Gets the total number of failed calls over all operations.
+     * @return The number of errors.
+     */
+    long getTotalErrors();
+
+    /**
+     * Formats the statistics of every operation that has been called as a plain-text table.
+     * @return The table.
+     */
+    String dump();
+
+    /**
+     * Clears the statistics of every operation.
+     */
+    void reset();
+}
@@ -0,0 +1,54 @@
+/**
+ * The FollowGraph operations that GraphMetrics keeps statistics for.
+ */
+public enum GraphOperation{
+    ADD_USER("addUser"),
+    REMOVE_USER("removeUser"),
+    ADD_USERS("addUsers"),
+    ADD_CONNECTION("addConnection"),
+    REMOVE_CONNECTION("removeConnection"),
+    ADD_CONNECTIONS("addConnections"),
+    HAS_CONNECTION("hasConnection"),
+    IS_MUTUAL("isMutual"),
+    SHORTEST_PATH("shortestPath"),
+    GET_DISTANCE("getDistance"),
+    ALL_PATHS("allPaths"),
+    COUNT_ALL_PATHS("countAllPaths"),
+    FIND_ALL_LOOPS("findAllLoops"),
+    FOR_EACH_LOOP("forEachLoop"),
+    CAN_REACH("canReach"),
+    WITHIN_HOPS("withinHops"),
+    HOP_COUNTS("hopCounts"),
+    GET_ALL_FOLLOWING("getAllFollowing"),
+    GET_ALL_FOLLOWERS("getAllFollowers"),
+    FOLLOWING_OF("followingOf"),
+    FOLLOWERS_OF("followersOf"),
+    GET_FOLLOWER_COUNT("getFollowerCount"),
+    GET_FOLLOWING_COUNT("getFollowingCount"),
+    GET_MUTUAL_FOLLOWS("getMutualFollows"),
+    GET_COMMON_FOLLOWERS("getCommonFollowers"),
+    GET_COMMON_FOLLOWING("getCommonFollowing"),
+    FOLLOWER_SIMILARITY("followerSimilarity"),
+    RECOMMEND("recommend"),
+    GET_INFLUENCE("getInfluence"),
+    GET_INFLUENCE_SCORES("getInfluenceScores"),
+    PRINT_ALL_USERS("printAllUsers"),
+    COMPACT("compact"),
+    SNAPSHOT("snapshot"),
+    LOAD_ALL_USERS("loadAllUsers"),
+    LOAD_ALL_CONNECTIONS("loadAllConnections");
+
+    private final String methodName;
+
+    GraphOperation(String methodName){
+        this.methodName = methodName;
+    }
+
+    /**
+     * Gets the name of the FollowGraph method this operation stands for, which is also its name in JMX and in dumps.
+     * @return The method name.
+     */
+    public String getMethodName(){
+        return methodName;
+    }
+}
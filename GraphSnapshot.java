@@ -0,0 +1,383 @@
+/**
+ * Reads and writes FollowGraph snapshots in a compact, versioned binary format.
+ * A snapshot holds a header, a string table of usernames and every user's following list, delta and varint encoded, and
+ * ends with a CRC32 of everything before it. Removed users are left out and the rest are saved in id order and numbered
+ * densely, so the file size and the time to save or load it grow with the number of users and connections rather than
+ * with its square. Users keep their ids across a save and load.
+ *
+ * Layout, in order: magic "FGSN" (int), version (byte), storage kind (byte, 0 for AdjacencyList and 1 for BitsetAdjacency),
+ * compaction threshold (double), user count (varint), connection count (varint), next id (varint), then each username
+ * as a varint byte length followed by its UTF-8 bytes and its id (varint), then for each user its following count
+ * (varint) followed by the gaps between its sorted followees (varint, the first one counted from -1), and finally the
+ * CRC32 (int). Version 1 files have no next id and no user ids, and their users get the ids 0, 1, 2 and so on.
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class GraphSnapshot{
+    private static final int MAGIC = 0x4647534E;
+    private static final byte VERSION = 2;
+    private static final byte VERSION_WITHOUT_IDS = 1;
+    private static final byte STORAGE_LIST = 0;
+    private static final byte STORAGE_BITSET = 1;
+    private static final int HEADER_SIZE = 4 + 1 + 1 + 8;
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    private GraphSnapshot(){}
+
+    /**
+     * Writes a snapshot of the graph to a file. The snapshot is written to a new temporary file in the same directory first
+     * and then moved over the old one, so a crash while saving leaves the previous snapshot intact, and two saves to the
+     * same file never write to the same temporary file. It is written from a snapshot() view, so writers
+     * are only held up while the view is taken.
+     * @param graph The graph to save.
+     * @param fileName The name of the snapshot file.
+     * @throws IOException If the file cannot be written.
+     * @custom.precondition 'graph' and 'fileName' are non-null.
+     * @custom.postcondition The file holds a snapshot of the graph, and the graph is unchanged.
+     */
+    public static void write(FollowGraph graph, String fileName) throws IOException{
+        // Save a point-in-time view, so that users and connections stay consistent while other threads keep changing the graph.
+        FollowGraph view = graph.isSnapshot() ? graph : graph.snapshot();
+        Adjacency adjacency = view.getAdjacency();
+        ArrayList<User> users = view.getUsers();
+        int[] remap = new int[adjacency.getVertexCount()];
+        for (int i = 0; i < users.size(); i++){
+            remap[users.get(i).getIndexPos()] = i;
+        }
+
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            writeTo(temp, view, adjacency, users, remap);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a view to a file and forces it to disk.
+     */
+    private static void writeTo(Path temp, FollowGraph view, Adjacency adjacency, ArrayList<User> users, int[] remap) throws IOException{
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())){
+            BufferedOutputStream buffered = new BufferedOutputStream(file, 1 << 16);
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(adjacency instanceof BitsetAdjacency ? STORAGE_BITSET : STORAGE_LIST);
+            out.writeDouble(view.getCompactionThreshold());
+            writeVarint(out, users.size());
+            writeVarint(out, adjacency.getEdgeCount());
+            writeVarint(out, view.getNextId());
+            for (User a : users){
+                byte[] name = a.getUserName().getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, name.length);
+                out.write(name);
+                writeVarint(out, a.getId());
+            }
+            int[] renumbered = new int[16];
+            for (User a : users){
+                int[] row = adjacency.outNeighbors(a.getIndexPos());
+                writeVarint(out, row.length);
+                if (row.length > renumbered.length){
+                    renumbered = new int[Math.max(row.length, renumbered.length * 2)];
+                }
+                // Users are saved in id order, which is not slot order once a freed slot has been reused, so a renumbered
+                // row is sorted again before its gaps are taken.
+                boolean sorted = true;
+                for (int i = 0; i < row.length; i++){
+                    renumbered[i] = remap[row[i]];
+                    sorted &= i == 0 || renumbered[i] > renumbered[i - 1];
+                }
+                if (!sorted){
+                    Arrays.sort(renumbered, 0, row.length);
+                }
+                int previous = -1;
+                for (int i = 0; i < row.length; i++){
+                    writeVarint(out, renumbered[i] - previous - 1);
+                    previous = renumbered[i];
+                }
+            }
+            out.flush();
+            int crc = (int) checked.getChecksum().getValue();
+            new DataOutputStream(buffered).writeInt(crc);
+            buffered.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file through read-only memory maps. The file is mapped a window at a time, since one map
+     * cannot cover more than 2 GB.
+     * @param fileName The name of the snapshot file.
+     * @return The graph stored in the snapshot, with its users keeping their ids and numbered from 0 in their saved order.
+     * @throws IOException If the file cannot be read, is not a snapshot of a supported version, or fails its checksum.
+     * @custom.precondition 'fileName' is non-null.
+     */
+    public static FollowGraph read(String fileName) throws IOException{
+        return read(fileName, WINDOW_SIZE);
+    }
+
+    /**
+     * Reads a snapshot through memory maps of the given size, so that tests can cross window boundaries with small files.
+     * @param fileName The name of the snapshot file.
+     * @param windowSize The largest number of bytes mapped at once.
+     * @return The graph stored in the snapshot.
+     * @throws IOException If the file cannot be read, is not a snapshot of a supported version, or fails its checksum.
+     * @custom.precondition 'fileName' is non-null and 'windowSize' is positive.
+     */
+    static FollowGraph read(String fileName, int windowSize) throws IOException{
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4){
+                throw new IOException(fileName + " is not a FollowGraph snapshot.");
+            }
+            long bodySize = size - 4;
+            CRC32 crc = new CRC32();
+            for (long start = 0; start < bodySize; start += windowSize){
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, bodySize - start)));
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            while (trailer.hasRemaining()){
+                if (channel.read(trailer, bodySize + trailer.position()) < 0){
+                    throw new BufferUnderflowException();
+                }
+            }
+            if ((int) crc.getValue() != trailer.getInt(0)){
+                throw new IOException(fileName + " is corrupt: checksum mismatch.");
+            }
+            return decode(new MappedInput(channel, bodySize, windowSize), fileName);
+        } catch (BufferUnderflowException e){
+            throw new IOException(fileName + " is corrupt: unexpected end of data.", e);
+        }
+    }
+
+    /**
+     * Reads the checksummed part of a snapshot through a sliding window of memory maps, mapping the next window when a
+     * read runs off the end of the current one.
+     */
+    private static final class MappedInput{
+        private final FileChannel channel;
+        private final long end;
+        private final int windowSize;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedInput(FileChannel channel, long end, int windowSize) throws IOException{
+            this.channel = channel;
+            this.end = end;
+            this.windowSize = windowSize;
+            map(0);
+        }
+
+        /**
+         * Gets the number of bytes left to read.
+         */
+        long remaining(){
+            return end - windowStart - window.position();
+        }
+
+        /**
+         * Tells whether any bytes are left to read.
+         */
+        boolean hasRemaining(){
+            return remaining() > 0;
+        }
+
+        /**
+         * Reads one byte, as ByteBuffer.get does.
+         */
+        byte get() throws IOException{
+            if (!window.hasRemaining()){
+                advance();
+            }
+            return window.get();
+        }
+
+        /**
+         * Reads a big-endian int, which may straddle two windows.
+         */
+        int getInt() throws IOException{
+            if (window.remaining() >= 4){
+                return window.getInt();
+            }
+            int value = 0;
+            for (int i = 0; i < 4; i++){
+                value = value << 8 | (get() & 0xFF);
+            }
+            return value;
+        }
+
+        /**
+         * Reads a big-endian double, which may straddle two windows.
+         */
+        double getDouble() throws IOException{
+            if (window.remaining() >= 8){
+                return window.getDouble();
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++){
+                value = value << 8 | (get() & 0xFF);
+            }
+            return Double.longBitsToDouble(value);
+        }
+
+        /**
+         * Reads bytes into an array, across as many windows as they span.
+         */
+        void get(byte[] dst, int offset, int length) throws IOException{
+            while (length > 0){
+                if (!window.hasRemaining()){
+                    advance();
+                }
+                int n = Math.min(length, window.remaining());
+                window.get(dst, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        /**
+         * Maps the window that follows the current one.
+         * @throws BufferUnderflowException If the current window is the last one.
+         */
+        private void advance() throws IOException{
+            long next = windowStart + window.limit();
+            if (next >= end){
+                throw new BufferUnderflowException();
+            }
+            map(next);
+        }
+
+        /**
+         * Maps the window starting at a file position, up to the end of the checksummed part.
+         */
+        private void map(long start) throws IOException{
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, end - start));
+        }
+    }
+
+    /**
+     * Decodes the checksummed part of a snapshot.
+     */
+    private static FollowGraph decode(MappedInput in, String fileName) throws IOException{
+        if (in.getInt() != MAGIC){
+            throw new IOException(fileName + " is not a FollowGraph snapshot.");
+        }
+        byte version = in.get();
+        if (version != VERSION && version != VERSION_WITHOUT_IDS){
+            throw new IOException(fileName + " has unsupported snapshot version " + version + ".");
+        }
+        byte storage = in.get();
+        double compactionThreshold = in.getDouble();
+        long n = readVarint(in);
+        long edgeCount = readVarint(in);
+        long nextId = version == VERSION_WITHOUT_IDS ? n : readVarint(in);
+        if (n > in.remaining() || nextId < n || nextId > Integer.MAX_VALUE || (storage != STORAGE_LIST && storage != STORAGE_BITSET)){
+            throw new IOException(fileName + " is corrupt: bad header.");
+        }
+
+        ArrayList<User> users = new ArrayList<>((int) n);
+        byte[] name = new byte[64];
+        long previousId = -1;
+        for (int i = 0; i < n; i++){
+            int length = (int) readVarint(in);
+            if (length > name.length){
+                name = new byte[Math.max(length, name.length * 2)];
+            }
+            in.get(name, 0, length);
+            long id = version == VERSION_WITHOUT_IDS ? i : readVarint(in);
+            // Users are saved in id order, which also rules out two users with the same id.
+            if (id <= previousId || id >= nextId){
+                throw new IOException(fileName + " is corrupt: bad user id.");
+            }
+            previousId = id;
+            User a = new User(new String(name, 0, length, StandardCharsets.UTF_8), (int) id);
+            a.setIndexPos(i);
+            users.add(a);
+        }
+
+        int[][] rows = new int[(int) n][];
+        long edges = 0;
+        for (int v = 0; v < n; v++){
+            long degree = readVarint(in);
+            if (degree > n){
+                throw new IOException(fileName + " is corrupt: bad following count.");
+            }
+            int[] row = new int[(int) degree];
+            long previous = -1;
+            for (int i = 0; i < degree; i++){
+                previous += readVarint(in) + 1;
+                if (previous >= n){
+                    throw new IOException(fileName + " is corrupt: connection to a missing user.");
+                }
+                row[i] = (int) previous;
+            }
+            rows[v] = row;
+            edges += degree;
+        }
+        if (edges != edgeCount || in.hasRemaining()){
+            throw new IOException(fileName + " is corrupt: connection count mismatch.");
+        }
+
+        Adjacency adjacency;
+        if (storage == STORAGE_BITSET){
+            adjacency = new BitsetAdjacency();
+            adjacency.ensureCapacity((int) n);
+            for (int v = 0; v < n; v++){
+                for (int w : rows[v]){
+                    adjacency.addEdge(v, w);
+                }
+            }
+        } else {
+            adjacency = AdjacencyList.fromRows(rows);
+        }
+        return new FollowGraph(users, adjacency, compactionThreshold, (int) nextId);
+    }
+
+    /**
+     * Writes a non-negative value as a little-endian base-128 varint.
+     */
+    private static void writeVarint(DataOutputStream out, long value) throws IOException{
+        while ((value & ~0x7FL) != 0){
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a little-endian base-128 varint.
+     */
+    private static long readVarint(MappedInput in) throws IOException{
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7){
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0){
+                return value;
+            }
+        }
+        throw new IOException("Snapshot is corrupt: varint too long.");
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Concurrent histogram of non-negative long values with log-linear buckets, in the style of HdrHistogram.
+ * Values are grouped by their highest set bit, and each power of two is split into 32 linear sub-buckets, so every value
+ * is kept to within about 3% over the whole range while the bucket array stays small. Each bucket is a LongAdder, which
+ * spreads concurrent increments over extra cells only when threads actually contend, so recording a value takes no lock
+ * and allocates nothing once the histogram is warm.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram{
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 47;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructs an empty histogram.
+     * @custom.postcondition A histogram with no recorded values is created.
+     */
+    public Histogram(){
+        for (int i = 0; i < BUCKET_COUNT; i++){
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one value. Negative values are recorded as 0, and values past 2^48 share the top bucket.
+     * @param value The value to record.
+     * @custom.postcondition The count, sum, maximum and bucket of the value include it.
+     */
+    public void record(long value){
+        if (value < 0){
+            value = 0;
+        }
+        buckets[bucketOf(value)].increment();
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)){
+            current = max.get();
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     * @return The count.
+     */
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded values.
+     * @return The sum.
+     */
+    public long getSum(){
+        return sum.sum();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     * @return The maximum, or 0 if nothing has been recorded.
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     * @return The mean, or 0 if nothing has been recorded.
+     */
+    public double getMean(){
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the value at a percentile: the highest value in the bucket that holds it, capped at the maximum.
+     * Values recorded while this runs may or may not be counted.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile){
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++){
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++){
+            seen += counts[i];
+            if (seen >= rank){
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears every recorded value. Values recorded while this runs may or may not be kept.
+     * @custom.postcondition The histogram is empty, apart from values recorded concurrently.
+     */
+    public void reset(){
+        for (LongAdder bucket : buckets){
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Finds the bucket of a value: values below SUB_COUNT map to themselves, and larger ones to their power of two
+     * followed by the next SUB_BITS bits.
+     */
+    private static int bucketOf(long value){
+        if (value < SUB_COUNT){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT){
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Gets the largest value that falls in a bucket.
+     */
+    private static long highestValueIn(int bucket){
+        if (bucket < SUB_COUNT){
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long low = (1L << exponent) | (sub << (exponent - SUB_BITS));
+        return low + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Depth-limited Breadth-First Search for the users within k hops of a user, with a least recently used result cache.
+ * The search follows out-edges one level at a time and stops after level k or when a level reaches no new user. Visited
+ * marks are epoch stamps in arrays that each thread reuses, so nothing is cleared or allocated per query except the result.
+ * Results are cached by user and hop limit together with the graph version they were computed at, and a result is only
+ * used while the graph is still at that version, so any change to the graph makes every cached result stale without
+ * having to find it. The cache is bounded both in entries and in the total number of users it holds.
+ */
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class HopSearch{
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+    private static final int MAX_ENTRIES = 1024;
+    private static final long MAX_CACHED_USERS = 1 << 22;
+
+    private final LinkedHashMap<Long, Neighborhood> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedUsers = 0;
+
+    /**
+     * The users within some number of hops of a user, and how many of them are at each hop.
+     */
+    private static final class Neighborhood{
+        final long version;
+        final int[] slots;
+        final int[] counts;
+
+        Neighborhood(long version, int[] slots, int[] counts){
+            this.version = version;
+            this.slots = slots;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * Gets the users that can be reached from a user by following at most k connections, not counting the user itself.
+     * @param adjacency The adjacency store to search.
+     * @param source The slot of the user.
+     * @param k The greatest number of hops.
+     * @param version The current graph version. Results cached at another version are not used.
+     * @return The sorted slots of the users within k hops. The array is shared and must not be modified.
+     * @custom.precondition `source` is a valid vertex slot, `k` is not negative, and the caller keeps slots from being renumbered meanwhile.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public int[] within(Adjacency adjacency, int source, int k, long version){
+        return search(adjacency, source, k, version).slots;
+    }
+
+    /**
+     * Counts the users at each number of hops from a user.
+     * @param adjacency The adjacency store to search.
+     * @param source The slot of the user.
+     * @param k The greatest number of hops.
+     * @param version The current graph version. Results cached at another version are not used.
+     * @return The number of users first reached after each number of hops, starting with 1 for the user itself at 0 hops.
+     *         The array ends at the last hop that reached a new user, so it is shorter than k + 1 when the search runs out
+     *         first. The array is shared and must not be modified.
+     * @custom.precondition `source` is a valid vertex slot, `k` is not negative, and the caller keeps slots from being renumbered meanwhile.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public int[] counts(Adjacency adjacency, int source, int k, long version){
+        return search(adjacency, source, k, version).counts;
+    }
+
+    /**
+     * Drops every cached result, after users have been removed or renumbered.
+     */
+    public void clear(){
+        synchronized (cache){
+            cache.clear();
+            cachedUsers = 0;
+        }
+    }
+
+    /**
+     * Gets the neighborhood of a user from the cache, or searches for it and caches it.
+     */
+    private Neighborhood search(Adjacency adjacency, int source, int k, long version){
+        Long key = ((long) source << 32) | k;
+        synchronized (cache){
+            Neighborhood cached = cache.get(key);
+            if (cached != null && cached.version == version){
+                return cached;
+            }
+        }
+        Neighborhood result = WORKSPACE.get().search(adjacency, source, k, version);
+        synchronized (cache){
+            Neighborhood old = cache.put(key, result);
+            if (old != null){
+                cachedUsers -= old.slots.length;
+            }
+            cachedUsers += result.slots.length;
+            Iterator<Neighborhood> eldest = cache.values().iterator();
+            while (cache.size() > 1 && (cache.size() > MAX_ENTRIES || cachedUsers > MAX_CACHED_USERS)){
+                cachedUsers -= eldest.next().slots.length;
+                eldest.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The per-thread visited stamps and queue.
+     */
+    private static final class Workspace{
+        private int[] stamp = new int[0];
+        private int[] queue = new int[0];
+        private int[] counts = new int[16];
+        private int epoch = 0;
+
+        /**
+         * Runs one depth-limited search from a user.
+         */
+        Neighborhood search(Adjacency adjacency, int source, int k, long version){
+            prepare(adjacency.getVertexCount());
+            stamp[source] = epoch;
+            queue[0] = source;
+            counts[0] = 1;
+            int head = 0;
+            int tail = 1;
+            int hops = 0;
+            while (hops < k && head < tail){
+                int levelEnd = tail;
+                while (head < levelEnd){
+                    for (int w : adjacency.outNeighbors(queue[head++])){
+                        if (stamp[w] != epoch){
+                            stamp[w] = epoch;
+                            queue[tail++] = w;
+                        }
+                    }
+                }
+                if (tail == levelEnd){
+                    break;
+                }
+                hops++;
+                if (hops == counts.length){
+                    counts = Arrays.copyOf(counts, hops * 2);
+                }
+                counts[hops] = tail - levelEnd;
+            }
+            int[] slots = Arrays.copyOfRange(queue, 1, tail);
+            Arrays.sort(slots);
+            return new Neighborhood(version, slots, Arrays.copyOf(counts, hops + 1));
+        }
+
+        /**
+         * Grows the arrays to the graph size and starts a new epoch so old visited marks become stale.
+         */
+        private void prepare(int n){
+            if (stamp.length < n){
+                int length = Math.max(n, stamp.length * 2);
+                stamp = Arrays.copyOf(stamp, length);
+                queue = new int[length];
+            }
+            if (epoch == Integer.MAX_VALUE){
+                Arrays.fill(stamp, 0);
+                epoch = 0;
+            }
+            epoch++;
+        }
+    }
+}
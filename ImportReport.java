@@ -0,0 +1,92 @@
+/**
+ * Summary of one bulk import into a FollowGraph, printed once at the end instead of a line per record.
+ */
+public class ImportReport{
+    private final long lines;
+    private final long imported;
+    private final long duplicates;
+    private final long malformed;
+    private final long unknownUsers;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a new import report.
+     * @param lines The number of non-blank lines read.
+     * @param imported The number of users or connections added to the graph.
+     * @param duplicates The number of well-formed lines whose user or connection already existed.
+     * @param malformed The number of lines that could not be parsed.
+     * @param unknownUsers The number of connection lines that named a user missing from the graph.
+     * @param bytes The size of the imported file in bytes.
+     * @param elapsedNanos How long the import took, in nanoseconds.
+     * @custom.postcondition A report holding the given counts is created.
+     */
+    public ImportReport(long lines, long imported, long duplicates, long malformed, long unknownUsers, long bytes, long elapsedNanos){
+        this.lines = lines;
+        this.imported = imported;
+        this.duplicates = duplicates;
+        this.malformed = malformed;
+        this.unknownUsers = unknownUsers;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of non-blank lines read.
+     * @return The number of lines.
+     */
+    public long getLines(){
+        return lines;
+    }
+
+    /**
+     * Gets the number of users or connections added to the graph.
+     * @return The number of imported records.
+     */
+    public long getImported(){
+        return imported;
+    }
+
+    /**
+     * Gets the number of well-formed lines whose user or connection already existed.
+     * @return The number of duplicates.
+     */
+    public long getDuplicates(){
+        return duplicates;
+    }
+
+    /**
+     * Gets the number of lines that could not be parsed.
+     * @return The number of malformed lines.
+     */
+    public long getMalformed(){
+        return malformed;
+    }
+
+    /**
+     * Gets the number of connection lines that named a user missing from the graph.
+     * @return The number of lines with unknown users.
+     */
+    public long getUnknownUsers(){
+        return unknownUsers;
+    }
+
+    /**
+     * Gets how long the import took.
+     * @return The elapsed time in milliseconds.
+     */
+    public long getElapsedMillis(){
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * Returns a one-line summary of the import.
+     * @return The counts, the elapsed time and the throughput.
+     */
+    @Override
+    public String toString(){
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("Imported %d of %d lines in %d ms (%.0f lines/s, %.1f MB/s): %d duplicates, %d malformed, %d with unknown users.",
+                imported, lines, getElapsedMillis(), lines / seconds, bytes / seconds / 1e6, duplicates, malformed, unknownUsers);
+    }
+}
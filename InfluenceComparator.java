@@ -0,0 +1,30 @@
+/**
+ * Comparator to compare each user's influence score, most influential first.
+ * The scores are taken once, when the comparator is created, so a sort sees one consistent ranking.
+ */
+import java.util.Comparator;
+
+public class InfluenceComparator implements Comparator<User>{
+    private double[] influence;
+
+    public InfluenceComparator(FollowGraph followGraph) {
+        this.influence = followGraph.getInfluenceScores();
+    
+    }
+    @Override
+    public int compare(User o1, User o2) {
+        double o1_influence = scoreOf(o1);
+        double o2_influence = scoreOf(o2);
+        
+        return Double.compare(o2_influence, o1_influence);
+    }
+
+    /**
+     * Gets a user's score, or 0 for a user with no score, such as one created outside the graph or added after the
+     * scores were taken.
+     */
+    private double scoreOf(User user) {
+        int id = user.getId();
+        return id >= 0 && id < influence.length ? influence[id] : 0;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Hash map from long keys to int values, stored in two primitive arrays with open addressing and linear probing, so
+ * neither keys nor values are boxed. Entries can be added and changed but not removed, which is all the component index
+ * needs for its count of edges between components. Not thread safe.
+ */
+import java.util.Arrays;
+
+public class LongIntMap{
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Constructs an empty map.
+     * @custom.postcondition A map with no entries is created.
+     */
+    public LongIntMap(){
+        keys = new long[16];
+        values = new int[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Gets the number of entries.
+     * @return The number of keys with a value.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the value of a key.
+     * @param key The key to look up.
+     * @param absent The value to return if the key has none.
+     * @return The value of the key, or `absent`.
+     * @custom.precondition `key` is not Long.MIN_VALUE.
+     */
+    public int get(long key, int absent){
+        int slot = find(key);
+        return keys[slot] == EMPTY ? absent : values[slot];
+    }
+
+    /**
+     * Sets the value of a key.
+     * @param key The key to set.
+     * @param value The new value.
+     * @custom.precondition `key` is not Long.MIN_VALUE.
+     * @custom.postcondition The key maps to `value`.
+     */
+    public void put(long key, int value){
+        int slot = find(key);
+        if (keys[slot] == EMPTY){
+            slot = insert(slot, key);
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds to the value of a key, treating a key with no value as 0.
+     * @param key The key to change.
+     * @param delta The amount to add.
+     * @return The new value of the key.
+     * @custom.precondition `key` is not Long.MIN_VALUE.
+     * @custom.postcondition The key maps to its old value plus `delta`.
+     */
+    public int add(long key, int delta){
+        int slot = find(key);
+        if (keys[slot] == EMPTY){
+            slot = insert(slot, key);
+        }
+        return values[slot] += delta;
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would go.
+     */
+    private int find(long key){
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Puts a new key in the empty slot found for it, growing the table first if it would be more than half full.
+     * @return The slot now holding the key, with value 0.
+     */
+    private int insert(int slot, long key){
+        if (size + 1 > keys.length >>> 1){
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++){
+                if (oldKeys[i] != EMPTY){
+                    int moved = find(oldKeys[i]);
+                    keys[moved] = oldKeys[i];
+                    values[moved] = oldValues[i];
+                }
+            }
+            slot = find(key);
+        }
+        keys[slot] = key;
+        values[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Spreads the bits of a key over the low bits used to pick a slot.
+     */
+    private static int hash(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
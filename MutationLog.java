@@ -0,0 +1,541 @@
+/**
+ * Append-only write-ahead log of the changes made to a FollowGraph since its last snapshot.
+ * Every addUser, removeUser, addConnection and removeConnection that changes the graph is appended as one small record,
+ * by username so that records stay valid when users are renumbered. A new user's record also holds the id it was given,
+ * so that replaying records a snapshot already contains gives every user the id it has in the snapshot. Records are collected in memory and written in
+ * groups: with the GROUP policy a background thread writes and fsyncs the pending records once per commit window, so a
+ * crash loses at most the changes of the last window. Every record carries its own CRC32, and a record that was only
+ * partly written when the process died is cut off when the log is opened again.
+ * Writing and fsyncing happen outside the log's monitor: a flush swaps the pending buffer out under the monitor and then
+ * writes it while later records keep collecting in a fresh one. Callers that change the graph under a lock take a
+ * sequence number with reserve() while they hold it, and append the record after releasing it; records are placed in the
+ * file in sequence order however their appends interleave.
+ *
+ * Record layout: payload length (int), CRC32 of the payload (int), then the payload: operation (byte) followed by one or
+ * two usernames, each as a length (int) and its UTF-8 bytes, and for a new user its id (int). Logs written before ids
+ * were recorded have no id, and their users are given new ids on replay. The file starts with the magic "FGWL" and a
+ * version byte.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+public class MutationLog implements Closeable{
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum SyncPolicy{
+        /** Every record is written and fsynced before the change returns. Safest and slowest. */
+        ALWAYS,
+        /** Records are written and fsynced together once per commit window. */
+        GROUP,
+        /** Records are written once per commit window and left to the operating system to flush. */
+        NEVER
+    }
+
+    private static final int MAGIC = 0x4647574C;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int FLUSH_BYTES = 1 << 16;
+    private static final byte ADD_USER = 1;
+    private static final byte REMOVE_USER = 2;
+    private static final byte ADD_CONNECTION = 3;
+    private static final byte REMOVE_CONNECTION = 4;
+
+    private final String fileName;
+    private FileChannel channel;
+    private final SyncPolicy policy;
+    private final ScheduledExecutorService flusher;
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Held while a batch is written, so that batches reach the file one at a time and in order.
+    private final Object ioLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(FLUSH_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(FLUSH_BYTES);
+    private final HashMap<Long, byte[]> early = new HashMap<>();
+    private long appendedSequence = 0;
+    private long writtenSequence = 0;
+    private int pendingRecords = 0;
+    private long size;
+    private IOException failure;
+
+    /**
+     * Opens a log with group commit every 50 milliseconds.
+     * @param fileName The name of the log file. It is created if it does not exist.
+     * @throws IOException If the file cannot be opened or is not a mutation log.
+     * @custom.precondition 'fileName' is non-null.
+     * @custom.postcondition The log is open, and any partly written record at its end has been cut off.
+     */
+    public MutationLog(String fileName) throws IOException{
+        this(fileName, SyncPolicy.GROUP, 50);
+    }
+
+    /**
+     * Opens a log with the given sync policy.
+     * @param fileName The name of the log file. It is created if it does not exist.
+     * @param policy When appended records are forced to disk.
+     * @param commitWindowMillis How often pending records are written under the GROUP and NEVER policies.
+     * @throws IOException If the file cannot be opened or is not a mutation log.
+     * @custom.precondition 'fileName' and 'policy' are non-null and 'commitWindowMillis' is positive.
+     * @custom.postcondition The log is open, and any partly written record at its end has been cut off.
+     */
+    public MutationLog(String fileName, SyncPolicy policy, long commitWindowMillis) throws IOException{
+        this.fileName = fileName;
+        this.policy = policy;
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION).flip();
+            writeFully(header, 0);
+            channel.force(false);
+            size = HEADER_SIZE;
+        } else {
+            size = scan(null);
+            if (size < channel.size()){
+                channel.truncate(size);
+                channel.force(false);
+            }
+        }
+        if (policy == SyncPolicy.ALWAYS){
+            flusher = null;
+        } else {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "mutation-log-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundFlush, commitWindowMillis, commitWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes the place of the next change in the log's order. A caller that changes the graph under a lock reserves while
+     * it still holds the lock, so that changes to the same user or connection are logged in the order they were made.
+     * @return The sequence number to pass to exactly one of the log methods.
+     * @custom.postcondition Records with later sequence numbers are held back until this one has been appended.
+     */
+    public long reserve(){
+        return nextSequence.getAndIncrement();
+    }
+
+    /**
+     * Takes the places of the next changes in the log's order, for a batch of changes made under one lock.
+     * @param count The number of changes in the batch.
+     * @return The first of `count` consecutive sequence numbers, each to be passed to exactly one of the log methods.
+     */
+    public long reserve(int count){
+        return nextSequence.getAndAdd(count);
+    }
+
+    /**
+     * Records that a user was added.
+     * @param sequence The number reserved for the change.
+     * @param userName The name of the new user.
+     * @param id The id the graph gave the user.
+     * @throws UncheckedIOException If the log can no longer be written.
+     */
+    public void logAddUser(long sequence, String userName, int id){
+        append(sequence, ADD_USER, userName, null, id);
+    }
+
+    /**
+     * Records that a user was removed.
+     * @param sequence The number reserved for the change.
+     * @param userName The name of the removed user.
+     * @throws UncheckedIOException If the log can no longer be written.
+     */
+    public void logRemoveUser(long sequence, String userName){
+        append(sequence, REMOVE_USER, userName, null, -1);
+    }
+
+    /**
+     * Records that a connection was added.
+     * @param sequence The number reserved for the change.
+     * @param userFrom The name of the user who started following.
+     * @param userTo The name of the user being followed.
+     * @throws UncheckedIOException If the log can no longer be written.
+     */
+    public void logAddConnection(long sequence, String userFrom, String userTo){
+        append(sequence, ADD_CONNECTION, userFrom, userTo, -1);
+    }
+
+    /**
+     * Records that a connection was removed.
+     * @param sequence The number reserved for the change.
+     * @param userFrom The name of the user who stopped following.
+     * @param userTo The name of the user no longer followed.
+     * @throws UncheckedIOException If the log can no longer be written.
+     */
+    public void logRemoveConnection(long sequence, String userFrom, String userTo){
+        append(sequence, REMOVE_CONNECTION, userFrom, userTo, -1);
+    }
+
+    /**
+     * Applies every record in the log to a graph, in the order they were appended.
+     * Records are kept by username and only describe changes that succeeded, so replaying them on the snapshot taken before
+     * them rebuilds the graph as it was at the last commit. Added users get the ids they were logged with, and users that
+     * already exist are left alone, so records that a later snapshot already contains can be replayed on it as well.
+     * @param graph The graph to apply the records to, usually just loaded from the last snapshot.
+     * @return The number of records applied.
+     * @throws IOException If the log cannot be read.
+     * @custom.precondition 'graph' is non-null and is not writing to this log, and nothing has been appended since the log was opened.
+     * @custom.postcondition The graph contains every change recorded in the log.
+     */
+    public int replay(FollowGraph graph) throws IOException{
+        int[] applied = new int[1];
+        synchronized (ioLock){
+            scan((op, a, b, id) -> {
+                switch (op){
+                    case ADD_USER:
+                        if (id >= 0){
+                            graph.restoreUser(a, id);
+                        } else {
+                            graph.addUser(a);
+                        }
+                        break;
+                    case REMOVE_USER:
+                        graph.removeUser(a);
+                        break;
+                    case ADD_CONNECTION:
+                        graph.addConnection(a, b);
+                        break;
+                    default:
+                        graph.removeConnection(a, b);
+                        break;
+                }
+                applied[0]++;
+            });
+        }
+        return applied[0];
+    }
+
+    /**
+     * Writes the pending records to the file and, unless the policy is NEVER, forces them to disk.
+     * Only swapping the buffers holds the monitor, so records can still be appended while the batch is written.
+     * @throws IOException If the records cannot be written.
+     * @custom.postcondition Every record appended so far, and every earlier one, is in the file.
+     */
+    public void flush() throws IOException{
+        synchronized (ioLock){
+            ByteBuffer batch;
+            long offset;
+            long through;
+            synchronized (this){
+                if (failure != null){
+                    throw failure;
+                }
+                if (pending.position() == 0){
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                spare = null;
+                offset = size;
+                size += batch.position();
+                through = appendedSequence;
+                pendingRecords = 0;
+            }
+            batch.flip();
+            try {
+                writeFully(batch, offset);
+                if (policy != SyncPolicy.NEVER){
+                    channel.force(false);
+                }
+            } catch (IOException e){
+                synchronized (this){
+                    failure = e;
+                    notifyAll();
+                }
+                throw e;
+            }
+            batch.clear();
+            synchronized (this){
+                spare = batch.capacity() > FLUSH_BYTES ? ByteBuffer.allocate(FLUSH_BYTES) : batch;
+                writtenSequence = through;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Drops the records a checkpoint has made redundant. Records from `upTo` on are kept, together with any that are
+     * still pending, so changes made while the snapshot was being written are not lost.
+     * @param upTo The size() of the log taken before the snapshot was started.
+     * @throws IOException If the pending records cannot be written or the file cannot be rewritten. The log is unchanged then.
+     * @custom.precondition A snapshot holding every change recorded before `upTo` has been written and made durable.
+     * @custom.postcondition The log holds the records appended from `upTo` on, and nothing earlier.
+     */
+    public void truncate(long upTo) throws IOException{
+        synchronized (ioLock){
+            flush();
+            long end;
+            synchronized (this){
+                end = size;
+            }
+            if (upTo < HEADER_SIZE || upTo > end){
+                throw new IllegalArgumentException("Log position " + upTo + " is outside the log.");
+            }
+            if (upTo == end){
+                channel.truncate(HEADER_SIZE);
+                channel.force(false);
+            } else {
+                // The kept records are copied to a new file that replaces the log in one step, so a crash leaves either the
+                // old log or the new one.
+                ByteBuffer tail = ByteBuffer.allocate(HEADER_SIZE + (int) (end - upTo));
+                tail.putInt(MAGIC).put(VERSION);
+                while (tail.hasRemaining()){
+                    if (channel.read(tail, upTo + tail.position() - HEADER_SIZE) < 0){
+                        throw new IOException(fileName + " ended before " + end + " bytes.");
+                    }
+                }
+                tail.flip();
+                Path path = Paths.get(fileName).toAbsolutePath();
+                Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)){
+                    while (tail.hasRemaining()){
+                        out.write(tail);
+                    }
+                    out.force(true);
+                    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            synchronized (this){
+                size = HEADER_SIZE + (end - upTo);
+            }
+        }
+    }
+
+    /**
+     * Gets the size of the log, including records that have not been written yet.
+     * @return The size in bytes.
+     */
+    public synchronized long size(){
+        return size + pending.position();
+    }
+
+    /**
+     * Gets the number of records waiting for the next group commit.
+     * @return The number of pending records.
+     */
+    public synchronized int getPendingCount(){
+        return pendingRecords + early.size();
+    }
+
+    /**
+     * Flushes the pending records and closes the file.
+     * @throws IOException If the records cannot be written or the file cannot be closed.
+     * @custom.postcondition Every record appended so far is in the file, and the log can no longer be used.
+     */
+    @Override
+    public void close() throws IOException{
+        if (flusher != null){
+            flusher.shutdown();
+        }
+        synchronized (ioLock){
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes one record and places it in the pending buffer in sequence order, then writes the buffer out when the
+     * policy or buffer size requires it. Only placing the record holds the monitor.
+     */
+    private void append(long sequence, byte op, String a, String b, int id){
+        byte[] first = a.getBytes(StandardCharsets.UTF_8);
+        byte[] second = b == null ? null : b.getBytes(StandardCharsets.UTF_8);
+        int payload = 1 + 4 + first.length + (second == null ? 0 : 4 + second.length) + (op == ADD_USER ? 4 : 0);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload);
+        record.putInt(payload).putInt(0).put(op).putInt(first.length).put(first);
+        if (second != null){
+            record.putInt(second.length).put(second);
+        }
+        if (op == ADD_USER){
+            record.putInt(id);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, payload);
+        record.putInt(4, (int) crc.getValue());
+        boolean full;
+        synchronized (this){
+            if (failure != null){
+                throw new UncheckedIOException(fileName + " can no longer be written.", failure);
+            }
+            if (sequence == appendedSequence){
+                place(record.array());
+                for (byte[] next = early.remove(appendedSequence); next != null; next = early.remove(appendedSequence)){
+                    place(next);
+                }
+            } else {
+                // An earlier change has not been appended yet. Its appender places this record after its own.
+                early.put(sequence, record.array());
+            }
+            full = pending.position() >= FLUSH_BYTES;
+        }
+        if (policy == SyncPolicy.ALWAYS){
+            flushUnchecked();
+            awaitWritten(sequence);
+        } else if (full){
+            flushUnchecked();
+        }
+    }
+
+    /**
+     * Adds the next record in sequence to the pending buffer, growing it if the record does not fit.
+     */
+    private void place(byte[] record){
+        if (pending.remaining() < record.length){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.put(record);
+        pendingRecords++;
+        appendedSequence++;
+    }
+
+    /**
+     * Waits until a record has been written, for the ALWAYS policy. The record may be written by the thread that appends
+     * the last record before it.
+     */
+    private synchronized void awaitWritten(long sequence){
+        boolean interrupted = false;
+        while (writtenSequence <= sequence && failure == null){
+            try {
+                wait();
+            } catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if (interrupted){
+            Thread.currentThread().interrupt();
+        }
+        if (writtenSequence <= sequence){
+            throw new UncheckedIOException(fileName + " can no longer be written.", failure);
+        }
+    }
+
+    /**
+     * Flushes from a caller that cannot throw IOException.
+     */
+    private void flushUnchecked(){
+        try {
+            flush();
+        } catch (IOException e){
+            throw new UncheckedIOException(fileName + " can no longer be written.", e);
+        }
+    }
+
+    /**
+     * Runs the group commit on the background thread. A failure is kept and reported by the next append.
+     */
+    private void backgroundFlush(){
+        synchronized (ioLock){
+            if (!channel.isOpen()){
+                return;
+            }
+            try {
+                flush();
+            } catch (IOException e){
+                // Already recorded in `failure`.
+            }
+        }
+    }
+
+    /**
+     * Receives one decoded record during a scan.
+     */
+    private interface RecordHandler{
+        void accept(byte op, String a, String b, int id);
+    }
+
+    /**
+     * Reads the records from the start of the file, passing each one to the handler, and stops at the first one that is
+     * incomplete or fails its checksum.
+     * @return The offset just past the last good record.
+     */
+    private long scan(RecordHandler handler) throws IOException{
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE){
+            throw new IOException(fileName + " is not a FollowGraph mutation log.");
+        }
+        // The log is cut at every checkpoint, so it is small enough to read whole.
+        ByteBuffer in = ByteBuffer.allocate((int) fileSize);
+        while (in.hasRemaining()){
+            if (channel.read(in, in.position()) < 0){
+                break;
+            }
+        }
+        in.flip();
+        if (in.getInt() != MAGIC || in.get() != VERSION){
+            throw new IOException(fileName + " is not a FollowGraph mutation log of a supported version.");
+        }
+        CRC32 check = new CRC32();
+        while (in.remaining() >= RECORD_HEADER_SIZE){
+            int start = in.position();
+            int payload = in.getInt();
+            int expected = in.getInt();
+            if (payload < 5 || payload > in.remaining()){
+                in.position(start);
+                break;
+            }
+            check.reset();
+            check.update(in.array(), in.position(), payload);
+            if ((int) check.getValue() != expected){
+                in.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(in.array(), in.position(), payload);
+            in.position(in.position() + payload);
+            if (handler != null){
+                byte op = record.get();
+                String a = readName(record);
+                String b = op == ADD_CONNECTION || op == REMOVE_CONNECTION ? readName(record) : null;
+                int id = op == ADD_USER && record.remaining() >= 4 ? record.getInt() : -1;
+                handler.accept(op, a, b, id);
+            }
+        }
+        return in.position();
+    }
+
+    /**
+     * Reads one length-prefixed UTF-8 username from a record.
+     */
+    private static String readName(ByteBuffer record){
+        int length = record.getInt();
+        String name = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return name;
+    }
+
+    /**
+     * Writes a whole buffer at the given file offset.
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException{
+        while (buffer.hasRemaining()){
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Call count, latency histogram, error count and result sizes of one FollowGraph operation.
+ * All counters are LongAdders or a Histogram, so recording is lock-free and allocation-free and can stay on under load.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationStats implements OperationStatsMBean{
+    private final GraphOperation operation;
+    private final Histogram latency = new Histogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder resultTotal = new LongAdder();
+    private final AtomicLong maxResultSize = new AtomicLong();
+    private final LongAdder edgesScanned = new LongAdder();
+
+    /**
+     * Constructs empty statistics for an operation.
+     * @param operation The operation these statistics are for.
+     * @custom.postcondition Statistics with no recorded calls are created.
+     */
+    public OperationStats(GraphOperation operation){
+        this.operation = operation;
+    }
+
+    /**
+     * Gets the operation these statistics are for.
+     * @return The operation.
+     */
+    public GraphOperation getOperation(){
+        return operation;
+    }
+
+    /**
+     * Records a completed call.
+     * @param nanos How long the call took, in nanoseconds.
+     */
+    void recordCall(long nanos){
+        latency.record(nanos);
+    }
+
+    /**
+     * Records a failed call. The call's latency is recorded separately when it completes.
+     */
+    void recordError(){
+        errors.increment();
+    }
+
+    /**
+     * Records the size of a call's result.
+     * @param size The number of paths, loops, users or other items the call produced.
+     */
+    void recordResult(long size){
+        resultTotal.add(size);
+        long current = maxResultSize.get();
+        while (size > current && !maxResultSize.compareAndSet(current, size)){
+            current = maxResultSize.get();
+        }
+    }
+
+    /**
+     * Records the number of edges a call scanned.
+     * @param edges The number of edges.
+     */
+    void recordEdges(long edges){
+        edgesScanned.add(edges);
+    }
+
+    @Override
+    public long getCalls(){
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors(){
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros(){
+        return latency.getMean() / 1e3;
+    }
+
+    @Override
+    public double getP50Micros(){
+        return latency.getValueAtPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros(){
+        return latency.getValueAtPercentile(90) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros(){
+        return latency.getValueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros(){
+        return latency.getValueAtPercentile(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros(){
+        return latency.getMax() / 1e3;
+    }
+
+    @Override
+    public long getResultTotal(){
+        return resultTotal.sum();
+    }
+
+    @Override
+    public long getMaxResultSize(){
+        return maxResultSize.get();
+    }
+
+    @Override
+    public long getEdgesScanned(){
+        return edgesScanned.sum();
+    }
+
+    @Override
+    public void reset(){
+        latency.reset();
+        errors.reset();
+        resultTotal.reset();
+        maxResultSize.set(0);
+        edgesScanned.reset();
+    }
+}
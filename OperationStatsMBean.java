@@ -0,0 +1,76 @@
+/**
+ * JMX view of the statistics of one FollowGraph operation. Times are in microseconds.
+ */
+public interface OperationStatsMBean{
+
+    /**
+     * Gets the number of completed calls, including failed ones.
+     * @return The number of calls.
+     */
+    long getCalls();
+
+    /**
+     * Gets the number of calls that failed, by throwing or by rejecting their arguments.
+     * @return The number of errors.
+     */
+    long getErrors();
+
+    /**
+     * Gets the mean latency.
+     * @return The mean latency in microseconds.
+     */
+    double getMeanMicros();
+
+    /**
+     * Gets the median latency.
+     * @return The 50th percentile latency in microseconds.
+     */
+    double getP50Micros();
+
+    /**
+     * Gets the 90th percentile latency.
+     * @return The 90th percentile latency in microseconds.
+     */
+    double getP90Micros();
+
+    /**
+     * Gets the 99th percentile latency.
+     * @return The 99th percentile latency in microseconds.
+     */
+    double getP99Micros();
+
+    /**
+     * Gets the 99.9th percentile latency.
+     * @return The 99.9th percentile latency in microseconds.
+     */
+    double getP999Micros();
+
+    /**
+     * Gets the highest latency.
+     * @return The maximum latency in microseconds.
+     */
+    double getMaxMicros();
+
+    /**
+     * Gets the total size of the results, such as paths, loops or users returned.
+     * @return The sum of the result sizes.
+     */
+    long getResultTotal();
+
+    /**
+     * Gets the largest result size.
+     * @return The maximum result size.
+     */
+    long getMaxResultSize();
+
+    /**
+     * Gets the number of edges the operation has scanned, for the operations that count them.
+     * @return The number of edges scanned.
+     */
+    long getEdgesScanned();
+
+    /**
+     * Clears the statistics of the operation.
+     */
+    void reset();
+}
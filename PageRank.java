@@ -0,0 +1,230 @@
+/**
+ * Iterative PageRank over the follow edges, used to score how influential each user is.
+ * Every user starts with an equal share of rank and, on each iteration, passes a damped share of it on to the users they
+ * follow, split evenly; users who follow nobody spread theirs over everyone. Iteration stops once the total change in
+ * rank falls below the tolerance or the iteration limit is reached.
+ * Ranks live in primitive double arrays indexed by slot. Each iteration is split into chunks of slots that a
+ * ForkJoinPool can run in parallel, and every chunk writes only its own slots and its own partial sum, so the result does
+ * not depend on how many workers ran it.
+ * Scores are kept by user id between runs, and a run after the graph has changed starts from the previous scores rather
+ * than from equal shares, so a small batch of edge changes converges in a few iterations.
+ */
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+public class PageRank{
+    private static final double DAMPING = 0.85;
+    private static final int CHUNK = 2048;
+
+    private double tolerance = 1e-6;
+    private int maxIterations = 100;
+    private double[] scoreOfId = new double[0];
+    private long version = -1;
+    private int iterations = 0;
+
+    /**
+     * Sets the total change in rank below which iteration stops.
+     * @param tolerance The largest sum of absolute rank changes over all users that counts as converged.
+     * @custom.precondition 'tolerance' is positive.
+     * @custom.postcondition The next call to scores computes the ranks again with the new tolerance.
+     */
+    public synchronized void setTolerance(double tolerance){
+        this.tolerance = tolerance;
+        version = -1;
+    }
+
+    /**
+     * Gets the total change in rank below which iteration stops.
+     * @return The tolerance.
+     */
+    public synchronized double getTolerance(){
+        return tolerance;
+    }
+
+    /**
+     * Sets the greatest number of iterations of one computation.
+     * @param maxIterations The iteration limit.
+     * @custom.precondition 'maxIterations' is positive.
+     * @custom.postcondition The next call to scores computes the ranks again with the new limit.
+     */
+    public synchronized void setMaxIterations(int maxIterations){
+        this.maxIterations = maxIterations;
+        version = -1;
+    }
+
+    /**
+     * Gets the greatest number of iterations of one computation.
+     * @return The iteration limit.
+     */
+    public synchronized int getMaxIterations(){
+        return maxIterations;
+    }
+
+    /**
+     * Gets the number of iterations the last computation ran.
+     * @return The iteration count, or 0 if nothing has been computed.
+     */
+    public synchronized int getIterations(){
+        return iterations;
+    }
+
+    /**
+     * Gets the rank of every user, computing it again first if the graph has changed since it was last computed.
+     * @param adjacency The adjacency store to rank.
+     * @param idOfSlot The id of the user in every slot, or -1 for empty slots.
+     * @param idCount The number of ids handed out so far.
+     * @param pool The pool to split each iteration across, or null to run on the calling thread.
+     * @param version The current graph version. Scores computed at another version are computed again.
+     * @return The rank of every user by id, summing to 1, with 0 for ids that do not belong to a user. The array is shared and must not be modified.
+     * @custom.precondition Every user's id is below `idCount`, and the caller keeps slots from being renumbered meanwhile.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public synchronized double[] scores(Adjacency adjacency, int[] idOfSlot, int idCount, ForkJoinPool pool, long version){
+        if (version == this.version && scoreOfId.length == idCount){
+            return scoreOfId;
+        }
+        int n = adjacency.getVertexCount();
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] contribution = new double[n];
+        int[] outDegree = new int[n];
+        int live = 0;
+        for (int v = 0; v < n; v++){
+            if (idOfSlot[v] >= 0){
+                live++;
+                outDegree[v] = adjacency.outDegree(v);
+            }
+        }
+        double[] result = new double[idCount];
+        iterations = 0;
+        if (live > 0){
+            warmStart(rank, idOfSlot, live);
+            int chunks = (n + CHUNK - 1) / CHUNK;
+            double[] partial = new double[chunks];
+            double share = 1.0 / live;
+            while (iterations < maxIterations){
+                double[] current = rank;
+                double[] updated = next;
+                run(pool, chunks, c -> {
+                    double dangling = 0;
+                    for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++){
+                        if (outDegree[v] > 0){
+                            contribution[v] = current[v] / outDegree[v];
+                        } else {
+                            contribution[v] = 0;
+                            dangling += current[v];
+                        }
+                    }
+                    partial[c] = dangling;
+                });
+                double base = (1 - DAMPING) * share + DAMPING * sum(partial) * share;
+                run(pool, chunks, c -> {
+                    double change = 0;
+                    for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++){
+                        if (idOfSlot[v] < 0){
+                            continue;
+                        }
+                        double incoming = 0;
+                        for (int u : adjacency.inNeighbors(v)){
+                            incoming += contribution[u];
+                        }
+                        updated[v] = base + DAMPING * incoming;
+                        change += Math.abs(updated[v] - current[v]);
+                    }
+                    partial[c] = change;
+                });
+                rank = updated;
+                next = current;
+                iterations++;
+                if (sum(partial) < tolerance){
+                    break;
+                }
+            }
+            for (int v = 0; v < n; v++){
+                if (idOfSlot[v] >= 0){
+                    result[idOfSlot[v]] = rank[v];
+                }
+            }
+        }
+        scoreOfId = result;
+        this.version = version;
+        return result;
+    }
+
+    /**
+     * Drops the kept scores, so that the next computation starts from equal shares.
+     */
+    public synchronized void clear(){
+        scoreOfId = new double[0];
+        version = -1;
+    }
+
+    /**
+     * Seeds the ranks with the previous score of each user, giving users without one an equal share, and scales them to sum to 1.
+     */
+    private void warmStart(double[] rank, int[] idOfSlot, int live){
+        double total = 0;
+        for (int v = 0; v < rank.length; v++){
+            int id = idOfSlot[v];
+            if (id >= 0){
+                rank[v] = id < scoreOfId.length && scoreOfId[id] > 0 ? scoreOfId[id] : 1.0 / live;
+                total += rank[v];
+            }
+        }
+        for (int v = 0; v < rank.length; v++){
+            rank[v] /= total;
+        }
+    }
+
+    /**
+     * Runs a pass over every chunk of slots, on the pool if there is one.
+     */
+    private static void run(ForkJoinPool pool, int chunks, IntConsumer pass){
+        if (pool == null || chunks == 1){
+            for (int c = 0; c < chunks; c++){
+                pass.accept(c);
+            }
+        } else {
+            pool.invoke(new ChunkTask(pass, 0, chunks));
+        }
+    }
+
+    /**
+     * Adds up the partial sums of the chunks in chunk order, so the total is the same however the chunks were run.
+     */
+    private static double sum(double[] partial){
+        double total = 0;
+        for (double p : partial){
+            total += p;
+        }
+        return total;
+    }
+
+    /**
+     * Runs a pass over a range of chunks, splitting the range until each task has one chunk.
+     */
+    // ForkJoinTask is Serializable, but a task is never serialized: it only lives for one pass on the pool.
+    @SuppressWarnings("serial")
+    private static class ChunkTask extends RecursiveAction{
+        private final IntConsumer pass;
+        private final int from;
+        private final int to;
+
+        ChunkTask(IntConsumer pass, int from, int to){
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if (to - from <= 1){
+                pass.accept(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(pass, from, mid), new ChunkTask(pass, mid, to));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Runs the exhaustive FollowGraph searches on a ForkJoinPool.
+ * Loop search is split by start vertex, since Johnson's algorithm searches each start independently, and path search is
+ * split by the first step out of the source. Every task fills its own result buffer, and buffers are concatenated in
+ * task order, so the combined result is the same as a sequential search in the same order.
+ * A loop search keeps one CycleFinder per worker thread for all the start ranges that thread runs, since each finder
+ * holds several arrays with one entry per vertex.
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+public class ParallelSearch{
+
+    private ParallelSearch(){}
+
+    /**
+     * Finds every loop in the graph in parallel.
+     * @param pool The pool to run the search on.
+     * @param adjacency The adjacency store to search. It must not change while the search runs, so a graph that is being
+     *        changed passes a snapshot of its store.
+     * @param sccIndex An up to date component index of `adjacency`, or null to search without pruning.
+     * @param limits The bounds on loop length and running time. The time limit starts once, here, and is shared by every task.
+     * @return The loops as user indices, in the order a sequential search would report them.
+     * @custom.precondition 'pool', 'adjacency' and 'limits' are non-null.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public static List<int[]> findLoops(ForkJoinPool pool, Adjacency adjacency, SccIndex sccIndex, SearchLimits limits){
+        int n = adjacency.getVertexCount();
+        // Low start vertices own the largest subgraphs, so cut the range finely to keep the workers balanced.
+        int grain = Math.max(1, n / (pool.getParallelism() * 16));
+        // The finders are dropped with the map once the search is over, where a ThreadLocal would keep them reachable
+        // from the pool's threads.
+        ConcurrentHashMap<Thread, CycleFinder> finders = new ConcurrentHashMap<>();
+        long deadline = limits.deadline();
+        return pool.invoke(new LoopTask(() -> new CycleFinder(adjacency, limits, sccIndex, deadline), finders, 0, n, grain));
+    }
+
+    /**
+     * Finds every simple path between two vertices in parallel.
+     * @param pool The pool to run the search on.
+     * @param adjacency The adjacency store to search. It must not change while the search runs, so a graph that is being
+     *        changed passes a snapshot of its store.
+     * @param sccIndex An up to date component index of `adjacency`, or null to search without pruning.
+     * @param source The vertex every path starts at.
+     * @param target The vertex every path ends at.
+     * @param limits The bounds on path length and running time. The time limit starts once, here, and is shared by every task.
+     * @return The paths as user indices, in the order a sequential search would report them.
+     * @custom.precondition 'pool', 'adjacency' and 'limits' are non-null, and `source` and `target` are different valid vertex slots.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public static List<int[]> findPaths(ForkJoinPool pool, Adjacency adjacency, SccIndex sccIndex, int source, int target, SearchLimits limits){
+        int[] branches = adjacency.outNeighbors(source);
+        long[] reachesTarget = sccIndex == null ? null : sccIndex.verticesReaching(target);
+        return pool.invoke(new PathTask(adjacency, reachesTarget, source, target, limits, limits.deadline(), branches, 0, branches.length));
+    }
+
+    /**
+     * Searches the loops rooted in a range of start vertices, splitting the range while it is larger than the grain.
+     */
+    // ForkJoinTask is Serializable, but a task is never serialized: it only lives for one invoke on the search pool.
+    @SuppressWarnings("serial")
+    private static class LoopTask extends RecursiveTask<List<int[]>>{
+        private final Supplier<CycleFinder> newFinder;
+        private final ConcurrentHashMap<Thread, CycleFinder> finders;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        LoopTask(Supplier<CycleFinder> newFinder, ConcurrentHashMap<Thread, CycleFinder> finders, int from, int to, int grain){
+            this.newFinder = newFinder;
+            this.finders = finders;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected List<int[]> compute(){
+            if (to - from <= grain){
+                ArrayList<int[]> buffer = new ArrayList<>();
+                // A leaf never joins another task, so no other range can run on this thread's finder until it is done.
+                CycleFinder finder = finders.computeIfAbsent(Thread.currentThread(), thread -> newFinder.get());
+                finder.run(from, to, cycle -> buffer.add(cycle));
+                return buffer;
+            }
+            int mid = (from + to) >>> 1;
+            LoopTask left = new LoopTask(newFinder, finders, from, mid, grain);
+            LoopTask right = new LoopTask(newFinder, finders, mid, to, grain);
+            left.fork();
+            List<int[]> rightResult = right.compute();
+            List<int[]> result = left.join();
+            result.addAll(rightResult);
+            return result;
+        }
+    }
+
+    /**
+     * Searches the paths that leave the source through a range of its out-neighbors.
+     */
+    // Never serialized, like LoopTask.
+    @SuppressWarnings("serial")
+    private static class PathTask extends RecursiveTask<List<int[]>>{
+        private final Adjacency adjacency;
+        private final long[] reachesTarget;
+        private final int source;
+        private final int target;
+        private final SearchLimits limits;
+        private final long deadline;
+        private final int[] branches;
+        private final int from;
+        private final int to;
+
+        PathTask(Adjacency adjacency, long[] reachesTarget, int source, int target, SearchLimits limits, long deadline, int[] branches, int from, int to){
+            this.adjacency = adjacency;
+            this.reachesTarget = reachesTarget;
+            this.source = source;
+            this.target = target;
+            this.limits = limits;
+            this.deadline = deadline;
+            this.branches = branches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<int[]> compute(){
+            if (to - from <= 1){
+                ArrayList<int[]> buffer = new ArrayList<>();
+                for (int i = from; i < to; i++){
+                    if (branches[i] == source){
+                        continue;
+                    }
+                    PathIterator paths = new PathIterator(adjacency, new int[]{source, branches[i]}, target, limits, reachesTarget, deadline);
+                    while (paths.hasNext()){
+                        buffer.add(paths.next());
+                    }
+                }
+                return buffer;
+            }
+            int mid = (from + to) >>> 1;
+            PathTask left = new PathTask(adjacency, reachesTarget, source, target, limits, deadline, branches, from, mid);
+            PathTask right = new PathTask(adjacency, reachesTarget, source, target, limits, deadline, branches, mid, to);
+            left.fork();
+            List<int[]> rightResult = right.compute();
+            List<int[]> result = left.join();
+            result.addAll(rightResult);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Lazily enumerates every simple path between two vertices of a FollowGraph using Depth-First Search.
+ * The search keeps one mutable path stack with a cursor per level and an on-path bitset, so partial paths are never copied;
+ * only the paths handed out by next() are. The search stops at the limits it was given, and count() walks the remaining
+ * paths without building any of them.
+ * The iterator may be used after the caller's lock is released, so it copies the component pruning data it needs when it
+ * is created, and grows its on-path bitset when the graph has gained users since then.
+ */
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class PathIterator implements Iterator<int[]>{
+    private final Adjacency adjacency;
+    private final int target;
+    private final int maxDepth;
+    private final long maxResults;
+    private final long deadline;
+    private final long[] reachesTarget;
+    private long[] onPath;
+    private final int base;
+    private int[] path = new int[16];
+    private int[][] neighbors = new int[16][];
+    private int[] cursor = new int[16];
+    private int depth;
+    private int resultLength;
+    private long produced = 0;
+    private int steps = 0;
+    private boolean ready = false;
+    private boolean finished = false;
+    private boolean truncated = false;
+
+    /**
+     * Constructs a new PathIterator over the simple paths from one vertex to another.
+     * @param adjacency The adjacency store to search.
+     * @param source The vertex every path starts at.
+     * @param target The vertex every path ends at.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @custom.precondition `source` and `target` are valid vertex slots of `adjacency` and `limits` is non-null.
+     * @custom.postcondition An iterator positioned before the first path is created. A path from a vertex to itself is the single vertex.
+     */
+    public PathIterator(Adjacency adjacency, int source, int target, SearchLimits limits){
+        this(adjacency, source, target, limits, null);
+    }
+
+    /**
+     * Constructs a new PathIterator that uses a component index to skip vertices that cannot reach the target.
+     * @param adjacency The adjacency store to search.
+     * @param source The vertex every path starts at.
+     * @param target The vertex every path ends at.
+     * @param limits The bounds on path length, number of paths and running time.
+     * @param sccIndex A component index of `adjacency`, or null to search without pruning. Only a copy of which vertices
+     *        reach the target is kept, and a stale index means no pruning.
+     * @custom.precondition `source` and `target` are valid vertex slots of `adjacency` and `limits` is non-null.
+     * @custom.postcondition An iterator positioned before the first path is created. A path from a vertex to itself is the single vertex.
+     */
+    public PathIterator(Adjacency adjacency, int source, int target, SearchLimits limits, SccIndex sccIndex){
+        this(adjacency, new int[]{source}, target, limits, sccIndex == null ? null : sccIndex.verticesReaching(target), limits.deadline());
+    }
+
+    /**
+     * Constructs a new PathIterator over the simple paths that start with a fixed prefix, so that separate workers can each take one branch of the search.
+     * @param adjacency The adjacency store to search.
+     * @param prefix The vertices every path starts with. They are never revisited.
+     * @param target The vertex every path ends at.
+     * @param limits The bounds on path length (counted from the first prefix vertex) and number of paths. Its time limit is replaced by `deadline`.
+     * @param reachesTarget The vertices that can reach `target`, as returned by SccIndex.verticesReaching, or null to search without pruning.
+     * @param deadline The System.nanoTime() value at which the search stops, or Long.MAX_VALUE for no time limit, so that the workers share one time limit.
+     * @custom.precondition 'prefix' is a non-empty simple path in `adjacency`.
+     * @custom.postcondition An iterator positioned before the first path is created. If the prefix already ends at `target`, it is the only path.
+     */
+    public PathIterator(Adjacency adjacency, int[] prefix, int target, SearchLimits limits, long[] reachesTarget, long deadline){
+        this.adjacency = adjacency;
+        this.reachesTarget = reachesTarget;
+        this.target = target;
+        this.maxDepth = limits.getMaxDepth();
+        this.maxResults = limits.getMaxResults();
+        this.deadline = deadline;
+        this.onPath = new long[(adjacency.getVertexCount() >>> 6) + 1];
+        this.base = prefix.length - 1;
+        if (prefix.length >= path.length){
+            path = new int[prefix.length * 2];
+            neighbors = new int[prefix.length * 2][];
+            cursor = new int[prefix.length * 2];
+        }
+        for (int i = 0; i < prefix.length; i++){
+            path[i] = prefix[i];
+            onPath[prefix[i] >>> 6] |= 1L << prefix[i];
+        }
+        int last = prefix[base];
+        if (last == target){
+            resultLength = prefix.length;
+            ready = true;
+            depth = base - 1;
+        } else if (base > maxDepth || !mayReachTarget(last)){
+            finished = true;
+            depth = base - 1;
+        } else {
+            neighbors[base] = adjacency.outNeighbors(last);
+            cursor[base] = 0;
+            depth = base;
+        }
+    }
+
+    @Override
+    public boolean hasNext(){
+        if (!ready && !finished){
+            ready = advance();
+        }
+        return ready;
+    }
+
+    @Override
+    public int[] next(){
+        if (!hasNext()){
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        produced++;
+        return Arrays.copyOf(path, resultLength);
+    }
+
+    /**
+     * Counts the remaining paths without building them.
+     * @return The number of paths the iterator would still have produced.
+     * @custom.postcondition The iterator is exhausted.
+     */
+    public long count(){
+        long count = 0;
+        while (hasNext()){
+            ready = false;
+            produced++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Tells whether the search was cut short by its result count or time limit.
+     * @return True if some paths may not have been produced because a limit was reached.
+     */
+    public boolean isTruncated(){
+        return truncated;
+    }
+
+    /**
+     * Moves the depth-first search forward to the next complete path.
+     * @return True if a path was found and is held in the path stack, false if the search is over.
+     */
+    private boolean advance(){
+        if (produced >= maxResults){
+            truncated = depth >= base;
+            finished = true;
+            return false;
+        }
+        while (depth >= base){
+            if (deadline != Long.MAX_VALUE && (++steps & 1023) == 0 && System.nanoTime() - deadline > 0){
+                truncated = true;
+                break;
+            }
+            int[] row = neighbors[depth];
+            if (cursor[depth] < row.length){
+                int w = row[cursor[depth]++];
+                if (w >>> 6 < onPath.length && (onPath[w >>> 6] & (1L << w)) != 0){
+                    continue;
+                }
+                if (w == target){
+                    if (depth + 1 <= maxDepth){
+                        path[depth + 1] = w;
+                        resultLength = depth + 2;
+                        return true;
+                    }
+                    continue;
+                }
+                if (depth + 2 <= maxDepth && mayReachTarget(w)){
+                    push(w);
+                }
+            } else {
+                int v = path[depth];
+                onPath[v >>> 6] &= ~(1L << v);
+                depth--;
+            }
+        }
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Extends the current path by one vertex.
+     */
+    private void push(int w){
+        depth++;
+        if (depth + 1 >= path.length){
+            path = Arrays.copyOf(path, path.length * 2);
+            neighbors = Arrays.copyOf(neighbors, neighbors.length * 2);
+            cursor = Arrays.copyOf(cursor, cursor.length * 2);
+        }
+        path[depth] = w;
+        neighbors[depth] = adjacency.outNeighbors(w);
+        cursor[depth] = 0;
+        if (w >>> 6 >= onPath.length){
+            onPath = Arrays.copyOf(onPath, Math.max(onPath.length * 2, (w >>> 6) + 1));
+        }
+        onPath[w >>> 6] |= 1L << w;
+    }
+
+    /**
+     * Checks whether a vertex can reach the target according to the pruning data. Vertices added after the data was
+     * copied are not covered by it, so they are always searched.
+     */
+    private boolean mayReachTarget(int v){
+        return reachesTarget == null || v >>> 6 >= reachesTarget.length || (reachesTarget[v >>> 6] & (1L << v)) != 0;
+    }
+}
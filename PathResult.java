@@ -0,0 +1,40 @@
+/**
+ * Represents a path found in the FollowGraph as a sequence of user indices.
+ */
+public class PathResult{
+    private final int[] path;
+
+    /**
+     * Constructs a new PathResult from the indices of the users along the path.
+     * @param path The user indices from the source to the destination.
+     * @custom.precondition 'path' is non-null and contains at least one index.
+     * @custom.postcondition A PathResult wrapping the given indices is created.
+     */
+    public PathResult(int[] path){
+        this.path = path;
+    }
+
+    /**
+     * Gets the indices of the users along the path, from the source to the destination.
+     * @return The user indices. The array is shared and must not be modified.
+     */
+    public int[] getPath(){
+        return path;
+    }
+
+    /**
+     * Gets the number of follow edges along the path.
+     * @return The hop count, which is 0 when the source is the destination.
+     */
+    public int getHops(){
+        return path.length - 1;
+    }
+
+    /**
+     * Gets the number of users along the path, including the source and the destination.
+     * @return The number of users in the path.
+     */
+    public int getLength(){
+        return path.length;
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * "Who to follow" recommendations by friend-of-friend counting, with a per-user result cache.
+ * The candidates for a user are the users followed by the users they follow, scored by how many of their followees
+ * follow each one, leaving out the user and everyone they already follow. Scores are counted in a primitive array that
+ * each thread reuses, with epoch stamps in place of clearing it, and the best k are kept in a bounded heap of packed longs,
+ * so a request allocates only its result.
+ * Results are cached per user. A user's recommendations only depend on their own following row and on the rows of the
+ * users they follow, so every row carries the time it last changed and a cached result is used only while none of those
+ * rows has changed since it was computed. Checking that takes one read per followee, where recomputing scans every
+ * followee's row, and a change to a row never has to find the caches that depend on it.
+ */
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Recommender{
+    private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final AtomicLong clock = new AtomicLong();
+    private long[] rowChanged = new long[0];
+    private final ConcurrentHashMap<Integer, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * A cached result: the ids of the best candidates, best first, for the k it was computed with.
+     */
+    private static final class Entry{
+        final long computedAt;
+        final int k;
+        final int[] ids;
+
+        Entry(long computedAt, int k, int[] ids){
+            this.computedAt = computedAt;
+            this.k = k;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Gets the best recommendations for a user, from the cache if none of the rows they depend on has changed.
+     * @param adjacency The adjacency store to search.
+     * @param user The slot of the user.
+     * @param k The greatest number of recommendations to return.
+     * @param idOfSlot The id of the user in every slot. Ties in score go to the smaller id.
+     * @return The ids of up to k recommended users, best first.
+     * @custom.precondition `user` is the slot of an existing user, `k` is positive, and the caller keeps slots from being renumbered or reused meanwhile.
+     * @custom.postcondition The adjacency store is unchanged.
+     */
+    public int[] recommend(Adjacency adjacency, int user, int k, int[] idOfSlot){
+        Entry entry = cache.get(user);
+        if (entry != null && (k <= entry.k || entry.ids.length < entry.k) && isFresh(adjacency, user, entry.computedAt)){
+            return entry.ids.length <= k ? entry.ids.clone() : Arrays.copyOf(entry.ids, k);
+        }
+        // Read the clock before the rows, so that a change the search misses is stamped later than the result.
+        long now = clock.get();
+        int[] ids = WORKSPACE.get().topCandidates(adjacency, user, k, idOfSlot);
+        cache.put(user, new Entry(now, k, ids));
+        return ids.clone();
+    }
+
+    /**
+     * Records that a user's following row has changed, which makes stale every cached result that depends on it.
+     * @param v The slot whose row changed.
+     * @custom.precondition `v` is below the capacity given to resize, and changes to the same row are not recorded concurrently.
+     */
+    public void rowChanged(int v){
+        STAMPS.setRelease(rowChanged, v, clock.incrementAndGet());
+    }
+
+    /**
+     * Makes room for the rows of new slots.
+     * @param slots The number of slots.
+     * @custom.precondition No other method runs meanwhile.
+     */
+    public void resize(int slots){
+        if (slots > rowChanged.length){
+            rowChanged = Arrays.copyOf(rowChanged, Math.max(slots, rowChanged.length * 2));
+        }
+    }
+
+    /**
+     * Drops every cached result, after users have been removed or renumbered or after a bulk change.
+     */
+    public void clear(){
+        cache.clear();
+    }
+
+    /**
+     * Checks that neither the user's row nor the rows of the users they follow have changed since a time.
+     */
+    private boolean isFresh(Adjacency adjacency, int user, long since){
+        if (changedAt(user) > since){
+            return false;
+        }
+        for (int f : adjacency.outNeighbors(user)){
+            if (changedAt(f) > since){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the time a row last changed. Rows that have not changed since the slots were last resized read as 0.
+     */
+    private long changedAt(int v){
+        long[] stamps = rowChanged;
+        return v < stamps.length ? (long) STAMPS.getAcquire(stamps, v) : 0;
+    }
+
+    /**
+     * The per-thread counting array, stamps and heap.
+     */
+    private static final class Workspace{
+        private int[] stamp = new int[0];
+        private int[] count = new int[0];
+        private int[] touched = new int[0];
+        private long[] heap = new long[0];
+        private int epoch = 0;
+
+        /**
+         * Counts the friend-of-friend candidates of a user and returns the ids of the best k.
+         */
+        int[] topCandidates(Adjacency adjacency, int user, int k, int[] idOfSlot){
+            prepare(adjacency.getVertexCount());
+            int[] following = adjacency.outNeighbors(user);
+            // The user and their followees are stamped with a count of -1, so they are never counted as candidates.
+            stamp[user] = epoch;
+            count[user] = -1;
+            for (int f : following){
+                stamp[f] = epoch;
+                count[f] = -1;
+            }
+            int candidates = 0;
+            for (int f : following){
+                for (int w : adjacency.outNeighbors(f)){
+                    if (stamp[w] != epoch){
+                        stamp[w] = epoch;
+                        count[w] = 1;
+                        touched[candidates++] = w;
+                    } else if (count[w] > 0){
+                        count[w]++;
+                    }
+                }
+            }
+            if (heap.length < k){
+                heap = new long[Math.min(k, Math.max(16, candidates))];
+            }
+            // Each key packs the score above the inverted id, so a larger key is a better candidate.
+            int size = 0;
+            for (int i = 0; i < candidates; i++){
+                int w = touched[i];
+                long key = ((long) count[w] << 32) | (~idOfSlot[w] & 0xFFFFFFFFL);
+                if (size < k){
+                    if (size == heap.length){
+                        heap = Arrays.copyOf(heap, Math.min(k, size * 2));
+                    }
+                    heap[size] = key;
+                    siftUp(size++);
+                } else if (key > heap[0]){
+                    heap[0] = key;
+                    siftDown(0, size);
+                }
+            }
+            int[] ids = new int[size];
+            for (int i = size - 1; i >= 0; i--){
+                ids[i] = ~(int) heap[0];
+                heap[0] = heap[i];
+                siftDown(0, i);
+            }
+            return ids;
+        }
+
+        /**
+         * Restores the min-heap order above a new key.
+         */
+        private void siftUp(int i){
+            long key = heap[i];
+            while (i > 0){
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= key){
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = key;
+        }
+
+        /**
+         * Restores the min-heap order below a replaced key.
+         */
+        private void siftDown(int i, int size){
+            long key = heap[i];
+            while (true){
+                int child = 2 * i + 1;
+                if (child >= size){
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]){
+                    child++;
+                }
+                if (key <= heap[child]){
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = key;
+        }
+
+        /**
+         * Grows the arrays to the graph size and starts a new epoch so old stamps become stale.
+         */
+        private void prepare(int n){
+            if (stamp.length < n){
+                int length = Math.max(n, stamp.length * 2);
+                stamp = Arrays.copyOf(stamp, length);
+                count = new int[length];
+                touched = new int[length];
+            }
+            if (epoch == Integer.MAX_VALUE){
+                Arrays.fill(stamp, 0);
+                epoch = 0;
+            }
+            epoch++;
+        }
+    }
+}
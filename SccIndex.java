@@ -0,0 +1,356 @@
+/**
+ * Strongly connected component index of a FollowGraph.
+ * Components are found with Tarjan's algorithm, and the condensation DAG between them is kept as a reachability bitset per
+ * component, so "can A reach B" is an O(1) lookup. Adding an edge or a vertex updates the index in place unless the edge
+ * merges components; removing an edge only invalidates it when it was the last edge between two components or lay inside
+ * one. An invalidated index reports isStale() and has to be rebuilt.
+ * A reachability row is never changed once published: an added edge publishes grown copies of the rows it extends, so
+ * canReach can be asked while an update runs. A search that outlives the caller's lock still takes its own copy of what
+ * it needs through verticesReaching, since later updates can make it reach more.
+ */
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public class SccIndex{
+    private static final VarHandle REACH = MethodHandles.arrayElementVarHandle(long[][].class);
+
+    private int[] component;
+    private int vertexCount;
+    private int[] componentSize;
+    private int componentCount;
+    private long[][] reach;
+    private final LongIntMap dagEdges = new LongIntMap();
+    private boolean stale = false;
+    private int[][] builtRows;
+
+    /**
+     * Builds the component index for the given adjacency store.
+     * @param adjacency The adjacency store to index.
+     * @custom.precondition 'adjacency' is non-null.
+     * @custom.postcondition Every vertex is assigned a component, and the reachability between components is known. The
+     *                        rows that were read are kept until catchUp is called.
+     */
+    public SccIndex(Adjacency adjacency){
+        int n = adjacency.getVertexCount();
+        vertexCount = n;
+        component = new int[n];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        int[][] neighbors = new int[n][];
+        // Each row is read once and kept, so the index is consistent even if connections change while it is built.
+        int[][] rows = new int[n][];
+        int[] cursor = new int[n];
+        Arrays.fill(index, -1);
+        int nextIndex = 0;
+        int top = 0;
+        for (int root = 0; root < n; root++){
+            if (index[root] != -1){
+                continue;
+            }
+            int depth = 0;
+            callStack[0] = root;
+            neighbors[0] = rows[root] = adjacency.outNeighbors(root);
+            cursor[0] = 0;
+            index[root] = low[root] = nextIndex++;
+            stack[top++] = root;
+            onStack[root] = true;
+            while (depth >= 0){
+                int v = callStack[depth];
+                if (cursor[depth] < neighbors[depth].length){
+                    int w = neighbors[depth][cursor[depth]++];
+                    if (index[w] == -1){
+                        depth++;
+                        callStack[depth] = w;
+                        neighbors[depth] = rows[w] = adjacency.outNeighbors(w);
+                        cursor[depth] = 0;
+                        index[w] = low[w] = nextIndex++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                    } else if (onStack[w]){
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    if (low[v] == index[v]){
+                        int w;
+                        do {
+                            w = stack[--top];
+                            onStack[w] = false;
+                            component[w] = componentCount;
+                        } while (w != v);
+                        componentCount++;
+                    }
+                    neighbors[depth] = null;
+                    depth--;
+                    if (depth >= 0){
+                        int parent = callStack[depth];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                }
+            }
+        }
+
+        componentSize = new int[componentCount];
+        int[][] dagOut = new int[componentCount][];
+        int[] dagOutSize = new int[componentCount];
+        for (int v = 0; v < n; v++){
+            componentSize[component[v]]++;
+            for (int w : rows[v]){
+                int from = component[v];
+                int to = component[w];
+                if (from != to && dagEdges.add(key(from, to), 1) == 1){
+                    if (dagOut[from] == null || dagOutSize[from] == dagOut[from].length){
+                        dagOut[from] = dagOut[from] == null ? new int[4] : Arrays.copyOf(dagOut[from], dagOutSize[from] * 2);
+                    }
+                    dagOut[from][dagOutSize[from]++] = to;
+                }
+            }
+        }
+        // Tarjan completes a component only after every component it points to, so lower ids are already final.
+        reach = new long[componentCount][];
+        for (int c = 0; c < componentCount; c++){
+            long[] bits = new long[(componentCount + 63) >>> 6];
+            bits[c >>> 6] |= 1L << c;
+            for (int i = 0; i < dagOutSize[c]; i++){
+                long[] other = reach[dagOut[c][i]];
+                for (int k = 0; k < other.length; k++){
+                    bits[k] |= other[k];
+                }
+            }
+            reach[c] = bits;
+        }
+        builtRows = rows;
+    }
+
+    /**
+     * Applies the connection changes made while the index was being built, then lets go of the rows it was built from.
+     * Each row was read once at some point during the build, so a change may or may not be in it. Whether the edge is in
+     * the row is the starting point, and each change is applied only if it changes that, so a change the build already saw
+     * is not counted twice and one it missed is not lost.
+     * @param changes The changes in the order they were made, three ints each: from, to, and 1 for an added edge or 0 for
+     *                a removed one.
+     * @param start The offset of the first change made after the build started.
+     * @param end The offset just past the last change.
+     * @custom.precondition No other change is made until this returns.
+     * @custom.postcondition The index matches the graph with every change applied, or it is stale.
+     */
+    public synchronized void catchUp(int[] changes, int start, int end){
+        int[][] rows = builtRows;
+        builtRows = null;
+        if (rows == null || start == end){
+            return;
+        }
+        LongIntMap present = new LongIntMap();
+        for (int i = start; i < end; i += 3){
+            int from = changes[i];
+            int to = changes[i + 1];
+            boolean added = changes[i + 2] != 0;
+            int known = present.get(key(from, to), -1);
+            boolean inIndex = known == -1 ? from < rows.length && rows[from] != null && Arrays.binarySearch(rows[from], to) >= 0 : known == 1;
+            if (added == inIndex){
+                continue;
+            }
+            present.put(key(from, to), added ? 1 : 0);
+            if (added){
+                edgeAdded(from, to);
+            } else {
+                edgeRemoved(from, to);
+            }
+        }
+    }
+
+    /**
+     * Tells whether the index no longer matches the graph and must be rebuilt.
+     * @return True if the index is stale.
+     */
+    public synchronized boolean isStale(){
+        return stale;
+    }
+
+    /**
+     * Gets the number of strongly connected components.
+     * @return The number of components.
+     */
+    public int getComponentCount(){
+        return componentCount;
+    }
+
+    /**
+     * Gets the component a vertex belongs to.
+     * @param v The vertex.
+     * @return The id of the vertex's component.
+     * @custom.precondition `v` is a valid vertex slot and the index is not stale.
+     */
+    public int componentOf(int v){
+        return component[v];
+    }
+
+    /**
+     * Gets the number of vertices in a component.
+     * @param c The component id.
+     * @return The number of vertices in the component.
+     * @custom.precondition `c` is a valid component id and the index is not stale.
+     */
+    public int componentSize(int c){
+        return componentSize[c];
+    }
+
+    /**
+     * Checks whether any vertex of one component can reach the vertices of another.
+     * @param from The source component id.
+     * @param to The destination component id.
+     * @return True if `to` can be reached from `from`. Every component reaches itself.
+     * @custom.precondition `from` and `to` are valid component ids and the index is not stale.
+     */
+    public boolean componentReaches(int from, int to){
+        long[] bits = (long[]) REACH.getAcquire(reach, from);
+        int w = to >>> 6;
+        return w < bits.length && (bits[w] & (1L << to)) != 0;
+    }
+
+    /**
+     * Checks whether one vertex can reach another.
+     * @param from The source vertex.
+     * @param to The destination vertex.
+     * @return True if there is a path from `from` to `to`.
+     * @custom.precondition `from` and `to` are valid vertex slots and the index is not stale.
+     */
+    public boolean canReach(int from, int to){
+        return componentReaches(component[from], component[to]);
+    }
+
+    /**
+     * Copies out the set of vertices that can reach a given vertex, as it stands now.
+     * @param target The vertex to be reached.
+     * @return A bitset with bit v set if vertex v can reach `target`, covering every vertex indexed so far, or null if the
+     *         index is stale. The bitset belongs to the caller and is not changed by later updates to the index.
+     * @custom.precondition `target` is a valid vertex slot.
+     */
+    public synchronized long[] verticesReaching(int target){
+        if (stale){
+            return null;
+        }
+        int targetComponent = component[target];
+        boolean[] reaches = new boolean[componentCount];
+        for (int c = 0; c < componentCount; c++){
+            reaches[c] = componentReaches(c, targetComponent);
+        }
+        long[] bits = new long[(vertexCount + 63) >>> 6];
+        for (int v = 0; v < vertexCount; v++){
+            if (reaches[component[v]]){
+                bits[v >>> 6] |= 1L << v;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Records a new vertex with no edges as a component of its own.
+     * @param v The new vertex.
+     * @custom.precondition `v` is the next vertex slot after the ones already indexed.
+     * @custom.postcondition The vertex is indexed as a single-vertex component.
+     */
+    public synchronized void vertexAdded(int v){
+        if (v != vertexCount){
+            stale = true;
+            return;
+        }
+        if (v >= component.length){
+            component = Arrays.copyOf(component, Math.max(16, v * 2));
+        }
+        vertexCount++;
+        int c = componentCount++;
+        component[v] = c;
+        if (c >= componentSize.length){
+            componentSize = Arrays.copyOf(componentSize, Math.max(4, c * 2));
+            reach = Arrays.copyOf(reach, Math.max(4, c * 2));
+        }
+        componentSize[c] = 1;
+        reach[c] = new long[(c >>> 6) + 1];
+        reach[c][c >>> 6] |= 1L << c;
+    }
+
+    /**
+     * Updates the index after an edge has been added.
+     * @param from The vertex that started following.
+     * @param to The vertex being followed.
+     * @custom.precondition The index matched the graph before the edge was added.
+     * @custom.postcondition The index matches the graph, or it is marked stale if the edge merged components.
+     */
+    public synchronized void edgeAdded(int from, int to){
+        int cu = component[from];
+        int cv = component[to];
+        if (cu == cv || stale){
+            return;
+        }
+        if (componentReaches(cv, cu)){
+            stale = true;
+            return;
+        }
+        if (dagEdges.add(key(cu, cv), 1) > 1){
+            return;
+        }
+        long[] added = reach[cv];
+        for (int c = 0; c < componentCount; c++){
+            if (componentReaches(c, cu) && !covers(reach[c], added)){
+                long[] bits = Arrays.copyOf(reach[c], Math.max(reach[c].length, added.length));
+                for (int k = 0; k < added.length; k++){
+                    bits[k] |= added[k];
+                }
+                REACH.setRelease(reach, c, bits);
+            }
+        }
+    }
+
+    /**
+     * Updates the index after an edge has been removed.
+     * @param from The vertex that stopped following.
+     * @param to The vertex no longer followed.
+     * @custom.precondition The index matched the graph before the edge was removed.
+     * @custom.postcondition The index matches the graph, or it is marked stale if reachability may have changed.
+     */
+    public synchronized void edgeRemoved(int from, int to){
+        int cu = component[from];
+        int cv = component[to];
+        if (cu == cv){
+            stale = true;
+            return;
+        }
+        int count = dagEdges.get(key(cu, cv), 0);
+        if (count <= 1){
+            stale = true;
+        } else {
+            dagEdges.put(key(cu, cv), count - 1);
+        }
+    }
+
+    /**
+     * Marks the index as no longer matching the graph.
+     * @custom.postcondition The index is stale.
+     */
+    public synchronized void invalidate(){
+        stale = true;
+    }
+
+    /**
+     * Checks whether a reachability row already has every bit of another.
+     */
+    private static boolean covers(long[] bits, long[] other){
+        for (int k = 0; k < other.length; k++){
+            if ((other[k] & ~(k < bits.length ? bits[k] : 0)) != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs a vertex or component pair into one map key.
+     */
+    private static long key(int from, int to){
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Bounds on an exhaustive search over the FollowGraph, such as enumerating paths or loops.
+ */
+public class SearchLimits{
+    /**
+     * Limits that never stop a search early.
+     */
+    public static final SearchLimits NONE = new SearchLimits(Integer.MAX_VALUE, Long.MAX_VALUE, 0);
+
+    private final int maxDepth;
+    private final long maxResults;
+    private final long timeoutMillis;
+
+    /**
+     * Constructs a new set of search limits.
+     * @param maxDepth The largest number of follow edges a result may have.
+     * @param maxResults The largest number of results to produce.
+     * @param timeoutMillis The longest time in milliseconds the search may run, or 0 for no time limit.
+     * @custom.precondition 'maxDepth' and 'maxResults' are positive and 'timeoutMillis' is non-negative.
+     * @custom.postcondition A SearchLimits object with the given bounds is created.
+     */
+    public SearchLimits(int maxDepth, long maxResults, long timeoutMillis){
+        this.maxDepth = maxDepth;
+        this.maxResults = maxResults;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Gets the largest number of follow edges a result may have.
+     * @return The maximum depth.
+     */
+    public int getMaxDepth(){
+        return maxDepth;
+    }
+
+    /**
+     * Gets the largest number of results to produce.
+     * @return The maximum number of results.
+     */
+    public long getMaxResults(){
+        return maxResults;
+    }
+
+    /**
+     * Gets the longest time the search may run.
+     * @return The timeout in milliseconds, or 0 for no time limit.
+     */
+    public long getTimeoutMillis(){
+        return timeoutMillis;
+    }
+
+    /**
+     * Computes the System.nanoTime() value at which a search starting now must stop.
+     * @return The deadline, or Long.MAX_VALUE if there is no time limit.
+     */
+    public long deadline(){
+        return timeoutMillis == 0 ? Long.MAX_VALUE : System.nanoTime() + timeoutMillis * 1_000_000L;
+    }
+}
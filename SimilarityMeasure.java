@@ -0,0 +1,42 @@
+/**
+ * The ways FollowGraph can score how alike two users' sets of followers are, from the size of each set and the size
+ * of their intersection. Every score is between 0 and 1, and two users with no followers at all score 0.
+ */
+public enum SimilarityMeasure{
+    /**
+     * The Jaccard index: the intersection over the union. 1 when the sets are equal and 0 when they are disjoint.
+     */
+    JACCARD{
+        @Override
+        public double score(int common, int sizeA, int sizeB){
+            return ratio(common, sizeA + sizeB - common);
+        }
+    },
+    /**
+     * The overlap coefficient: the intersection over the smaller set. 1 when either set holds the other, so a small
+     * audience inside a large one scores as high as two equal ones.
+     */
+    OVERLAP{
+        @Override
+        public double score(int common, int sizeA, int sizeB){
+            return ratio(common, Math.min(sizeA, sizeB));
+        }
+    };
+
+    /**
+     * Scores two sets.
+     * @param common The number of elements in both sets.
+     * @param sizeA The number of elements in the first set.
+     * @param sizeB The number of elements in the second set.
+     * @return The score, from 0 to 1.
+     * @custom.precondition All three counts are non-negative.
+     */
+    public abstract double score(int common, int sizeA, int sizeB);
+
+    /**
+     * Divides the intersection by a set size, as 0 for empty sets and capped at 1 for counts read while edges changed.
+     */
+    private static double ratio(int common, int size){
+        return size <= 0 ? 0 : Math.min(1.0, (double) common / size);
+    }
+}
@@ -1,32 +1,51 @@
 /**
  * Represents a user in FollowGraph.
+ * A user has two numbers, both handed out by the graph it belongs to: a stable id that is never reused or changed, and
+ * an index position, the slot of its row in the adjacency store, which changes when the graph is compacted and can be
+ * reused for a later user once this one is removed.
  */
 import java.io.Serializable;
 
 public class User implements Serializable{
+    // Kept at the value of the original class, so that users saved by the first version of the program can still be read.
+    private static final long serialVersionUID = 2638732568886096490L;
+
     private String userName = "";
     private int indexPos = 0;
-    private static int userCount = 0;
+    private int id = -1;
 
     /**
-     * Constructs a new User object.
+     * Constructs a new User object that does not belong to a graph yet.
      * @param name The username for this user.
      * @custom.precondition `name` is a non-null, non-empty String.
-     * @custom.postcondition A new User object is created with the given username, and the user count is incremented. The `indexPos` is set to the current `userCount` before the increment.
+     * @custom.postcondition A new User object is created with the given username, no id and index position 0.
      */
     public User(String name){
         userName = name;
-        this.indexPos = userCount;
-        userCount++;
     }
 
     /**
-     * Gets the total number of users created.
-     * @return The total user count.
-     * @custom.postcondition The current value of the static variable 'userCount' is returned. The object's state remains unchanged.
+     * Constructs a user with the id its graph handed out.
+     * @param name The username for this user.
+     * @param id The user's id in its graph.
+     * @custom.precondition `name` is non-null and `id` is not used by another user of the graph.
+     * @custom.postcondition A User with the given username and id is created.
+     */
+    User(String name, int id){
+        userName = name;
+        this.id = id;
+    }
+
+    /**
+     * Constructs a copy of a user, for a graph that renumbers its users while a snapshot still reads the originals.
+     * @param other The user to copy.
+     * @custom.precondition `other` is non-null.
+     * @custom.postcondition A User with the same username, id and index position is created.
      */
-    public static int getUserCount() {
-        return userCount;
+    User(User other){
+        userName = other.userName;
+        indexPos = other.indexPos;
+        id = other.id;
     }
 
     /**
@@ -38,6 +57,23 @@ public class User implements Serializable{
         return userName;
     }
 
+    /**
+     * Gets the stable id of this user, which its graph never changes or hands out again.
+     * @return The id, or -1 if the user does not belong to a graph.
+     * @custom.postcondition The id is returned. The state of the User object remains unchanged.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets the id of a user restored from a file that did not store ids.
+     * @param id The id.
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Gets the index position of this user in the FollowGraph's adjacency matrix.
      * @return The index position.
@@ -57,23 +93,13 @@ public class User implements Serializable{
         this.indexPos = indexPos;
     }
 
-    /**
-     * Sets the static user count to provided value.
-     * @param new_count The new user count.
-     * @custom.precondition new_count should be non-negative
-     * @custom.postcondition The static user count is updated to the new value provided.
-     */
-    public static void setUserCount(int new_count){
-        userCount = new_count;
-    }
-
     /**
      * Returns a string representation of the user.
-     * @return A string containing the username, index position, and total user count.
-     * @custom.postcondition A string representation of the User object is returned, containing information about the username, index position and user count. The object's state remains unchanged.
+     * @return A string containing the username, id and index position.
+     * @custom.postcondition A string representation of the User object is returned, containing information about the username, id and index position. The object's state remains unchanged.
      */
     @Override
     public String toString() {
-        return "Username: " + userName + ", index: " + indexPos + ", user count: " + userCount;
+        return "Username: " + userName + ", id: " + id + ", index: " + indexPos;
     }
 }
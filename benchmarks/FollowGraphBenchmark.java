@@ -0,0 +1,680 @@
+/**
+ * Benchmarks the public FollowGraph operations on synthetic graphs and writes the results as JSON.
+ * Every combination of graph shape, size and storage engine is generated from a fixed seed, and every benchmark runs in
+ * its own forked JVM with warmup iterations before the measured ones, as JMH does. JMH itself cannot be used here because
+ * it refuses benchmark classes in the default package, which is where the FollowGraph classes live. The JSON file follows
+ * JMH's result format, so the usual JMH result viewers and comparison scripts can read it.
+ *
+ * Operations that read the graph run against one shared graph. Operations that change it get a freshly built graph in
+ * every iteration, and operations that take a whole graph's worth of work, such as loading or compacting, run once per
+ * iteration ("ss" mode). Path and loop enumeration are bounded by SEARCH_LIMITS so that they finish on every shape.
+ *
+ * Usage: java FollowGraphBenchmark [-shapes powerlaw,smallworld,cliques] [-sizes 1000,10000,100000] [-storage list,bitset]
+ *        [-ops name,...] [-wi 3] [-i 5] [-t 1000] [-f 1] [-seed 42] [-json benchmark-results.json] [-list]
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class FollowGraphBenchmark{
+    private static final int QUERY_COUNT = 1 << 12;
+    private static final int MUTATION_COUNT = 1 << 16;
+    private static final SearchLimits SEARCH_LIMITS = new SearchLimits(4, 10_000, 0);
+    private static final LinkedHashMap<String, Operation> OPERATIONS = new LinkedHashMap<>();
+    private static final PrintStream REPORT = System.out;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * Keeps the result of every call reachable, so the JIT cannot drop calls whose results go unused.
+     */
+    private static Object sink;
+
+    static {
+        read("getUserCount", (f, i) -> f.graph.getUserCount());
+        read("getConnectionCount", (f, i) -> f.graph.getConnectionCount());
+        read("getUsers", (f, i) -> f.graph.getUsers());
+        read("checkIfUserExists", (f, i) -> f.graph.checkIfUserExists(f.source(i)));
+        read("hasConnection", (f, i) -> f.graph.hasConnection(f.source(i), f.target(i)));
+        read("getFollowerCount", (f, i) -> f.graph.getFollowerCount(f.source(i)));
+        read("getFollowingCount", (f, i) -> f.graph.getFollowingCount(f.source(i)));
+        read("getAllFollowers", (f, i) -> f.graph.getAllFollowers(f.source(i)));
+        read("getAllFollowing", (f, i) -> f.graph.getAllFollowing(f.source(i)));
+        read("getMutualFollows", (f, i) -> f.graph.getMutualFollows(f.source(i)));
+        read("getCommonFollowers", (f, i) -> f.graph.getCommonFollowers(f.source(i), f.target(i)));
+        read("getCommonFollowing", (f, i) -> f.graph.getCommonFollowing(f.source(i), f.target(i)));
+        read("isMutual", (f, i) -> f.graph.isMutual(f.source(i), f.target(i)));
+        read("getFollowerSimilarity", (f, i) -> f.graph.getFollowerSimilarity(f.source(i), f.target(i), SimilarityMeasure.JACCARD));
+        read("shortestPath", (f, i) -> f.graph.shortestPath(f.source(i), f.target(i)));
+        read("shortestPathResult", (f, i) -> f.graph.shortestPathResult(f.source(i), f.target(i)));
+        read("resolve", (f, i) -> f.graph.resolve(f.source(i)));
+        read("followersOf", (f, i) -> f.graph.followersOf(f.sourceId(i)));
+        read("followingOf", (f, i) -> f.graph.followingOf(f.sourceId(i)));
+        read("shortestPathById", (f, i) -> f.graph.shortestPath(f.sourceId(i), f.targetId(i)));
+        read("recommend", (f, i) -> f.graph.recommend(f.source(i), 10));
+        read("recommendById", (f, i) -> f.graph.recommend(f.sourceId(i), 10));
+        read("followerSimilarityBatch", (f, i) -> f.graph.followerSimilarity(f.sourceId(i), f.targetIds, SimilarityMeasure.JACCARD));
+        read("getDistance", (f, i) -> f.graph.getDistance(f.source(i), f.target(i))).maxSize = 1 << 13;
+        read("canReach", (f, i) -> f.graph.canReach(f.source(i), f.target(i)));
+        read("getUsersWithinHops", (f, i) -> f.graph.getUsersWithinHops(f.source(i), 2));
+        read("withinHops", (f, i) -> f.graph.withinHops(f.sourceId(i), 2));
+        read("getHopCounts", (f, i) -> f.graph.getHopCounts(f.source(i), 3));
+        read("getComponentId", (f, i) -> f.graph.getComponentId(f.source(i)));
+        read("getComponentSize", (f, i) -> f.graph.getComponentSize(f.source(i)));
+        read("allPaths", (f, i) -> f.graph.streamAllPaths(f.source(i), f.target(i), SEARCH_LIMITS).collect(Collectors.toList()));
+        read("countAllPaths", (f, i) -> f.graph.countAllPaths(f.source(i), f.target(i), SEARCH_LIMITS));
+        read("findAllLoops", (f, i) -> f.graph.findAllLoops(SEARCH_LIMITS));
+        read("forEachLoop", (f, i) -> f.graph.forEachLoop(SEARCH_LIMITS, cycle -> true));
+        read("printAllUsers", (f, i) -> {
+            f.graph.printAllUsers(new FollowersComparator(f.graph));
+            return null;
+        });
+        read("snapshot", (f, i) -> f.graph.snapshot());
+
+        fresh("addUser", (f, i) -> {
+            f.graph.addUser("new" + i);
+            return null;
+        }).maxInvocations = MUTATION_COUNT;
+        fresh("removeUser", (f, i) -> {
+            f.graph.removeUser(f.names[f.userOrder[i]]);
+            return null;
+        }).maxInvocations = -2;
+        fresh("addConnection", (f, i) -> {
+            f.graph.addConnection(f.names[f.mutationFrom[i]], f.names[f.mutationTo[i]]);
+            return null;
+        }).maxInvocations = MUTATION_COUNT;
+        fresh("addConnectionById", (f, i) -> {
+            f.graph.addConnection(f.mutationFrom[i], f.mutationTo[i]);
+            return null;
+        }).maxInvocations = MUTATION_COUNT;
+        fresh("removeConnection", (f, i) -> {
+            int e = f.edgeOrder[i];
+            f.graph.removeConnection(f.names[f.spec.getFrom(e)], f.names[f.spec.getTo(e)]);
+            return null;
+        }).maxInvocations = -1;
+
+        single("build", null, (f, i) -> f.newGraph());
+        single("compact", f -> {
+            f.graph = f.newGraph();
+            f.graph.setCompactionThreshold(1.0);
+            for (int k = 0; k < f.names.length / 4; k++){
+                f.graph.removeUser(f.names[f.userOrder[k]]);
+            }
+        }, (f, i) -> {
+            f.graph.compact();
+            return null;
+        });
+        single("getComponentCount", f -> f.graph = f.newGraph(), (f, i) -> f.graph.getComponentCount());
+        single("getInfluenceScores", f -> f.graph = f.newGraph(), (f, i) -> f.graph.getInfluenceScores());
+        single("getInfluenceScoresAfterEdit", f -> {
+            f.graph = f.newGraph();
+            f.graph.getInfluenceScores();
+            for (int k = 0; k < 16; k++){
+                f.graph.addConnection(f.mutationFrom[k], f.mutationTo[k]);
+            }
+        }, (f, i) -> f.graph.getInfluenceScores());
+        single("buildDistanceTable", f -> f.graph = f.newGraph(), (f, i) -> {
+            f.graph.buildDistanceTable();
+            return null;
+        }).maxSize = 1 << 13;
+        single("loadAllUsers", f -> f.graph = new FollowGraph(f.newAdjacency()), (f, i) -> {
+            f.graph.loadAllUsers(f.usersFile().toString());
+            return null;
+        });
+        single("loadAllConnections", f -> f.graph = f.newUsersOnly(), (f, i) -> {
+            f.graph.loadAllConnections(f.connectionsFile().toString());
+            return null;
+        });
+        single("importUsers", f -> f.graph = new FollowGraph(f.newAdjacency()),
+                (f, i) -> new BulkImporter(f.graph).importUsers(f.usersFile().toString()));
+        single("importConnections", f -> f.graph = f.newUsersOnly(),
+                (f, i) -> new BulkImporter(f.graph).importConnections(f.connectionsFile().toString()));
+        single("saveSnapshot", f -> f.graph = f.shared(), (f, i) -> {
+            GraphSnapshot.write(f.graph, f.snapshotFile().toString());
+            return null;
+        });
+        single("loadSnapshot", f -> {
+            if (!Files.exists(f.snapshotFile())){
+                GraphSnapshot.write(f.shared(), f.snapshotFile().toString());
+            }
+        }, (f, i) -> GraphSnapshot.read(f.snapshotFile().toString()));
+    }
+
+    private FollowGraphBenchmark(){}
+
+    /**
+     * A call that is timed.
+     */
+    private interface Body{
+        Object run(Fixture fixture, int invocation) throws Exception;
+    }
+
+    /**
+     * Untimed preparation before each iteration.
+     */
+    private interface Setup{
+        void prepare(Fixture fixture) throws Exception;
+    }
+
+    /**
+     * One benchmarked operation and how it must be run.
+     */
+    private static class Operation{
+        final String name;
+        final Setup setup;
+        final Body body;
+        final boolean singleShot;
+        // Positive for a fixed bound, -1 for one call per connection, -2 for one call per half of the users.
+        int maxInvocations = Integer.MAX_VALUE;
+        int maxSize = Integer.MAX_VALUE;
+
+        Operation(String name, Setup setup, Body body, boolean singleShot){
+            this.name = name;
+            this.setup = setup;
+            this.body = body;
+            this.singleShot = singleShot;
+        }
+
+        int invocationLimit(Fixture fixture){
+            if (singleShot){
+                return 1;
+            }
+            if (maxInvocations == -1){
+                return fixture.spec.getEdgeCount();
+            }
+            if (maxInvocations == -2){
+                return fixture.spec.getUserCount() / 2;
+            }
+            return maxInvocations;
+        }
+    }
+
+    private static Operation read(String name, Body body){
+        return register(new Operation(name, f -> f.graph = f.shared(), body, false));
+    }
+
+    private static Operation fresh(String name, Body body){
+        return register(new Operation(name, f -> f.graph = f.newGraph(), body, false));
+    }
+
+    private static Operation single(String name, Setup setup, Body body){
+        return register(new Operation(name, setup == null ? f -> {} : setup, body, true));
+    }
+
+    private static Operation register(Operation operation){
+        OPERATIONS.put(operation.name, operation);
+        return operation;
+    }
+
+    /**
+     * The graph and the seeded query inputs for one shape, size and storage engine.
+     */
+    private static class Fixture{
+        final SyntheticGraph spec;
+        final String storage;
+        final String[] names;
+        final String[] sources = new String[QUERY_COUNT];
+        final String[] targets = new String[QUERY_COUNT];
+        final int[] sourceIds = new int[QUERY_COUNT];
+        final int[] targetIds = new int[QUERY_COUNT];
+        final int[] mutationFrom = new int[MUTATION_COUNT];
+        final int[] mutationTo = new int[MUTATION_COUNT];
+        final int[] userOrder;
+        final int[] edgeOrder;
+        private final Path directory;
+        private FollowGraph sharedGraph;
+        FollowGraph graph;
+
+        Fixture(SyntheticGraph spec, String storage, long seed) throws IOException{
+            this.spec = spec;
+            this.storage = storage;
+            int n = spec.getUserCount();
+            names = new String[n];
+            for (int v = 0; v < n; v++){
+                names[v] = SyntheticGraph.userName(v);
+            }
+            Random random = new Random(seed);
+            // Half of the queries follow an existing connection and half pick two users at random.
+            for (int i = 0; i < QUERY_COUNT; i++){
+                if (i % 2 == 0 && spec.getEdgeCount() > 0){
+                    int e = random.nextInt(spec.getEdgeCount());
+                    sourceIds[i] = spec.getFrom(e);
+                    targetIds[i] = spec.getTo(e);
+                } else {
+                    sourceIds[i] = random.nextInt(n);
+                    targetIds[i] = random.nextInt(n);
+                }
+                // A freshly built graph gives user v the id v.
+                sources[i] = names[sourceIds[i]];
+                targets[i] = names[targetIds[i]];
+            }
+            for (int i = 0; i < MUTATION_COUNT; i++){
+                mutationFrom[i] = random.nextInt(n);
+                mutationTo[i] = random.nextInt(n);
+            }
+            userOrder = permutation(n, random);
+            edgeOrder = permutation(spec.getEdgeCount(), random);
+            directory = Files.createTempDirectory("followgraph-bench");
+        }
+
+        String source(int i){
+            return sources[i & (QUERY_COUNT - 1)];
+        }
+
+        String target(int i){
+            return targets[i & (QUERY_COUNT - 1)];
+        }
+
+        int sourceId(int i){
+            return sourceIds[i & (QUERY_COUNT - 1)];
+        }
+
+        int targetId(int i){
+            return targetIds[i & (QUERY_COUNT - 1)];
+        }
+
+        Adjacency newAdjacency(){
+            return storage.equals("bitset") ? new BitsetAdjacency() : new AdjacencyList();
+        }
+
+        FollowGraph newGraph(){
+            return spec.build(newAdjacency());
+        }
+
+        FollowGraph newUsersOnly(){
+            FollowGraph result = new FollowGraph(newAdjacency());
+            for (String name : names){
+                result.addUser(name);
+            }
+            return result;
+        }
+
+        FollowGraph shared(){
+            if (sharedGraph == null){
+                sharedGraph = newGraph();
+            }
+            return sharedGraph;
+        }
+
+        Path usersFile() throws IOException{
+            Path file = directory.resolve("users.txt");
+            if (!Files.exists(file)){
+                spec.writeUsers(file);
+            }
+            return file;
+        }
+
+        Path connectionsFile() throws IOException{
+            Path file = directory.resolve("connections.txt");
+            if (!Files.exists(file)){
+                spec.writeConnections(file);
+            }
+            return file;
+        }
+
+        Path snapshotFile(){
+            return directory.resolve("graph.bin");
+        }
+
+        void delete() throws IOException{
+            try (Stream<Path> files = Files.list(directory)){
+                for (Path file : (Iterable<Path>) files::iterator){
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+
+        private static int[] permutation(int n, Random random){
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++){
+                order[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--){
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            return order;
+        }
+    }
+
+    /**
+     * The settings of a benchmark run, parsed from the command line.
+     */
+    private static class Options{
+        List<String> shapes = List.of("powerlaw", "smallworld", "cliques");
+        List<Integer> sizes = List.of(1_000, 10_000, 100_000);
+        List<String> storages = List.of("list");
+        List<String> operations = new ArrayList<>(OPERATIONS.keySet());
+        int warmupIterations = 3;
+        int iterations = 5;
+        long iterationMillis = 1000;
+        int forks = 1;
+        long seed = 42;
+        String json = "benchmark-results.json";
+        boolean list = false;
+        String[] child;
+
+        static Options parse(String[] args){
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++){
+                String value = i + 1 < args.length ? args[i + 1] : "";
+                switch (args[i]){
+                    case "-shapes": options.shapes = split(value); i++; break;
+                    case "-sizes": options.sizes = split(value).stream().map(Integer::parseInt).collect(Collectors.toList()); i++; break;
+                    case "-storage": options.storages = split(value); i++; break;
+                    case "-ops": options.operations = split(value); i++; break;
+                    case "-wi": options.warmupIterations = Integer.parseInt(value); i++; break;
+                    case "-i": options.iterations = Integer.parseInt(value); i++; break;
+                    case "-t": options.iterationMillis = Long.parseLong(value); i++; break;
+                    case "-f": options.forks = Integer.parseInt(value); i++; break;
+                    case "-seed": options.seed = Long.parseLong(value); i++; break;
+                    case "-json": options.json = value; i++; break;
+                    case "-list": options.list = true; break;
+                    case "-run":
+                        options.child = Arrays.copyOfRange(args, i + 1, i + 5);
+                        i += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            for (String name : options.operations){
+                if (!OPERATIONS.containsKey(name)){
+                    throw new IllegalArgumentException("Unknown operation: " + name + ". Use -list to see them.");
+                }
+            }
+            return options;
+        }
+
+        List<String> forwarded(){
+            return List.of("-wi", "" + warmupIterations, "-i", "" + iterations, "-t", "" + iterationMillis, "-seed", "" + seed);
+        }
+
+        private static List<String> split(String value){
+            return Arrays.stream(value.split(",")).map(String::strip).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * The measured iteration scores of one benchmark, one array per fork.
+     */
+    private static class Result{
+        final String shape;
+        final int size;
+        final String storage;
+        final Operation operation;
+        final List<double[]> forks = new ArrayList<>();
+
+        Result(String shape, int size, String storage, Operation operation){
+            this.shape = shape;
+            this.size = size;
+            this.storage = storage;
+            this.operation = operation;
+        }
+
+        double[] all(){
+            return forks.stream().flatMapToDouble(Arrays::stream).toArray();
+        }
+    }
+
+    /**
+     * Runs the benchmarks selected on the command line.
+     * @param args The options described in the class comment.
+     * @throws Exception If a benchmark cannot be set up or the results cannot be written.
+     */
+    public static void main(String[] args) throws Exception{
+        Options options = Options.parse(args);
+        if (options.list){
+            OPERATIONS.keySet().forEach(REPORT::println);
+            return;
+        }
+        if (options.child != null){
+            runChild(options);
+            return;
+        }
+        List<Result> results = new ArrayList<>();
+        for (String shape : options.shapes){
+            for (int size : options.sizes){
+                for (String storage : options.storages){
+                    SyntheticGraph spec = options.forks == 0 ? SyntheticGraph.generate(shape, size, options.seed) : null;
+                    Fixture fixture = spec == null ? null : new Fixture(spec, storage, options.seed);
+                    for (String name : options.operations){
+                        Operation operation = OPERATIONS.get(name);
+                        if (size > operation.maxSize){
+                            continue;
+                        }
+                        Result result = new Result(shape, size, storage, operation);
+                        if (fixture != null){
+                            result.forks.add(measure(fixture, operation, options));
+                        } else {
+                            for (int k = 0; k < options.forks; k++){
+                                double[] scores = fork(shape, size, storage, name, options);
+                                if (scores != null){
+                                    result.forks.add(scores);
+                                }
+                            }
+                        }
+                        if (!result.forks.isEmpty()){
+                            results.add(result);
+                            report(result);
+                        }
+                    }
+                    if (fixture != null){
+                        fixture.delete();
+                    }
+                }
+            }
+        }
+        writeJson(results, options);
+        REPORT.println("Wrote " + results.size() + " results to " + options.json);
+    }
+
+    /**
+     * Runs one benchmark in this JVM and prints its measured iterations for the parent process.
+     */
+    private static void runChild(Options options) throws Exception{
+        String shape = options.child[0];
+        int size = Integer.parseInt(options.child[1]);
+        String storage = options.child[2];
+        Fixture fixture = new Fixture(SyntheticGraph.generate(shape, size, options.seed), storage, options.seed);
+        try {
+            for (double score : measure(fixture, OPERATIONS.get(options.child[3]), options)){
+                REPORT.println("ITERATION " + score);
+            }
+        } finally {
+            fixture.delete();
+        }
+    }
+
+    /**
+     * Runs one benchmark in a new JVM with the same class path and JVM arguments as this one.
+     * @return The measured iteration scores, or null if the benchmark failed.
+     */
+    private static double[] fork(String shape, int size, String storage, String name, Options options) throws IOException, InterruptedException{
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(FollowGraphBenchmark.class.getName());
+        command.addAll(options.forwarded());
+        command.addAll(List.of("-run", shape, "" + size, storage, name));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        ArrayList<Double> scores = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))){
+            String line;
+            while ((line = reader.readLine()) != null){
+                if (line.startsWith("ITERATION ")){
+                    scores.add(Double.parseDouble(line.substring("ITERATION ".length())));
+                }
+            }
+        }
+        if (process.waitFor() != 0 || scores.isEmpty()){
+            REPORT.println("# " + shape + "/" + size + "/" + storage + " " + name + ": failed");
+            return null;
+        }
+        return scores.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * Runs the warmup and measured iterations of one benchmark.
+     * Output printed by the operation, such as the per-line messages of the loaders, is discarded.
+     * @return The average time per call of every measured iteration, in microseconds.
+     */
+    private static double[] measure(Fixture fixture, Operation operation, Options options) throws Exception{
+        double[] scores = new double[options.iterations];
+        System.setOut(DISCARD);
+        try {
+            for (int k = 0; k < options.warmupIterations; k++){
+                iteration(fixture, operation, options.iterationMillis);
+            }
+            for (int k = 0; k < options.iterations; k++){
+                scores[k] = iteration(fixture, operation, options.iterationMillis);
+            }
+        } finally {
+            System.setOut(REPORT);
+        }
+        return scores;
+    }
+
+    /**
+     * Runs one iteration: the untimed setup, then calls until the time is up or the invocation limit is reached.
+     * Cheap calls are counted in blocks of 64 between clock reads, so reading the clock does not dominate their timing.
+     * @return The average time per call in microseconds.
+     */
+    private static double iteration(Fixture fixture, Operation operation, long millis) throws Exception{
+        operation.setup.prepare(fixture);
+        int limit = operation.invocationLimit(fixture);
+        int mask = operation.maxInvocations == Integer.MAX_VALUE ? 63 : 0;
+        long start = System.nanoTime();
+        long deadline = start + millis * 1_000_000L;
+        int calls = 0;
+        do {
+            sink = operation.body.run(fixture, calls);
+            calls++;
+        } while (calls < limit && ((calls & mask) != 0 || System.nanoTime() < deadline));
+        return (System.nanoTime() - start) / 1e3 / calls;
+    }
+
+    /**
+     * Prints the summary line of one benchmark.
+     */
+    private static void report(Result result){
+        double[] scores = result.all();
+        REPORT.printf("# %s/%d/%s %-20s %14.3f +- %.3f us/op%n", result.shape, result.size, result.storage,
+                result.operation.name, mean(scores), error(scores));
+    }
+
+    /**
+     * Writes the results in JMH's JSON result format.
+     */
+    private static void writeJson(List<Result> results, Options options) throws IOException{
+        results.sort(Comparator.comparing((Result r) -> r.operation.name).thenComparing(r -> r.shape)
+                .thenComparingInt(r -> r.size).thenComparing(r -> r.storage));
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(options.json), StandardCharsets.UTF_8))){
+            out.println("[");
+            for (int k = 0; k < results.size(); k++){
+                Result result = results.get(k);
+                double[] scores = result.all();
+                double mean = mean(scores);
+                double error = error(scores);
+                out.println("    {");
+                out.println("        \"benchmark\" : " + quote(FollowGraphBenchmark.class.getName() + "." + result.operation.name) + ",");
+                out.println("        \"mode\" : " + quote(result.operation.singleShot ? "ss" : "avgt") + ",");
+                out.println("        \"threads\" : 1,");
+                out.println("        \"forks\" : " + options.forks + ",");
+                out.println("        \"jvm\" : " + quote(Paths.get(System.getProperty("java.home"), "bin", "java").toString()) + ",");
+                out.println("        \"jvmArgs\" : [" + ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                        .map(FollowGraphBenchmark::quote).collect(Collectors.joining(", ")) + "],");
+                out.println("        \"jdkVersion\" : " + quote(System.getProperty("java.version")) + ",");
+                out.println("        \"vmName\" : " + quote(System.getProperty("java.vm.name")) + ",");
+                out.println("        \"vmVersion\" : " + quote(System.getProperty("java.vm.version")) + ",");
+                out.println("        \"warmupIterations\" : " + options.warmupIterations + ",");
+                out.println("        \"warmupTime\" : " + quote(options.iterationMillis + " ms") + ",");
+                out.println("        \"measurementIterations\" : " + options.iterations + ",");
+                out.println("        \"measurementTime\" : " + quote(options.iterationMillis + " ms") + ",");
+                out.println("        \"params\" : {");
+                out.println("            \"shape\" : " + quote(result.shape) + ",");
+                out.println("            \"size\" : " + quote("" + result.size) + ",");
+                out.println("            \"storage\" : " + quote(result.storage) + ",");
+                out.println("            \"seed\" : " + quote("" + options.seed));
+                out.println("        },");
+                out.println("        \"primaryMetric\" : {");
+                out.println("            \"score\" : " + number(mean) + ",");
+                out.println("            \"scoreError\" : " + number(error) + ",");
+                out.println("            \"scoreConfidence\" : [" + number(mean - error) + ", " + number(mean + error) + "],");
+                out.println("            \"scoreUnit\" : \"us/op\",");
+                out.println("            \"rawData\" : [" + result.forks.stream()
+                        .map(fork -> "[" + Arrays.stream(fork).mapToObj(FollowGraphBenchmark::number).collect(Collectors.joining(", ")) + "]")
+                        .collect(Collectors.joining(", ")) + "]");
+                out.println("        },");
+                out.println("        \"secondaryMetrics\" : {}");
+                out.println(k + 1 < results.size() ? "    }," : "    }");
+            }
+            out.println("]");
+        }
+    }
+
+    private static double mean(double[] scores){
+        return Arrays.stream(scores).average().orElse(Double.NaN);
+    }
+
+    /**
+     * Computes the half-width of the 99.9% confidence interval of the mean, as JMH reports it.
+     */
+    private static double error(double[] scores){
+        int n = scores.length;
+        if (n < 2){
+            return Double.NaN;
+        }
+        double mean = mean(scores);
+        double sum = 0;
+        for (double score : scores){
+            sum += (score - mean) * (score - mean);
+        }
+        return studentT(n - 1) * Math.sqrt(sum / (n - 1) / n);
+    }
+
+    /**
+     * Gets the two-sided 99.9% quantile of Student's t distribution. Past 30 degrees of freedom the value at the next
+     * lower tabulated point is used, which slightly widens the interval.
+     */
+    private static double studentT(int degrees){
+        double[] table = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+                3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+        if (degrees <= table.length){
+            return table[degrees - 1];
+        }
+        if (degrees < 60){
+            return 3.646;
+        }
+        return degrees < 120 ? 3.460 : 3.373;
+    }
+
+    private static String number(double value){
+        return Double.isFinite(value) ? Double.toString(value) : quote(Double.toString(value));
+    }
+
+    private static String quote(String value){
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
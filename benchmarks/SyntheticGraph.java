@@ -0,0 +1,290 @@
+/**
+ * Seeded generator of synthetic follow graphs for benchmarking.
+ * A SyntheticGraph is a list of directed connections between users numbered from 0, named "user0", "user1" and so on.
+ * The same shape, size and seed always produce the same connections in the same order, so benchmark runs on different
+ * builds or storage engines see identical graphs.
+ */
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+public class SyntheticGraph{
+    private final String shape;
+    private final int userCount;
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private int edgeCount = 0;
+    private final HashSet<Long> edges = new HashSet<>();
+
+    private SyntheticGraph(String shape, int userCount){
+        this.shape = shape;
+        this.userCount = userCount;
+    }
+
+    /**
+     * Generates a graph of the named shape with its default parameters.
+     * @param shape "powerlaw", "smallworld" or "cliques".
+     * @param userCount The number of users.
+     * @param seed The random seed.
+     * @return The generated graph.
+     * @throws IllegalArgumentException if the shape is not known.
+     * @custom.precondition `userCount` is at least 8.
+     */
+    public static SyntheticGraph generate(String shape, int userCount, long seed){
+        switch (shape){
+            case "powerlaw":
+                return powerLaw(userCount, 5, 0.3, seed);
+            case "smallworld":
+                return smallWorld(userCount, 10, 0.1, seed);
+            case "cliques":
+                return cliques(userCount, 32, seed);
+            default:
+                throw new IllegalArgumentException("Unknown graph shape: " + shape);
+        }
+    }
+
+    /**
+     * Generates a Barabasi-Albert graph, whose follower counts follow a power law like those of a real social network.
+     * Each new user follows `m` existing users picked with probability proportional to their number of connections,
+     * and each of them follows back with probability `reciprocity`.
+     * @param userCount The number of users.
+     * @param m The number of users each new user follows.
+     * @param reciprocity The probability that a followed user follows back.
+     * @param seed The random seed.
+     * @return The generated graph.
+     * @custom.precondition `userCount` is greater than `m`, and `m` is positive.
+     */
+    public static SyntheticGraph powerLaw(int userCount, int m, double reciprocity, long seed){
+        SyntheticGraph graph = new SyntheticGraph("powerlaw", userCount);
+        Random random = new Random(seed);
+        // Every connection puts both ends in this list, so a uniform pick from it is a pick proportional to degree.
+        int[] ends = new int[16];
+        int endCount = 0;
+        for (int v = 0; v <= m; v++){
+            for (int w = 0; w <= m; w++){
+                if (v != w && graph.add(v, w)){
+                    if (endCount + 2 > ends.length){
+                        ends = Arrays.copyOf(ends, ends.length * 2);
+                    }
+                    ends[endCount++] = v;
+                    ends[endCount++] = w;
+                }
+            }
+        }
+        for (int v = m + 1; v < userCount; v++){
+            int added = 0;
+            while (added < m){
+                int w = ends[random.nextInt(endCount)];
+                if (!graph.add(v, w)){
+                    continue;
+                }
+                added++;
+                int extra = random.nextDouble() < reciprocity && graph.add(w, v) ? 4 : 2;
+                if (endCount + extra > ends.length){
+                    ends = Arrays.copyOf(ends, Math.max(ends.length * 2, endCount + extra));
+                }
+                ends[endCount++] = v;
+                ends[endCount++] = w;
+                if (extra == 4){
+                    ends[endCount++] = w;
+                    ends[endCount++] = v;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Generates a Watts-Strogatz small-world graph: a ring where every user follows the next `k` users, with each of
+     * those connections redirected to a random user with probability `rewire`.
+     * @param userCount The number of users.
+     * @param k The number of users each user follows.
+     * @param rewire The probability that a connection is redirected.
+     * @param seed The random seed.
+     * @return The generated graph.
+     * @custom.precondition `userCount` is greater than `k`, and `k` is positive.
+     */
+    public static SyntheticGraph smallWorld(int userCount, int k, double rewire, long seed){
+        SyntheticGraph graph = new SyntheticGraph("smallworld", userCount);
+        Random random = new Random(seed);
+        for (int v = 0; v < userCount; v++){
+            for (int j = 1; j <= k; j++){
+                int w = (v + j) % userCount;
+                if (random.nextDouble() < rewire){
+                    do {
+                        w = random.nextInt(userCount);
+                    } while (w == v || graph.contains(v, w));
+                }
+                graph.add(v, w);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Generates groups of `cliqueSize` users who all follow each other, with the groups joined in a ring by one
+     * connection each way between neighboring groups. This is the worst case for loop and path enumeration.
+     * @param userCount The number of users.
+     * @param cliqueSize The number of users in each group.
+     * @param seed The random seed that shuffles which users end up in which group.
+     * @return The generated graph.
+     * @custom.precondition `cliqueSize` is at least 2.
+     */
+    public static SyntheticGraph cliques(int userCount, int cliqueSize, long seed){
+        SyntheticGraph graph = new SyntheticGraph("cliques", userCount);
+        int[] order = new int[userCount];
+        for (int i = 0; i < userCount; i++){
+            order[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = userCount - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        for (int start = 0; start < userCount; start += cliqueSize){
+            int end = Math.min(userCount, start + cliqueSize);
+            for (int i = start; i < end; i++){
+                for (int j = start; j < end; j++){
+                    if (i != j){
+                        graph.add(order[i], order[j]);
+                    }
+                }
+            }
+            int next = end % userCount;
+            if (next != start){
+                graph.add(order[start], order[next]);
+                graph.add(order[next], order[start]);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the name of a generated user.
+     * @param i The number of the user.
+     * @return The username.
+     */
+    public static String userName(int i){
+        return "user" + i;
+    }
+
+    /**
+     * Gets the name of the shape this graph was generated with.
+     * @return The shape name.
+     */
+    public String getShape(){
+        return shape;
+    }
+
+    /**
+     * Gets the number of users in the graph.
+     * @return The number of users.
+     */
+    public int getUserCount(){
+        return userCount;
+    }
+
+    /**
+     * Gets the number of connections in the graph.
+     * @return The number of connections.
+     */
+    public int getEdgeCount(){
+        return edgeCount;
+    }
+
+    /**
+     * Gets the follower of a connection.
+     * @param i The number of the connection, in generation order.
+     * @return The number of the user that follows.
+     */
+    public int getFrom(int i){
+        return from[i];
+    }
+
+    /**
+     * Gets the followed user of a connection.
+     * @param i The number of the connection, in generation order.
+     * @return The number of the user being followed.
+     */
+    public int getTo(int i){
+        return to[i];
+    }
+
+    /**
+     * Builds a FollowGraph holding this graph. User i gets id i.
+     * @param adjacency The empty adjacency store to build on.
+     * @return The new graph.
+     * @custom.precondition 'adjacency' is non-null and empty.
+     * @custom.postcondition The returned graph holds every user and connection of this graph.
+     */
+    public FollowGraph build(Adjacency adjacency){
+        FollowGraph graph = new FollowGraph(adjacency);
+        for (int i = 0; i < userCount; i++){
+            graph.addUser(userName(i));
+        }
+        graph.addConnections(Arrays.copyOf(from, edgeCount), Arrays.copyOf(to, edgeCount), edgeCount);
+        return graph;
+    }
+
+    /**
+     * Writes the usernames to a file, one per line, in the format read by loadAllUsers.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeUsers(Path file) throws IOException{
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            for (int i = 0; i < userCount; i++){
+                out.write(userName(i));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes the connections to a file, one "follower,followed" pair per line, in the format read by loadAllConnections.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeConnections(Path file) throws IOException{
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            for (int i = 0; i < edgeCount; i++){
+                out.write(userName(from[i]));
+                out.write(',');
+                out.write(userName(to[i]));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a connection has been generated.
+     */
+    private boolean contains(int v, int w){
+        return edges.contains(((long) v << 32) | w);
+    }
+
+    /**
+     * Adds a connection unless it has already been generated.
+     * @return True if the connection is new.
+     */
+    private boolean add(int v, int w){
+        if (!edges.add(((long) v << 32) | w)){
+            return false;
+        }
+        if (edgeCount == from.length){
+            from = Arrays.copyOf(from, edgeCount * 2);
+            to = Arrays.copyOf(to, edgeCount * 2);
+        }
+        from[edgeCount] = v;
+        to[edgeCount] = w;
+        edgeCount++;
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Randomized checks for the distance table: after random changes on both adjacency stores, every distance and shortest
+ * path the graph gives matches a breadth-first search over a GraphModel. Stretches of added connections exercise the
+ * incremental updates of a built table; removals drop it, so the next query builds it again.
+ * Run with "mvn -Ptests verify". Each check throws an AssertionError on the first difference it finds.
+ */
+import java.util.Random;
+
+public class DistanceTableTest{
+
+    private DistanceTableTest(){}
+
+    public static void main(String[] args){
+        Random random = new Random(7);
+        for (int round = 0; round < 60; round++){
+            GraphModel model = new GraphModel(round % 2 == 0 ? new AdjacencyList() : new BitsetAdjacency(), 5 + random.nextInt(40));
+            FollowGraph graph = model.graph();
+            if (round % 3 != 0){
+                graph.buildDistanceTable();
+            }
+            for (int step = 0; step < 12; step++){
+                for (int i = 0; i < model.size() / 2; i++){
+                    model.randomConnection(random);
+                    int a = random.nextInt(model.size());
+                    int b = random.nextInt(model.size());
+                    if (model.exists(a) && model.exists(b)){
+                        checkDistance(model, a, b);
+                    }
+                }
+                checkAllPairs(model);
+                for (int i = 0; i < 3; i++){
+                    model.randomChange(random, round % 4 >= 2);
+                }
+            }
+        }
+        System.out.println("DistanceTableTest passed.");
+    }
+
+    /**
+     * Checks the distance between one pair of users.
+     */
+    private static void checkDistance(GraphModel model, int a, int b){
+        int actual = model.graph().getDistance(GraphModel.name(a), GraphModel.name(b));
+        int expected = model.distance(a, b);
+        GraphModel.check(actual == expected, "distance " + GraphModel.name(a) + " -> " + GraphModel.name(b) + " is " + actual + ", expected " + expected);
+    }
+
+    /**
+     * Checks the distance and the shortest path between every pair of users.
+     */
+    private static void checkAllPairs(GraphModel model){
+        model.checkConnections();
+        FollowGraph graph = model.graph();
+        int n = model.size();
+        int[] userOfId = new int[graph.getNextId()];
+        for (int i = 0; i < n; i++){
+            if (model.exists(i)){
+                userOfId[graph.resolve(GraphModel.name(i))] = i;
+            }
+        }
+        for (int a = 0; a < n; a++){
+            if (!model.exists(a)){
+                continue;
+            }
+            int[] expected = model.distances(a);
+            for (int b = 0; b < n; b++){
+                if (!model.exists(b)){
+                    continue;
+                }
+                checkDistance(model, a, b);
+                PathResult path = graph.shortestPath(graph.resolve(GraphModel.name(a)), graph.resolve(GraphModel.name(b)));
+                if (expected[b] < 0){
+                    GraphModel.check(path == null, "path " + GraphModel.name(a) + " -> " + GraphModel.name(b) + " found, expected none");
+                    continue;
+                }
+                GraphModel.check(path != null && path.getHops() == expected[b], "path " + GraphModel.name(a) + " -> " + GraphModel.name(b) + " is not a shortest one");
+                int[] ids = path.getPath();
+                GraphModel.check(userOfId[ids[0]] == a && userOfId[ids[ids.length - 1]] == b, "path " + GraphModel.name(a) + " -> " + GraphModel.name(b) + " has the wrong ends");
+                for (int i = 1; i < ids.length; i++){
+                    GraphModel.check(model.follows(userOfId[ids[i - 1]], userOfId[ids[i]]), "path " + GraphModel.name(a) + " -> " + GraphModel.name(b) + " uses a missing connection");
+                }
+            }
+        }
+    }
+}
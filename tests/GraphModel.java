@@ -0,0 +1,188 @@
+/**
+ * A plain model of a FollowGraph for the randomized checks: which users exist and who follows whom, kept in a boolean
+ * matrix next to a real graph that gets the same random changes. Reachability and distances are worked out from the
+ * matrix by breadth-first search, with none of the graph's indices, so the checks can compare the two.
+ * Users are named "u0" to "u{n-1}".
+ */
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+public class GraphModel{
+    private final FollowGraph graph;
+    private final int n;
+    private final boolean[] present;
+    private final boolean[][] follows;
+
+    /**
+     * Constructs a graph on the given store with n users and no connections, and its model.
+     * @param adjacency The adjacency store for the graph.
+     * @param n The number of user names to draw from.
+     * @custom.postcondition Every user exists, and nobody follows anyone.
+     */
+    public GraphModel(Adjacency adjacency, int n){
+        this.graph = new FollowGraph(adjacency);
+        this.n = n;
+        this.present = new boolean[n];
+        this.follows = new boolean[n][n];
+        graph.setOutput(new PrintWriter(OutputStream.nullOutputStream()));
+        for (int i = 0; i < n; i++){
+            graph.addUser(name(i));
+            present[i] = true;
+        }
+    }
+
+    /**
+     * Gets the graph that the model follows.
+     * @return The graph.
+     */
+    public FollowGraph graph(){
+        return graph;
+    }
+
+    /**
+     * Gets the number of user names.
+     * @return The number of names, present or not.
+     */
+    public int size(){
+        return n;
+    }
+
+    /**
+     * Gets the name of a user.
+     * @param i The number of the user.
+     * @return "u" followed by the number.
+     */
+    public static String name(int i){
+        return "u" + i;
+    }
+
+    /**
+     * Tells whether a user exists.
+     * @param i The number of the user.
+     * @return True if the user is in the graph.
+     */
+    public boolean exists(int i){
+        return present[i];
+    }
+
+    /**
+     * Tells whether one user follows another.
+     * @param a The number of the follower.
+     * @param b The number of the user who may be followed.
+     * @return True if `a` follows `b`.
+     */
+    public boolean follows(int a, int b){
+        return follows[a][b];
+    }
+
+    /**
+     * Makes one random change to both the graph and the model. Most changes add or remove a connection; now and then a
+     * user is removed or added back, which tombstones and reuses slots.
+     * @param random The source of randomness.
+     * @param userChanges True to let the change remove or add a user.
+     */
+    public void randomChange(Random random, boolean userChanges){
+        int a = random.nextInt(n);
+        int b = random.nextInt(n);
+        int choice = random.nextInt(20);
+        if (userChanges && choice == 0 && present[a]){
+            graph.removeUser(name(a));
+            present[a] = false;
+            Arrays.fill(follows[a], false);
+            for (boolean[] row : follows){
+                row[a] = false;
+            }
+        } else if (userChanges && choice == 1 && !present[a]){
+            graph.addUser(name(a));
+            present[a] = true;
+        } else if (present[a] && present[b] && a != b){
+            if (choice < 7){
+                graph.removeConnection(name(a), name(b));
+                follows[a][b] = false;
+            } else {
+                graph.addConnection(name(a), name(b));
+                follows[a][b] = true;
+            }
+        }
+    }
+
+    /**
+     * Adds one random connection to both the graph and the model, which the graph's indices take in without a rebuild.
+     * @param random The source of randomness.
+     */
+    public void randomConnection(Random random){
+        int a = random.nextInt(n);
+        int b = random.nextInt(n);
+        if (present[a] && present[b] && a != b){
+            graph.addConnection(name(a), name(b));
+            follows[a][b] = true;
+        }
+    }
+
+    /**
+     * Counts the follow edges on a shortest path in the model.
+     * @param a The number of the starting user.
+     * @param b The number of the user to reach.
+     * @return The hop distance, or -1 if `b` cannot be reached from `a`.
+     */
+    public int distance(int a, int b){
+        return distances(a)[b];
+    }
+
+    /**
+     * Counts the follow edges on a shortest path from one user to every user in the model.
+     * @param a The number of the starting user.
+     * @return The hop distance to each user, or -1 for the users that cannot be reached.
+     */
+    public int[] distances(int a){
+        int[] distance = new int[n];
+        Arrays.fill(distance, -1);
+        distance[a] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(a);
+        while (!queue.isEmpty()){
+            int v = queue.poll();
+            for (int w = 0; w < n; w++){
+                if (follows[v][w] && distance[w] < 0){
+                    distance[w] = distance[v] + 1;
+                    queue.add(w);
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Checks that the graph's following lists match the model, so that a failure further on is in the index under test.
+     */
+    public void checkConnections(){
+        for (int a = 0; a < n; a++){
+            if (!present[a]){
+                continue;
+            }
+            for (String followed : graph.getAllFollowing(name(a))){
+                int b = Integer.parseInt(followed.substring(1));
+                check(follows[a][b], name(a) + " follows " + followed + " in the graph only");
+            }
+            int count = 0;
+            for (boolean f : follows[a]){
+                count += f ? 1 : 0;
+            }
+            check(graph.getFollowingCount(name(a)) == count, name(a) + " follows " + graph.getFollowingCount(name(a)) + " users, expected " + count);
+        }
+    }
+
+    /**
+     * Throws an AssertionError with the message if the condition does not hold.
+     * @param condition The condition to check.
+     * @param message What went wrong.
+     */
+    public static void check(boolean condition, String message){
+        if (!condition){
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Round-trip checks for GraphSnapshot: a graph that is written and read back has the same users, ids and connections.
+ * Run with "mvn -Ptests verify". Each check throws an AssertionError on the first difference it finds.
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class GraphSnapshotTest{
+
+    private GraphSnapshotTest(){}
+
+    public static void main(String[] args) throws IOException{
+        Path directory = Files.createTempDirectory("followgraph-snapshot-test");
+        try {
+            reusedSlot(directory.resolve("reused.bin"));
+            randomRoundTrips(directory.resolve("random.bin"));
+            smallWindows(directory.resolve("windows.bin"));
+            try (var files = Files.list(directory)){
+                check(files.count() == 3, "temporary files were left behind");
+            }
+        } finally {
+            try (var files = Files.list(directory)){
+                for (Path file : (Iterable<Path>) files::iterator){
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println("GraphSnapshotTest passed.");
+    }
+
+    /**
+     * A user added into the slot of a removed user sorts before the users it follows by slot, but after them by id.
+     */
+    private static void reusedSlot(Path file) throws IOException{
+        FollowGraph graph = new FollowGraph();
+        graph.setCompactionThreshold(1.0);
+        for (String name : new String[]{"a", "b", "c", "d"}){
+            graph.addUser(name);
+        }
+        graph.removeUser("a");
+        graph.addUser("e");
+        graph.addConnection("b", "e");
+        graph.addConnection("b", "c");
+        graph.addConnection("b", "d");
+        assertRoundTrip(graph, file);
+    }
+
+    /**
+     * Writes and reads graphs with random removals, slot reuse and connections, on both storage engines.
+     */
+    private static void randomRoundTrips(Path file) throws IOException{
+        Random random = new Random(42);
+        for (int round = 0; round < 40; round++){
+            FollowGraph graph = round % 2 == 0 ? new FollowGraph() : new FollowGraph(new BitsetAdjacency());
+            graph.setCompactionThreshold(round % 4 < 2 ? 1.0 : 0.3);
+            int n = 5 + random.nextInt(60);
+            for (int i = 0; i < n; i++){
+                graph.addUser("u" + i);
+            }
+            for (int step = 0; step < n * 4; step++){
+                int choice = random.nextInt(10);
+                String a = "u" + random.nextInt(n);
+                String b = "u" + random.nextInt(n);
+                if (choice == 0 && graph.checkIfUserExists(a)){
+                    graph.removeUser(a);
+                } else if (choice == 1 && !graph.checkIfUserExists(a)){
+                    graph.addUser(a);
+                } else if (graph.checkIfUserExists(a) && graph.checkIfUserExists(b)){
+                    graph.addConnection(a, b);
+                }
+            }
+            assertRoundTrip(graph, file);
+        }
+    }
+
+    /**
+     * Reads a snapshot through memory maps of a few bytes, so that varints, ints, doubles and names cross window boundaries.
+     */
+    private static void smallWindows(Path file) throws IOException{
+        Random random = new Random(12);
+        FollowGraph graph = new FollowGraph();
+        for (int i = 0; i < 300; i++){
+            graph.addUser("user-" + i + "-\u00e9");
+        }
+        for (int i = 0; i < 3000; i++){
+            graph.addConnection("user-" + random.nextInt(300) + "-\u00e9", "user-" + random.nextInt(300) + "-\u00e9");
+        }
+        GraphSnapshot.write(graph, file.toString());
+        for (int windowSize : new int[]{1, 3, 7, 64, 4093}){
+            assertSame(graph, GraphSnapshot.read(file.toString(), windowSize));
+        }
+    }
+
+    /**
+     * Writes a graph, reads it back and checks that both hold the same users, ids and connections.
+     */
+    private static void assertRoundTrip(FollowGraph graph, Path file) throws IOException{
+        GraphSnapshot.write(graph, file.toString());
+        assertSame(graph, GraphSnapshot.read(file.toString()));
+    }
+
+    /**
+     * Checks that a graph read back from a snapshot holds the same users, ids and connections as the one written.
+     */
+    private static void assertSame(FollowGraph graph, FollowGraph copy){
+        ArrayList<User> expected = graph.getUsers();
+        ArrayList<User> actual = copy.getUsers();
+        check(expected.size() == actual.size(), "user count " + actual.size() + ", expected " + expected.size());
+        check(graph.getNextId() == copy.getNextId(), "next id " + copy.getNextId() + ", expected " + graph.getNextId());
+        check(graph.getConnectionCount() == copy.getConnectionCount(), "connection count differs");
+        for (int i = 0; i < expected.size(); i++){
+            String name = expected.get(i).getUserName();
+            check(name.equals(actual.get(i).getUserName()), "user " + i + " is " + actual.get(i).getUserName() + ", expected " + name);
+            check(expected.get(i).getId() == actual.get(i).getId(), "id of " + name + " differs");
+            check(graph.getAllFollowing(name).equals(copy.getAllFollowing(name)), "following of " + name + " differs");
+            check(graph.getAllFollowers(name).equals(copy.getAllFollowers(name)), "followers of " + name + " differs");
+        }
+    }
+
+    private static void check(boolean condition, String message){
+        if (!condition){
+            throw new AssertionError(message);
+        }
+    }
+}
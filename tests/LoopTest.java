@@ -0,0 +1,96 @@
+/**
+ * Randomized checks for loop enumeration: after random changes on both adjacency stores, the loops the graph finds,
+ * with and without a length limit, on one thread and on a search pool, are exactly the elementary cycles that a plain
+ * depth-first search over a GraphModel finds. Each loop is written from its user with the smallest id.
+ * Run with "mvn -Ptests verify". Each check throws an AssertionError on the first difference it finds.
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+public class LoopTest{
+
+    private LoopTest(){}
+
+    public static void main(String[] args){
+        Random random = new Random(9);
+        for (int round = 0; round < 80; round++){
+            GraphModel model = new GraphModel(round % 2 == 0 ? new AdjacencyList() : new BitsetAdjacency(), 4 + random.nextInt(9));
+            FollowGraph graph = model.graph();
+            if (round % 4 == 3){
+                graph.setParallelism(3);
+            }
+            for (int step = 0; step < 8; step++){
+                for (int i = 0; i < model.size(); i++){
+                    model.randomChange(random, true);
+                }
+                model.checkConnections();
+                for (int maxLength : new int[]{Integer.MAX_VALUE, 2, 3, 5}){
+                    ArrayList<String> expected = loops(model, maxLength);
+                    SearchLimits limits = new SearchLimits(maxLength, Long.MAX_VALUE, 0);
+                    GraphModel.check(graph.findAllLoops(limits).equals(expected), "loops up to " + maxLength + " are " + graph.findAllLoops(limits) + ", expected " + expected);
+                    GraphModel.check(graph.forEachLoop(limits, cycle -> true) == expected.size(), "forEachLoop count differs up to " + maxLength);
+                    if (expected.size() > 1){
+                        int cap = 1 + random.nextInt(expected.size() - 1);
+                        ArrayList<String> capped = graph.findAllLoops(new SearchLimits(maxLength, cap, 0));
+                        GraphModel.check(capped.size() == cap && expected.containsAll(capped) && new HashSet<>(capped).size() == cap, "capped loops " + capped + " are not " + cap + " of " + expected);
+                    }
+                }
+            }
+            graph.setParallelism(1);
+        }
+        System.out.println("LoopTest passed.");
+    }
+
+    /**
+     * Finds every elementary cycle of at least two users and at most maxLength connections in the model, by depth-first
+     * search from each user through users with larger ids only.
+     * @return The loops as the graph writes them, sorted.
+     */
+    private static ArrayList<String> loops(GraphModel model, int maxLength){
+        int n = model.size();
+        int[] id = new int[n];
+        for (int i = 0; i < n; i++){
+            id[i] = model.exists(i) ? model.graph().resolve(GraphModel.name(i)) : -1;
+        }
+        ArrayList<String> loops = new ArrayList<>();
+        int[] path = new int[n];
+        boolean[] onPath = new boolean[n];
+        for (int root = 0; root < n; root++){
+            if (id[root] >= 0){
+                path[0] = root;
+                onPath[root] = true;
+                extend(model, id, path, 1, onPath, maxLength, loops);
+                onPath[root] = false;
+            }
+        }
+        Collections.sort(loops);
+        return loops;
+    }
+
+    /**
+     * Tries every way to continue a path that starts at its user with the smallest id.
+     */
+    private static void extend(GraphModel model, int[] id, int[] path, int length, boolean[] onPath, int maxLength, ArrayList<String> loops){
+        int root = path[0];
+        int last = path[length - 1];
+        for (int next = 0; next < model.size(); next++){
+            if (!model.follows(last, next)){
+                continue;
+            }
+            if (next == root && length >= 2){
+                StringBuilder loop = new StringBuilder();
+                for (int i = 0; i < length; i++){
+                    loop.append(GraphModel.name(path[i])).append("->");
+                }
+                loops.add(loop.append(GraphModel.name(root)).toString());
+            } else if (!onPath[next] && id[next] > id[root] && length < maxLength){
+                path[length] = next;
+                onPath[next] = true;
+                extend(model, id, path, length + 1, onPath, maxLength, loops);
+                onPath[next] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Randomized checks for "who to follow" recommendations: queries are mixed with random changes on both adjacency
+ * stores, so most answers come from the cache, and every answer must match a friend-of-friend count over a GraphModel
+ * made at the time of the query. A stale cached result after a change to the user's row, or to the row of someone they
+ * follow, shows up as a difference.
+ * Run with "mvn -Ptests verify". Each check throws an AssertionError on the first difference it finds.
+ */
+import java.util.ArrayList;
+import java.util.Random;
+
+public class RecommenderTest{
+
+    private RecommenderTest(){}
+
+    public static void main(String[] args){
+        Random random = new Random(21);
+        for (int round = 0; round < 60; round++){
+            GraphModel model = new GraphModel(round % 2 == 0 ? new AdjacencyList() : new BitsetAdjacency(), 5 + random.nextInt(30));
+            for (int step = 0; step < 400; step++){
+                if (random.nextInt(3) == 0){
+                    model.randomChange(random, round % 4 >= 2);
+                } else {
+                    model.randomConnection(random);
+                }
+                // Ask again for users asked before, with a larger or smaller k, so cached results are reused and trimmed.
+                int user = random.nextInt(Math.min(model.size(), 6));
+                if (model.exists(user)){
+                    checkRecommendations(model, user, 1 + random.nextInt(6));
+                }
+            }
+        }
+        System.out.println("RecommenderTest passed.");
+    }
+
+    /**
+     * Checks the recommendations for a user, by name and by id, against a count over the model.
+     */
+    private static void checkRecommendations(GraphModel model, int user, int k){
+        FollowGraph graph = model.graph();
+        int n = model.size();
+        int[] id = new int[n];
+        int[] score = new int[n];
+        for (int v = 0; v < n; v++){
+            id[v] = model.exists(v) ? graph.resolve(GraphModel.name(v)) : -1;
+        }
+        for (int f = 0; f < n; f++){
+            if (!model.follows(user, f)){
+                continue;
+            }
+            for (int c = 0; c < n; c++){
+                if (model.follows(f, c) && c != user && !model.follows(user, c)){
+                    score[c]++;
+                }
+            }
+        }
+        ArrayList<String> expected = new ArrayList<>();
+        boolean[] taken = new boolean[n];
+        while (expected.size() < k){
+            int best = -1;
+            for (int c = 0; c < n; c++){
+                if (score[c] > 0 && !taken[c] && (best < 0 || score[c] > score[best] || score[c] == score[best] && id[c] < id[best])){
+                    best = c;
+                }
+            }
+            if (best < 0){
+                break;
+            }
+            taken[best] = true;
+            expected.add(GraphModel.name(best));
+        }
+        ArrayList<String> actual = graph.recommend(GraphModel.name(user), k);
+        GraphModel.check(actual.equals(expected), "recommend(" + GraphModel.name(user) + ", " + k + ") is " + actual + ", expected " + expected);
+        int[] ids = graph.recommend(id[user], k);
+        GraphModel.check(ids.length == expected.size(), "recommend by id gave " + ids.length + " users, expected " + expected.size());
+        for (int i = 0; i < ids.length; i++){
+            GraphModel.check(ids[i] == graph.resolve(expected.get(i)), "recommend by id differs at " + i + " for " + GraphModel.name(user));
+        }
+    }
+}
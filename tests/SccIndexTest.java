@@ -0,0 +1,160 @@
+/**
+ * Randomized checks for the strongly connected component index: after random changes on both adjacency stores, with the
+ * index updated in place between queries, reachability, component counts, ids and sizes match a breadth-first search
+ * over a GraphModel. A second check replays connection changes made while an index was being built, from every point
+ * the build could have read them, and compares the caught-up index with a fresh search.
+ * Run with "mvn -Ptests verify". Each check throws an AssertionError on the first difference it finds.
+ */
+import java.util.Random;
+
+public class SccIndexTest{
+
+    private SccIndexTest(){}
+
+    public static void main(String[] args){
+        incrementalUpdates(new Random(10));
+        catchUp(new Random(11));
+        System.out.println("SccIndexTest passed.");
+    }
+
+    /**
+     * Queries the graph between random changes, so most changes reach a built index through edgeAdded and edgeRemoved.
+     */
+    private static void incrementalUpdates(Random random){
+        for (int round = 0; round < 60; round++){
+            GraphModel model = new GraphModel(round % 2 == 0 ? new AdjacencyList() : new BitsetAdjacency(), 5 + random.nextInt(30));
+            for (int step = 0; step < 10; step++){
+                for (int i = 0; i < model.size() / 2; i++){
+                    if (random.nextInt(3) == 0){
+                        model.randomChange(random, round % 4 >= 2);
+                    } else {
+                        model.randomConnection(random);
+                    }
+                    int a = random.nextInt(model.size());
+                    int b = random.nextInt(model.size());
+                    if (model.exists(a) && model.exists(b)){
+                        boolean reaches = model.distance(a, b) >= 0;
+                        GraphModel.check(model.graph().canReach(GraphModel.name(a), GraphModel.name(b)) == reaches, "canReach " + GraphModel.name(a) + " -> " + GraphModel.name(b) + ", expected " + reaches);
+                    }
+                }
+                checkComponents(model);
+            }
+        }
+    }
+
+    /**
+     * Checks every pair for reachability, and that two users share a component exactly when each reaches the other.
+     */
+    private static void checkComponents(GraphModel model){
+        model.checkConnections();
+        FollowGraph graph = model.graph();
+        int n = model.size();
+        boolean[][] reaches = new boolean[n][];
+        for (int a = 0; a < n; a++){
+            if (model.exists(a)){
+                int[] distance = model.distances(a);
+                reaches[a] = new boolean[n];
+                for (int b = 0; b < n; b++){
+                    reaches[a][b] = distance[b] >= 0;
+                }
+            }
+        }
+        int components = 0;
+        for (int a = 0; a < n; a++){
+            if (!model.exists(a)){
+                continue;
+            }
+            int size = 0;
+            boolean first = true;
+            for (int b = 0; b < n; b++){
+                if (!model.exists(b)){
+                    continue;
+                }
+                String pair = GraphModel.name(a) + " -> " + GraphModel.name(b);
+                GraphModel.check(graph.canReach(GraphModel.name(a), GraphModel.name(b)) == reaches[a][b], "canReach " + pair + ", expected " + reaches[a][b]);
+                boolean same = reaches[a][b] && reaches[b][a];
+                GraphModel.check((graph.getComponentId(GraphModel.name(a)) == graph.getComponentId(GraphModel.name(b))) == same, "component ids of " + pair + ", expected same = " + same);
+                if (same){
+                    size++;
+                    first &= b >= a;
+                }
+            }
+            GraphModel.check(graph.getComponentSize(GraphModel.name(a)) == size, "component size of " + GraphModel.name(a) + " is " + graph.getComponentSize(GraphModel.name(a)) + ", expected " + size);
+            components += first ? 1 : 0;
+        }
+        GraphModel.check(graph.getComponentCount() == components, "component count is " + graph.getComponentCount() + ", expected " + components);
+    }
+
+    /**
+     * Builds an index part-way through a sequence of changes and replays the whole sequence with catchUp. Odd rounds
+     * only add connections down a DAG, which the index must take in without going stale; afterwards connections are
+     * removed directly, so a change counted twice during the replay would show up as reachability that is gone.
+     */
+    private static void catchUp(Random random){
+        int n = 12;
+        for (int round = 0; round < 2000; round++){
+            boolean dag = round % 2 == 1;
+            Adjacency adjacency = round % 4 < 2 ? new AdjacencyList() : new BitsetAdjacency();
+            adjacency.ensureCapacity(n);
+            for (int i = 0; i < 8; i++){
+                int from = random.nextInt(n - 1);
+                adjacency.addEdge(from, dag ? from + 1 + random.nextInt(n - 1 - from) : random.nextInt(n));
+            }
+            int[] changes = new int[36];
+            for (int i = 0; i < changes.length; i += 3){
+                int from = random.nextInt(n - 1);
+                changes[i] = from;
+                changes[i + 1] = dag ? from + 1 + random.nextInt(n - 1 - from) : random.nextInt(n);
+                changes[i + 2] = dag ? 1 : random.nextInt(2);
+            }
+            int seen = 3 * random.nextInt(changes.length / 3 + 1);
+            apply(adjacency, changes, 0, seen);
+            SccIndex index = new SccIndex(adjacency);
+            apply(adjacency, changes, seen, changes.length);
+            index.catchUp(changes, 0, changes.length);
+            GraphModel.check(!dag || !index.isStale(), "round " + round + " went stale catching up on added connections");
+            for (int i = 0; i < 8; i++){
+                int from = random.nextInt(n);
+                int[] out = adjacency.outNeighbors(from);
+                if (out.length > 0 && adjacency.removeEdge(from, out[0])){
+                    index.edgeRemoved(from, out[0]);
+                }
+            }
+            if (index.isStale()){
+                continue;
+            }
+            for (int s = 0; s < n; s++){
+                boolean[] reached = new boolean[n];
+                int[] queue = new int[n];
+                int head = 0;
+                int tail = 0;
+                reached[s] = true;
+                queue[tail++] = s;
+                while (head < tail){
+                    for (int w : adjacency.outNeighbors(queue[head++])){
+                        if (!reached[w]){
+                            reached[w] = true;
+                            queue[tail++] = w;
+                        }
+                    }
+                }
+                for (int t = 0; t < n; t++){
+                    GraphModel.check(index.canReach(s, t) == reached[t], "round " + round + ": canReach " + s + " -> " + t + " after catchUp, expected " + reached[t]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the changes in [start, end) of a change list to an adjacency store.
+     */
+    private static void apply(Adjacency adjacency, int[] changes, int start, int end){
+        for (int i = start; i < end; i += 3){
+            if (changes[i + 2] == 1){
+                adjacency.addEdge(changes[i], changes[i + 1]);
+            } else {
+                adjacency.removeEdge(changes[i], changes[i + 1]);
+            }
+        }
+    }
+}